@@ -0,0 +1,111 @@
+package com.zebrunner.agent.espresso;
+
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+import com.zebrunner.agent.espresso.core.history.DurationHistory;
+import com.zebrunner.agent.espresso.core.history.ShardAssignment;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+import java.io.File;
+import java.io.IOException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits the tests between shards so that the shards take about the same time, based on the durations
+ * recorded by the previous runs (see {@link DurationHistory}). Tests without history are split by hash.
+ * <p>
+ * Usage: {@code -e filter com.zebrunner.agent.espresso.BalancedShardingFilter -e reporting.espresso.shard.count <n>
+ * -e reporting.espresso.shard.index <i> -e reporting.espresso.shard.duration-history.file <file>}.
+ * Every shard must get the same history file, e.g. one merged with {@link DurationHistoryMerger} from the files
+ * of the previous run and pushed to the devices. With {@code reporting.espresso.shard.duration-history.checksum}
+ * every shard also verifies that its file is the expected one. Without a shared history file, or if the checksum
+ * does not match, all the tests are split by hash, since shards planning from different histories would skip
+ * or duplicate tests.
+ * The {@code numShards} and {@code shardIndex} arguments of the runner must not be used together with the filter,
+ * otherwise the runner shards the already sharded tests once again.
+ */
+@Slf4j
+public class BalancedShardingFilter extends Filter {
+
+    private static final Object LOCK = new Object();
+    private static volatile ShardAssignment assignment;
+
+    private final int shardIndex;
+    private final int shardCount;
+    private final ShardAssignment shardAssignment;
+
+    public BalancedShardingFilter() {
+        this.shardIndex = EspressoConfiguration.getShardIndex();
+        this.shardCount = Math.max(1, EspressoConfiguration.getShardCount());
+        this.shardAssignment = resolveAssignment(shardCount, shardIndex);
+    }
+
+    @Override
+    public boolean shouldRun(Description description) {
+        if (shardCount == 1) {
+            return true;
+        }
+
+        if (description.isTest()) {
+            String key = DurationHistory.key(description.getClassName(), description.getMethodName());
+            return shardAssignment.shardOf(key) == shardIndex;
+        }
+        for (Description child : description.getChildren()) {
+            if (this.shouldRun(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String describe() {
+        return "Zebrunner balanced shard " + shardIndex + " of " + shardCount;
+    }
+
+    private static ShardAssignment resolveAssignment(int shardCount, int shardIndex) {
+        if (assignment == null) {
+            synchronized (LOCK) {
+                if (assignment == null) {
+                    if (EspressoConfiguration.isRunnerShardingEnabled()) {
+                        log.warn("The runner shards the tests too. Use reporting.espresso.shard.count and "
+                                + "reporting.espresso.shard.index instead of numShards and shardIndex.");
+                    }
+
+                    ShardAssignment shardAssignment = balancedAssignment(shardCount);
+                    log.info("{} test(s) with history are balanced between {} shard(s). Expected duration of shard {} is {} ms.",
+                            shardAssignment.getKnownTests(), shardCount, shardIndex, shardAssignment.getExpectedDurationMillis(shardIndex));
+                    assignment = shardAssignment;
+                }
+            }
+        }
+        return assignment;
+    }
+
+    private static ShardAssignment balancedAssignment(int shardCount) {
+        File historyFile = EspressoConfiguration.getShardDurationHistoryFile();
+        if (historyFile == null || !historyFile.isFile()) {
+            log.warn("No shared test duration history is provided. Tests are split between shards by hash.");
+            return ShardAssignment.byHash(shardCount);
+        }
+
+        String expectedChecksum = EspressoConfiguration.getShardDurationHistoryChecksum();
+        if (expectedChecksum != null) {
+            try {
+                String checksum = DurationHistory.checksum(historyFile);
+                if (!expectedChecksum.equalsIgnoreCase(checksum)) {
+                    log.warn("Checksum of the test duration history {} is {} rather than {}. Tests are split between shards by hash.",
+                            historyFile, checksum, expectedChecksum);
+                    return ShardAssignment.byHash(shardCount);
+                }
+            } catch (IOException e) {
+                log.warn("Could not verify test duration history {}. Tests are split between shards by hash.", historyFile, e);
+                return ShardAssignment.byHash(shardCount);
+            }
+        }
+        return ShardAssignment.of(DurationHistory.load(historyFile), shardCount);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.zebrunner.agent.espresso;
+
+import com.zebrunner.agent.espresso.core.history.DurationHistory;
+
+import java.io.File;
+import java.io.IOException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Merges test duration history files pulled from the devices of a sharded run into a single file,
+ * which is then pushed to all the devices of the next run, so the {@link BalancedShardingFilter}
+ * of every shard computes the same assignment. The logged checksum of the file can be passed to the shards,
+ * so they verify that they got the same file.
+ * <p>
+ * Usage: {@code DurationHistoryMerger <target file> <source file>...}. The target file is merged too, if it exists.
+ */
+@Slf4j
+public class DurationHistoryMerger {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: DurationHistoryMerger <target file> <source file>...");
+        }
+
+        DurationHistory history = DurationHistory.load(new File(args[0]));
+        for (int i = 1; i < args.length; i++) {
+            history.merge(new File(args[i]));
+        }
+        history.save();
+
+        log.info("Durations of {} test(s) were merged into {}. Checksum of the file: {}",
+                history.getEntries().size(), args[0], DurationHistory.checksum(new File(args[0])));
+    }
+
+}
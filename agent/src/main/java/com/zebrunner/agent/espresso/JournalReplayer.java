@@ -0,0 +1,34 @@
+package com.zebrunner.agent.espresso;
+
+import com.zebrunner.agent.espresso.client.impl.ZebrunnerApiClientImpl;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers the reporting events left in a journal by an instrumentation process which crashed or was killed
+ * before the events were sent to Zebrunner.
+ * <p>
+ * Usage: {@code JournalReplayer [journal directory]}. If the directory is not provided,
+ * the one from {@code reporting.espresso.journal.directory} is used. The reporting configuration
+ * (host, access token, etc.) is taken from the usual agent configuration sources.
+ * Journaling is disabled for the replayer process, so the replayed events are sent right away rather than journaled again.
+ */
+@Slf4j
+public class JournalReplayer {
+
+    public static void main(String[] args) throws IOException {
+        File directory = args.length > 0
+                ? new File(args[0])
+                : EspressoConfiguration.getJournalDirectory();
+        System.setProperty("reporting.espresso.journal.enabled", "false");
+
+        int delivered = ZebrunnerApiClientImpl.getInstance().replayJournal(directory);
+
+        log.info("{} journaled event(s) from {} were delivered.", delivered, directory);
+    }
+
+}
@@ -6,118 +6,243 @@ import com.zebrunner.agent.core.registrar.descriptor.TestFinishDescriptor;
 import com.zebrunner.agent.core.registrar.descriptor.TestRunFinishDescriptor;
 import com.zebrunner.agent.core.registrar.descriptor.TestRunStartDescriptor;
 import com.zebrunner.agent.core.registrar.descriptor.TestStartDescriptor;
+import com.zebrunner.agent.espresso.client.impl.ZebrunnerApiClientImpl;
+import com.zebrunner.agent.espresso.core.TestClassMetadataCache;
 import com.zebrunner.agent.espresso.core.TestCorrelationData;
+import com.zebrunner.agent.espresso.core.TestMethodMetadata;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+import com.zebrunner.agent.espresso.core.dispatch.ReportingDispatcher;
+import com.zebrunner.agent.espresso.core.history.DurationHistory;
+import com.zebrunner.agent.espresso.core.metrics.AgentMetrics;
+import com.zebrunner.agent.espresso.core.trace.EncodedTrace;
+import com.zebrunner.agent.espresso.core.trace.FailureTraceEncoder;
 
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.time.OffsetDateTime;
-import java.util.Arrays;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import lombok.SneakyThrows;
-
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Translates the JUnit lifecycle events into the reporting calls.
+ * <p>
+ * Safe for tests running in parallel within a single instrumentation: the test run is started once
+ * by whichever thread gets first, while the other threads wait for it, and every running test has its own state
+ * looked up by its {@link Description}.
+ */
+@Slf4j
 public class JunitAdapter {
 
-    private static final Set<String> testRunTestIds = new ConcurrentSkipListSet<>();
-    private static final TestRunRegistrar registrar = TestRunRegistrar.getInstance();
+    private static final String VIEW_HIERARCHY_ARTIFACT_NAME = "view-hierarchy.txt.gz";
 
-    private static Description rootSuiteDescription;
+    // running tests. a test is finished by the thread which removes it, so a test is never finished twice
+    private static final Map<Description, RunningTest> runningTests = new ConcurrentHashMap<>();
+    private static final AtomicReference<Description> rootSuiteDescription = new AtomicReference<>();
+    // completed once the thread which won the run start registered it, successfully or not
+    private static final CompletableFuture<Void> runStart = new CompletableFuture<>();
+    private static final TestRunRegistrar registrar = TestRunRegistrar.getInstance();
+    private static final ZebrunnerApiClientImpl apiClient = ZebrunnerApiClientImpl.getInstance();
+    private static final ReportingDispatcher dispatcher = ReportingDispatcher.fromConfiguration();
+    private static final TestClassMetadataCache testMetadataCache = new TestClassMetadataCache(EspressoConfiguration.getTestMetadataCacheSize());
+    private static final FailureTraceEncoder traceEncoder = EspressoConfiguration.isTraceEncodingEnabled()
+            ? FailureTraceEncoder.fromConfiguration()
+            : null;
+    private static final DurationHistory durationHistory = EspressoConfiguration.isDurationHistoryEnabled()
+            ? DurationHistory.load(EspressoConfiguration.getDurationHistoryFile())
+            : null;
+
+    static {
+        AgentMetrics.getInstance().registerGauge("dispatcher", dispatcher::getPendingEvents);
+    }
 
     public void registerRunStart(Description description) {
-        if (rootSuiteDescription == null) {
-            rootSuiteDescription = description;
-
+        if (rootSuiteDescription.compareAndSet(null, description)) {
             OffsetDateTime startedAt = OffsetDateTime.now();
-            String name = "Espresso test run [" + startedAt.toInstant() + " (UTC)]";
+            // shards of a coordinated run propose the same name, whichever of them starts the run
+            String runKey = EspressoConfiguration.getShardRunKey();
+            String name = runKey != null
+                    ? "Espresso test run [" + runKey + "]"
+                    : "Espresso test run [" + startedAt.toInstant() + " (UTC)]";
             TestRunStartDescriptor testRunStartDescriptor = new TestRunStartDescriptor(
                     name, "espresso", startedAt, null
             );
 
-            registrar.registerStart(testRunStartDescriptor);
+            try {
+                dispatcher.dispatchRunEvent("test run start", () -> registrar.registerStart(testRunStartDescriptor));
+            } finally {
+                runStart.complete(null);
+            }
+        } else {
+            // the tests of this thread must not be reported before the test run exists
+            runStart.join();
         }
     }
 
     public void registerRunFinish(Result result) {
-        registrar.registerFinish(new TestRunFinishDescriptor(OffsetDateTime.now()));
+        TestRunFinishDescriptor testRunFinishDescriptor = new TestRunFinishDescriptor(OffsetDateTime.now());
+
+        dispatcher.drain(EspressoConfiguration.getDispatchDrainTimeout());
+        registrar.registerFinish(testRunFinishDescriptor);
+        this.saveDurationHistory();
     }
 
     @SneakyThrows
     public void registerTestStart(Description description) {
-        String currentTestId = description.getDisplayName();
-        TestCorrelationData testCorrelationData = this.buildTestCorrelationData(description);
+        // the listener is called on the thread running the test
+        RunningTest runningTest = new RunningTest(description.getDisplayName(), Thread.currentThread().getName(), System.nanoTime());
+        String currentTestId = runningTest.testId;
+        TestMethodMetadata testMethodMetadata = testMetadataCache.get(description.getTestClass(), description.getMethodName());
+        TestCorrelationData testCorrelationData = this.buildTestCorrelationData(description, testMethodMetadata, runningTest.thread);
         TestStartDescriptor testStartDescriptor = new TestStartDescriptor(
-                testCorrelationData.asJsonString(),
+                testMethodMetadata.getCorrelationDataJson(testCorrelationData),
                 description.getMethodName(),
                 OffsetDateTime.now(),
                 description.getTestClass(),
-                description.getTestClass().getDeclaredMethod(description.getMethodName()),
+                testMethodMetadata.getMethod(),
                 null
         );
 
-        testRunTestIds.add(currentTestId);
-        registrar.registerTestStart(currentTestId, testStartDescriptor);
+        runningTests.put(description, runningTest);
+        dispatcher.dispatch(currentTestId, "test start", () -> {
+            registrar.registerTestStart(currentTestId, testStartDescriptor);
+            runningTest.startedTest = apiClient.pollStartedTest();
+        });
     }
 
     public void registerTestFinish(Description description) {
-        String currentTestId = description.getDisplayName();
+        RunningTest runningTest = runningTests.remove(description);
 
-        if (testRunTestIds.contains(currentTestId)) {
+        if (runningTest != null) {
+            String currentTestId = runningTest.testId;
             TestFinishDescriptor testFinishDescriptor = new TestFinishDescriptor(Status.PASSED);
 
-            registrar.registerTestFinish(currentTestId, testFinishDescriptor);
-            testRunTestIds.remove(currentTestId);
+            this.recordDuration(description, runningTest);
+            dispatcher.dispatch(currentTestId, "test finish", () -> registrar.registerTestFinish(currentTestId, testFinishDescriptor));
         }
     }
 
     public void registerTestFailure(Failure failure) {
-        String currentTestId = failure.getDescription().getDisplayName();
-
-        if (testRunTestIds.contains(currentTestId)) {
-            TestFinishDescriptor result = new TestFinishDescriptor(Status.FAILED, OffsetDateTime.now(), failure.getTrace());
-
-            registrar.registerTestFinish(currentTestId, result);
-            testRunTestIds.remove(currentTestId);
+        RunningTest runningTest = runningTests.remove(failure.getDescription());
+
+        if (runningTest != null) {
+            String currentTestId = runningTest.testId;
+            EncodedTrace trace = this.encodeTrace(failure);
+            TestFinishDescriptor result = new TestFinishDescriptor(Status.FAILED, OffsetDateTime.now(), trace.getTrace());
+
+            this.recordDuration(failure.getDescription(), runningTest);
+            dispatcher.dispatch(currentTestId, "test failure", () -> {
+                this.uploadHierarchyDump(runningTest, trace);
+                registrar.registerTestFinish(currentTestId, result);
+            });
         }
     }
 
     public void registerTestAssumptionFailure(Failure failure) {
-        String currentTestId = failure.getDescription().getDisplayName();
-
-        if (testRunTestIds.contains(currentTestId)) {
-            TestFinishDescriptor result = new TestFinishDescriptor(Status.SKIPPED, OffsetDateTime.now(), failure.getTrace());
-
-            registrar.registerTestFinish(currentTestId, result);
-            testRunTestIds.remove(currentTestId);
+        RunningTest runningTest = runningTests.remove(failure.getDescription());
+
+        if (runningTest != null) {
+            String currentTestId = runningTest.testId;
+            EncodedTrace trace = this.encodeTrace(failure);
+            TestFinishDescriptor result = new TestFinishDescriptor(Status.SKIPPED, OffsetDateTime.now(), trace.getTrace());
+
+            this.recordDuration(failure.getDescription(), runningTest);
+            dispatcher.dispatch(currentTestId, "test assumption failure", () -> {
+                this.uploadHierarchyDump(runningTest, trace);
+                registrar.registerTestFinish(currentTestId, result);
+            });
         }
     }
 
     public void registerTestIgnored(Description description) {
-        String currentTestId = description.getDisplayName();
+        RunningTest runningTest = runningTests.remove(description);
 
-        if (testRunTestIds.contains(currentTestId)) {
+        if (runningTest != null) {
+            String currentTestId = runningTest.testId;
             TestFinishDescriptor result = new TestFinishDescriptor(Status.SKIPPED);
 
-            registrar.registerTestFinish(currentTestId, result);
-            testRunTestIds.remove(currentTestId);
+            dispatcher.dispatch(currentTestId, "test ignored", () -> registrar.registerTestFinish(currentTestId, result));
         }
     }
 
-    @SneakyThrows
-    private TestCorrelationData buildTestCorrelationData(Description description) {
+    private void recordDuration(Description description, RunningTest runningTest) {
+        if (durationHistory != null) {
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runningTest.startedAtNanos);
+            durationHistory.record(DurationHistory.key(description.getClassName(), description.getMethodName()), durationMillis);
+        }
+    }
+
+    private void saveDurationHistory() {
+        if (durationHistory != null) {
+            try {
+                durationHistory.save();
+            } catch (IOException e) {
+                log.warn("Could not save test duration history.", e);
+            }
+        }
+    }
+
+    private EncodedTrace encodeTrace(Failure failure) {
+        if (traceEncoder == null || failure.getException() == null) {
+            return new EncodedTrace(failure.getTrace(), null, null);
+        }
+        return traceEncoder.encode(failure.getException());
+    }
+
+    /**
+     * Uploads the dump to the test started by the start event of the same lane. The current test of the registrar
+     * can not be used, since it is tracked per thread, and the events of a test may run on different dispatcher threads.
+     */
+    private void uploadHierarchyDump(RunningTest runningTest, EncodedTrace trace) {
+        ZebrunnerApiClientImpl.StartedTest startedTest = runningTest.startedTest;
+        if (trace.getHierarchyDump() != null && startedTest != null) {
+            try {
+                apiClient.uploadTestArtifact(
+                        new ByteArrayInputStream(trace.getHierarchyDump()),
+                        VIEW_HIERARCHY_ARTIFACT_NAME,
+                        startedTest.getTestRunId(),
+                        startedTest.getTestId()
+                );
+            } catch (Exception e) {
+                // the upload rethrows i/o failures unchecked
+                log.warn("Could not attach view hierarchy of the failed test.", e);
+            }
+        }
+    }
+
+    private TestCorrelationData buildTestCorrelationData(Description description, TestMethodMetadata testMethodMetadata, String thread) {
         return TestCorrelationData.builder()
+                                  .thread(thread)
                                   .className(description.getClassName())
                                   .methodName(description.getMethodName())
-                                  .parameterClassNames(
-                                          Arrays.stream(description.getTestClass().getMethod(description.getMethodName()).getParameterTypes())
-                                                .map(Class::getName)
-                                                .collect(Collectors.toList())
-                                  )
+                                  .parameterClassNames(testMethodMetadata.getParameterClassNames())
                                   .displayName(description.getDisplayName())
                                   .build();
     }
 
+    private static final class RunningTest {
+
+        private final String testId;
+        private final String thread;
+        private final long startedAtNanos;
+        // set by the test start event, which precedes the other events of the test in its lane
+        private volatile ZebrunnerApiClientImpl.StartedTest startedTest;
+
+        private RunningTest(String testId, String thread, long startedAtNanos) {
+            this.testId = testId;
+            this.thread = thread;
+            this.startedAtNanos = startedAtNanos;
+        }
+
+    }
+
 }
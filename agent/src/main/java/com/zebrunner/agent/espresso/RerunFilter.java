@@ -0,0 +1,130 @@
+package com.zebrunner.agent.espresso;
+
+import com.zebrunner.agent.core.config.ConfigurationHolder;
+import com.zebrunner.agent.core.registrar.domain.ExchangeRunContextResponse;
+import com.zebrunner.agent.core.registrar.domain.TestDTO;
+import com.zebrunner.agent.espresso.client.impl.ZebrunnerApiClientImpl;
+import com.zebrunner.agent.espresso.core.TestClassMetadataCache;
+import com.zebrunner.agent.espresso.core.TestMethodMetadata;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+import com.zebrunner.agent.espresso.core.rerun.RerunIndex;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Restricts a rerun to the tests selected in Zebrunner, so the rest of the suite is not even instantiated.
+ * <p>
+ * Usage: {@code -e filter com.zebrunner.agent.espresso.RerunFilter -e reporting.run.context <rerun condition>}.
+ * The tests to be rerun are fetched once per process. Without a rerun condition, or if the tests could not be fetched,
+ * all the tests are run.
+ */
+@Slf4j
+public class RerunFilter extends Filter {
+
+    private static final Object LOCK = new Object();
+    // null means all the tests are run
+    private static volatile RerunIndex index;
+    private static volatile boolean indexResolved;
+
+    private final RerunIndex rerunIndex;
+    private final TestClassMetadataCache testMetadataCache = new TestClassMetadataCache(EspressoConfiguration.getTestMetadataCacheSize());
+
+    public RerunFilter() {
+        this.rerunIndex = resolveIndex();
+    }
+
+    @Override
+    public boolean shouldRun(Description description) {
+        if (rerunIndex == null) {
+            return true;
+        }
+
+        if (description.isTest()) {
+            return this.matches(description);
+        }
+        for (Description child : description.getChildren()) {
+            if (this.shouldRun(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String describe() {
+        return rerunIndex != null
+                ? "Zebrunner rerun of " + rerunIndex.size() + " test(s)"
+                : "all tests";
+    }
+
+    private boolean matches(Description description) {
+        String className = description.getClassName();
+        if (!rerunIndex.containsClass(className)) {
+            return false;
+        }
+        if (rerunIndex.containsDisplayName(description.getDisplayName())) {
+            return true;
+        }
+
+        String methodName = description.getMethodName();
+        List<String> parameterClassNames = Collections.emptyList();
+        Class<?> testClass = description.getTestClass();
+        if (testClass != null && methodName != null) {
+            try {
+                TestMethodMetadata metadata = testMetadataCache.get(testClass, methodName);
+                parameterClassNames = metadata.getParameterClassNames();
+            } catch (NoSuchMethodException e) {
+                log.debug("Test method of {} could not be resolved.", description.getDisplayName());
+            }
+        }
+        return rerunIndex.containsMethod(className, methodName, parameterClassNames);
+    }
+
+    private static RerunIndex resolveIndex() {
+        if (!indexResolved) {
+            synchronized (LOCK) {
+                if (!indexResolved) {
+                    index = fetchIndex();
+                    indexResolved = true;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static RerunIndex fetchIndex() {
+        String rerunCondition = EspressoConfiguration.getRunContext();
+        if (rerunCondition == null || !ConfigurationHolder.isReportingEnabled()) {
+            return null;
+        }
+
+        try {
+            ExchangeRunContextResponse response = ZebrunnerApiClientImpl.getInstance().exchangeRerunCondition(rerunCondition);
+            if (response == null || !response.isRunOnlySpecificTests()) {
+                return null;
+            }
+
+            List<String> correlationData = new ArrayList<>();
+            if (response.getTestsToRun() != null) {
+                for (TestDTO test : response.getTestsToRun()) {
+                    correlationData.add(test.getCorrelationData());
+                }
+            }
+
+            RerunIndex rerunIndex = RerunIndex.of(correlationData);
+            log.info("Only {} test(s) selected for the rerun will be run.", rerunIndex.size());
+            return rerunIndex;
+        } catch (RuntimeException e) {
+            log.error("Could not fetch tests to be rerun. All the tests will be run.", e);
+            return null;
+        }
+    }
+
+}
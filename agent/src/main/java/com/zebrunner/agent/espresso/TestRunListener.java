@@ -2,6 +2,9 @@ package com.zebrunner.agent.espresso;
 
 import com.zebrunner.agent.core.registrar.ClientRegistrar;
 import com.zebrunner.agent.espresso.client.impl.ZebrunnerApiClientImpl;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+import com.zebrunner.agent.espresso.core.metrics.AgentMetrics;
+import com.zebrunner.agent.espresso.core.metrics.ListenerCallback;
 
 import org.junit.runner.Description;
 import org.junit.runner.Result;
@@ -15,18 +18,31 @@ import lombok.extern.slf4j.Slf4j;
 public class TestRunListener extends RunListener {
 
     private final JunitAdapter adapter;
+    private final AgentMetrics metrics = AgentMetrics.getInstance();
 
     public TestRunListener() {
-        ClientRegistrar.register(ZebrunnerApiClientImpl.getInstance());
+        long startedAt = System.nanoTime();
+        ZebrunnerApiClientImpl client = ZebrunnerApiClientImpl.getInstance();
+        ClientRegistrar.register(client);
+        if (EspressoConfiguration.isClientWarmupEnabled()) {
+            // runs while the instrumentation is still starting up
+            client.warmUp();
+        }
 
         this.adapter = new JunitAdapter();
+        metrics.recordStartupPhase("listener", System.nanoTime() - startedAt);
     }
 
     @Override
     public void testRunStarted(Description description) {
         log.debug("Registering test run start...");
 
-        adapter.registerRunStart(description);
+        long startedAt = metrics.startCallback();
+        try {
+            adapter.registerRunStart(description);
+        } finally {
+            metrics.recordCallback(ListenerCallback.TEST_RUN_STARTED, startedAt);
+        }
 
         log.debug("Registering test run start finished.");
     }
@@ -36,7 +52,12 @@ public class TestRunListener extends RunListener {
     public void testRunFinished(Result result) {
         log.debug("Registering test run finish...");
 
-        adapter.registerRunFinish(result);
+        long startedAt = metrics.startCallback();
+        try {
+            adapter.registerRunFinish(result);
+        } finally {
+            metrics.recordCallback(ListenerCallback.TEST_RUN_FINISHED, startedAt);
+        }
 
         log.debug("Registering test run finish finished.");
     }
@@ -45,7 +66,12 @@ public class TestRunListener extends RunListener {
     public void testStarted(Description description) {
         log.debug("Registering test start...");
 
-        adapter.registerTestStart(description);
+        long startedAt = metrics.startCallback();
+        try {
+            adapter.registerTestStart(description);
+        } finally {
+            metrics.recordCallback(ListenerCallback.TEST_STARTED, startedAt);
+        }
 
         log.debug("Registering test start finished.");
     }
@@ -54,7 +80,12 @@ public class TestRunListener extends RunListener {
     public void testFinished(Description description) {
         log.debug("Registering test finish...");
 
-        adapter.registerTestFinish(description);
+        long startedAt = metrics.startCallback();
+        try {
+            adapter.registerTestFinish(description);
+        } finally {
+            metrics.recordCallback(ListenerCallback.TEST_FINISHED, startedAt);
+        }
 
         log.debug("Registering test finish finished.");
     }
@@ -63,7 +94,12 @@ public class TestRunListener extends RunListener {
     public void testFailure(Failure failure) {
         log.debug("Registering test failure...");
 
-        adapter.registerTestFailure(failure);
+        long startedAt = metrics.startCallback();
+        try {
+            adapter.registerTestFailure(failure);
+        } finally {
+            metrics.recordCallback(ListenerCallback.TEST_FAILURE, startedAt);
+        }
 
         log.debug("Registering test failure finished.");
     }
@@ -72,7 +108,12 @@ public class TestRunListener extends RunListener {
     public void testAssumptionFailure(Failure failure) {
         log.debug("Registering test assumption failure...");
 
-        adapter.registerTestAssumptionFailure(failure);
+        long startedAt = metrics.startCallback();
+        try {
+            adapter.registerTestAssumptionFailure(failure);
+        } finally {
+            metrics.recordCallback(ListenerCallback.TEST_ASSUMPTION_FAILURE, startedAt);
+        }
 
         log.debug("Registering test assumption failure finished.");
     }
@@ -81,7 +122,12 @@ public class TestRunListener extends RunListener {
     public void testIgnored(Description description) {
         log.debug("Registering test ignored...");
 
-        adapter.registerTestIgnored(description);
+        long startedAt = metrics.startCallback();
+        try {
+            adapter.registerTestIgnored(description);
+        } finally {
+            metrics.recordCallback(ListenerCallback.TEST_IGNORED, startedAt);
+        }
 
         log.debug("Registering test ignored finished.");
     }
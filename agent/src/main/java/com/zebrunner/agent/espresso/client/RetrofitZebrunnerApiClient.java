@@ -12,6 +12,7 @@ import com.zebrunner.agent.core.registrar.domain.TestRunDTO;
 import com.zebrunner.agent.core.registrar.domain.TestRunPlatform;
 import com.zebrunner.agent.core.registrar.domain.TestSessionDTO;
 import com.zebrunner.agent.espresso.client.request.JsonPatchRequestItem;
+import com.zebrunner.agent.espresso.client.response.TestBatchUpdateResult;
 
 import java.util.Collection;
 import java.util.List;
@@ -54,6 +55,10 @@ public interface RetrofitZebrunnerApiClient {
                              @Query("headless") boolean headless,
                              @Body TestDTO testDTO);
 
+    @PUT("/api/reporting/v1/test-runs/{testRunId}/tests:batch-update")
+    Call<TestBatchUpdateResult> updateTests(@Path("testRunId") Long testRunId,
+                                            @Body Map<String, List<TestDTO>> testMap);
+
     @PUT("/api/reporting/v1/test-runs/{testRunId}")
     Call<String> updateTestRun(@Path("testRunId") Long testRunId,
                                @Body TestRunDTO testRun);
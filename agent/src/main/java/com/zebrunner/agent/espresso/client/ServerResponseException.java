@@ -0,0 +1,29 @@
+package com.zebrunner.agent.espresso.client;
+
+import com.zebrunner.agent.core.exception.ServerException;
+
+/**
+ * Thrown when the server responded to a reporting call with an unsuccessful status code.
+ */
+public class ServerResponseException extends ServerException {
+
+    private final int statusCode;
+
+    public ServerResponseException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true if the server rejected the request itself, so sending it again can not succeed
+     */
+    public boolean isRejected() {
+        return statusCode >= 400 && statusCode < 500
+                && statusCode != 401 && statusCode != 408 && statusCode != 429;
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.zebrunner.agent.espresso.client.auth;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Value of the {@code Authorization} header together with the expiration time of the token.
+ */
+@Slf4j
+@Value
+public class AuthToken {
+
+    String authorizationHeader;
+
+    /**
+     * Expiration time of the token or null if it is unknown.
+     */
+    Instant expiresAt;
+
+    /**
+     * Creates a token reading its expiration time from the {@code exp} claim, if the token is a JWT.
+     */
+    public static AuthToken of(String tokenType, String token) {
+        return new AuthToken(tokenType + " " + token, readExpiration(token));
+    }
+
+    private static Instant readExpiration(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+
+        try {
+            String claims = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+            JsonObject claimsObject = JsonParser.parseString(claims).getAsJsonObject();
+            JsonElement expiration = claimsObject.get("exp");
+            return expiration != null && expiration.isJsonPrimitive()
+                    ? Instant.ofEpochSecond(expiration.getAsLong())
+                    : null;
+        } catch (RuntimeException e) {
+            log.debug("Could not read expiration time of the auth token.", e);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.zebrunner.agent.espresso.client.auth;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds the current auth token.
+ * <p>
+ * Reading the token does not take any lock. The token is obtained on the first read and then refreshed
+ * in background shortly before it expires. A refresh is single-flight: concurrent callers asking to replace
+ * the same stale token wait for the one refresh in progress instead of starting their own.
+ */
+@Slf4j
+public class AuthTokenHolder {
+
+    private final Supplier<AuthToken> authenticator;
+    private final Duration refreshMargin;
+
+    private final AtomicReference<AuthToken> token = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<AuthToken>> refreshInProgress = new AtomicReference<>();
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    public AuthTokenHolder(Supplier<AuthToken> authenticator, Duration refreshMargin) {
+        this.authenticator = authenticator;
+        this.refreshMargin = refreshMargin;
+    }
+
+    public String getAuthorizationHeader() {
+        AuthToken current = token.get();
+        if (current == null) {
+            current = this.refresh(null);
+        }
+        return current.getAuthorizationHeader();
+    }
+
+    /**
+     * Starts from a token obtained earlier, e.g. by another process of the same test run.
+     * Ignored if a token has already been obtained.
+     */
+    public void seed(AuthToken seed) {
+        if (token.compareAndSet(null, seed)) {
+            this.scheduleRefresh(seed);
+        }
+    }
+
+    /**
+     * @return the current token without obtaining one, or null if there is no token yet
+     */
+    public AuthToken getCurrent() {
+        return token.get();
+    }
+
+    /**
+     * Obtains a new token unless the given stale one has already been replaced.
+     *
+     * @param staleAuthorizationHeader authorization header which is known to be expired or rejected,
+     *                                 or null if there is no token yet
+     * @return the current token
+     */
+    public AuthToken refresh(String staleAuthorizationHeader) {
+        while (true) {
+            AuthToken current = token.get();
+            if (isReplaced(current, staleAuthorizationHeader)) {
+                return current;
+            }
+
+            CompletableFuture<AuthToken> inProgress = refreshInProgress.get();
+            if (inProgress != null) {
+                return await(inProgress);
+            }
+
+            CompletableFuture<AuthToken> refresh = new CompletableFuture<>();
+            if (refreshInProgress.compareAndSet(null, refresh)) {
+                return this.performRefresh(refresh, staleAuthorizationHeader);
+            }
+        }
+    }
+
+    private AuthToken performRefresh(CompletableFuture<AuthToken> refresh, String staleAuthorizationHeader) {
+        try {
+            // the token could be replaced between the check and winning the race
+            AuthToken current = token.get();
+            if (isReplaced(current, staleAuthorizationHeader)) {
+                refresh.complete(current);
+                return current;
+            }
+
+            AuthToken refreshed = authenticator.get();
+            token.set(refreshed);
+            this.scheduleRefresh(refreshed);
+            refresh.complete(refreshed);
+            return refreshed;
+        } catch (Throwable e) {
+            // the authenticator may throw checked exceptions sneakily. waiters must be released anyway
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            refreshInProgress.set(null);
+        }
+    }
+
+    private synchronized void scheduleRefresh(AuthToken refreshed) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+
+        Instant expiresAt = refreshed.getExpiresAt();
+        if (expiresAt == null) {
+            return;
+        }
+
+        long delayMillis = expiresAt.toEpochMilli() - refreshMargin.toMillis() - System.currentTimeMillis();
+        if (delayMillis <= 0) {
+            // the token lives shorter than the margin. it will be refreshed on the first 401 response
+            return;
+        }
+
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zebrunner-auth-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduledRefresh = scheduler.schedule(() -> this.refreshInBackground(refreshed), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshInBackground(AuthToken expiring) {
+        try {
+            this.refresh(expiring.getAuthorizationHeader());
+        } catch (Exception e) {
+            log.warn("Could not refresh auth token before its expiration. It will be refreshed on the next 401 response.", e);
+        }
+    }
+
+    private static boolean isReplaced(AuthToken current, String staleAuthorizationHeader) {
+        return current != null && !current.getAuthorizationHeader().equals(staleAuthorizationHeader);
+    }
+
+    @SneakyThrows
+    private static AuthToken await(CompletableFuture<AuthToken> refresh) {
+        try {
+            return refresh.join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+}
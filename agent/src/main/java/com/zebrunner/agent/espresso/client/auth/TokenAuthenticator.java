@@ -0,0 +1,50 @@
+package com.zebrunner.agent.espresso.client.auth;
+
+import java.util.Set;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Authenticator;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+/**
+ * Retries a request rejected with 401 once with a refreshed token.
+ * Requests rejected at the same time share a single refresh.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class TokenAuthenticator implements Authenticator {
+
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+
+    private final Set<String> exclusions;
+    private final AuthTokenHolder tokenHolder;
+
+    @Override
+    public Request authenticate(Route route, Response response) {
+        Request request = response.request();
+        if (exclusions.contains(request.url().url().getPath()) || response.priorResponse() != null) {
+            return null;
+        }
+
+        String staleAuthorizationHeader = request.header(AUTHORIZATION_HEADER);
+        AuthToken token;
+        try {
+            token = tokenHolder.refresh(staleAuthorizationHeader);
+        } catch (Exception e) {
+            log.warn("Could not refresh auth token after 401 response.", e);
+            return null;
+        }
+
+        if (token.getAuthorizationHeader().equals(staleAuthorizationHeader)) {
+            return null;
+        }
+
+        return request.newBuilder()
+                      .header(AUTHORIZATION_HEADER, token.getAuthorizationHeader())
+                      .build();
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.zebrunner.agent.espresso.client.converter;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Gson converter factory which serializes request bodies with a {@link JsonWriter} straight into an okio buffer,
+ * without an intermediate {@code String} or {@code JsonElement}. The body is encoded once, on the first use,
+ * so its length is known and the request is not sent chunked. Responses are handled by {@link GsonConverterFactory}.
+ */
+public final class StreamingGsonConverterFactory extends Converter.Factory {
+
+    private static final MediaType MEDIA_TYPE = MediaType.get("application/json; charset=UTF-8");
+
+    private final Gson gson;
+    private final GsonConverterFactory responseConverterFactory;
+
+    public static StreamingGsonConverterFactory create(Gson gson) {
+        return new StreamingGsonConverterFactory(gson);
+    }
+
+    private StreamingGsonConverterFactory(Gson gson) {
+        this.gson = gson;
+        this.responseConverterFactory = GsonConverterFactory.create(gson);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        return responseConverterFactory.responseBodyConverter(type, annotations, retrofit);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Converter<?, RequestBody> requestBodyConverter(Type type,
+                                                          Annotation[] parameterAnnotations,
+                                                          Annotation[] methodAnnotations,
+                                                          Retrofit retrofit) {
+        TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(type));
+        return value -> new JsonRequestBody(gson, adapter, value);
+    }
+
+    private static class JsonRequestBody extends RequestBody {
+
+        private final Gson gson;
+        private final TypeAdapter<Object> adapter;
+        private final Object value;
+
+        private Buffer encoded;
+
+        private JsonRequestBody(Gson gson, TypeAdapter<Object> adapter, Object value) {
+            this.gson = gson;
+            this.adapter = adapter;
+            this.value = value;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE;
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return this.encoded().size();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // a copy shares the segments of the buffer, so the body can be written again, e.g. on a retry
+            sink.writeAll(this.encoded().copy());
+        }
+
+        private synchronized Buffer encoded() throws IOException {
+            if (encoded == null) {
+                Buffer buffer = new Buffer();
+                Writer writer = new OutputStreamWriter(buffer.outputStream(), StandardCharsets.UTF_8);
+                JsonWriter jsonWriter = gson.newJsonWriter(writer);
+                adapter.write(jsonWriter, value);
+                jsonWriter.flush();
+                encoded = buffer;
+            }
+            return encoded;
+        }
+
+    }
+
+}
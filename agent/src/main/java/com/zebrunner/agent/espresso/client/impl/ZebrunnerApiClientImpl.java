@@ -1,9 +1,13 @@
 package com.zebrunner.agent.espresso.client.impl;
 
+import android.graphics.Bitmap;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
 import com.zebrunner.agent.core.config.ConfigurationHolder;
-import com.zebrunner.agent.core.exception.ServerException;
 import com.zebrunner.agent.core.logging.Log;
 import com.zebrunner.agent.core.registrar.ZebrunnerApiClient;
 import com.zebrunner.agent.core.registrar.domain.ArtifactReferenceDTO;
@@ -18,25 +22,69 @@ import com.zebrunner.agent.core.registrar.domain.TestRunPlatform;
 import com.zebrunner.agent.core.registrar.domain.TestSessionDTO;
 import com.zebrunner.agent.espresso.client.AuthorizationHeaderInterceptor;
 import com.zebrunner.agent.espresso.client.RetrofitZebrunnerApiClient;
+import com.zebrunner.agent.espresso.client.ServerResponseException;
+import com.zebrunner.agent.espresso.client.auth.AuthToken;
+import com.zebrunner.agent.espresso.client.auth.AuthTokenHolder;
+import com.zebrunner.agent.espresso.client.auth.TokenAuthenticator;
+import com.zebrunner.agent.espresso.client.converter.StreamingGsonConverterFactory;
 import com.zebrunner.agent.espresso.client.request.JsonPatchRequestItem;
-import com.zebrunner.agent.espresso.core.converter.OffsetDateTimeConverter;
+import com.zebrunner.agent.espresso.client.request.StreamingRequestBody;
+import com.zebrunner.agent.espresso.client.response.TestBatchUpdateResult;
+import com.zebrunner.agent.espresso.client.shard.HttpRunCoordinator;
+import com.zebrunner.agent.espresso.client.transport.CircuitBreaker;
+import com.zebrunner.agent.espresso.client.transport.CircuitOpenException;
+import com.zebrunner.agent.espresso.client.transport.HttpTransport;
+import com.zebrunner.agent.espresso.client.transport.ResiliencePolicy;
+import com.zebrunner.agent.espresso.core.batch.CoalescingBuffer;
+import com.zebrunner.agent.espresso.core.batch.KeyedBatcher;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+import com.zebrunner.agent.espresso.core.dispatch.DeferredDeliveries;
+import com.zebrunner.agent.espresso.core.converter.DtoTypeAdapterFactory;
+import com.zebrunner.agent.espresso.core.converter.OffsetDateTimeTypeAdapter;
+import com.zebrunner.agent.espresso.core.journal.EventJournal;
+import com.zebrunner.agent.espresso.core.journal.JournalEvent;
+import com.zebrunner.agent.espresso.core.journal.JournalEventType;
+import com.zebrunner.agent.espresso.core.journal.JournalShipper;
+import com.zebrunner.agent.espresso.core.knownissue.KnownIssueCache;
+import com.zebrunner.agent.espresso.core.logging.LogShipper;
+import com.zebrunner.agent.espresso.core.metrics.AgentMetrics;
+import com.zebrunner.agent.espresso.core.registration.DeferredTestRegistrations;
+import com.zebrunner.agent.espresso.core.runcontext.RunContext;
+import com.zebrunner.agent.espresso.core.runcontext.RunContextStore;
+import com.zebrunner.agent.espresso.core.screenshot.EncodedScreenshot;
+import com.zebrunner.agent.espresso.core.screenshot.ScreenshotPipeline;
+import com.zebrunner.agent.espresso.core.shard.ShardContext;
+import com.zebrunner.agent.espresso.core.shard.ShardedRun;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
+import retrofit2.Call;
 import retrofit2.Response;
 import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
 import retrofit2.converter.scalars.ScalarsConverterFactory;
 
 @Slf4j
@@ -46,10 +94,54 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
             RetrofitZebrunnerApiClient.REFRESH_TOKEN_PATH
     );
 
+    private static final Set<Integer> UNSUPPORTED_ENDPOINT_STATUS_CODES = Set.of(404, 405, 501);
+
     private static ZebrunnerApiClientImpl INSTANCE;
 
-    private volatile String authToken;
+    private final AuthTokenHolder authTokenHolder = new AuthTokenHolder(this::authenticateClient, EspressoConfiguration.getAuthRefreshMargin());
+    private final boolean reportingEnabled;
+    private final Object clientLock = new Object();
+    // built on the first use, or in background by the warmup
     private volatile RetrofitZebrunnerApiClient client;
+    private volatile OkHttpClient okHttpClient;
+    private final AtomicBoolean firstAuthorization = new AtomicBoolean(true);
+
+    // the components starting threads, or doing i/o, are created along with the client, so the constructor
+    // called on the instrumentation thread only reads the configuration
+    private volatile KeyedBatcher<Long, TestDTO> testFinishBatcher;
+    private volatile boolean testBatchUpdateSupported = true;
+
+    private volatile ScreenshotPipeline screenshotPipeline;
+    private volatile LogShipper logShipper;
+    private final ShardContext shard;
+    private volatile ShardedRun shardedRun;
+    // state of the test run shared with the other instrumentation processes, null if not configured
+    private final RunContextStore runContextStore;
+    private volatile Long resumedTestRunId;
+    private volatile boolean runResumed;
+    private volatile DeferredTestRegistrations deferredRegistrations;
+
+    // null if the items are sent as soon as they are attached
+    private final CoalescingBuffer<LabelDTO> labelBuffer;
+    private final CoalescingBuffer<ArtifactReferenceDTO> artifactReferenceBuffer;
+    private final CoalescingBuffer<TestCaseResult> testCaseResultBuffer;
+
+    private final KnownIssueCache knownIssueCache = EspressoConfiguration.isKnownIssueCacheEnabled() ? new KnownIssueCache() : null;
+    // identities of the running tests, so the known issue confirmations can be shared by invocations of the same test
+    private final Map<Long, String> testIdentities = new ConcurrentHashMap<>();
+    // test started last by the current thread, so the caller of the registrar can address the test it has started
+    private final ThreadLocal<StartedTest> lastStartedTest = new ThreadLocal<>();
+
+    private final ResiliencePolicy resiliencePolicy = ResiliencePolicy.fromConfiguration();
+    private final DeferredDeliveries deferredDeliveries = new DeferredDeliveries(
+            EspressoConfiguration.getCircuitBreakerBufferCapacity(),
+            e -> e instanceof CircuitOpenException,
+            () -> resiliencePolicy.getCircuitBreaker().getRemainingOpenNanos()
+    );
+
+    private volatile Gson gson;
+    private volatile EventJournal journal;
+    private volatile JournalShipper journalShipper;
 
     public static synchronized ZebrunnerApiClientImpl getInstance() {
         if (INSTANCE == null) {
@@ -59,48 +151,333 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     private ZebrunnerApiClientImpl() {
-        if (ConfigurationHolder.isReportingEnabled()) {
-            this.client = this.initClient();
+        this.reportingEnabled = ConfigurationHolder.isReportingEnabled();
+
+        this.runContextStore = reportingEnabled ? RunContextStore.fromConfiguration() : null;
+        this.shard = reportingEnabled ? ShardContext.fromConfiguration() : null;
+
+        resiliencePolicy.getCircuitBreaker().addListener(state -> {
+            if (state == CircuitBreaker.State.CLOSED) {
+                deferredDeliveries.replayAsync();
+            }
+        });
+
+        if (EspressoConfiguration.isAttachmentCoalescingEnabled()) {
+            this.labelBuffer = new CoalescingBuffer<>("label(s)", label -> this.identityOf(label), (testRunId, testId, labels) -> {
+                if (testId != null) {
+                    this.submitTestLabels(testRunId, testId, labels);
+                } else {
+                    this.submitTestRunLabels(testRunId, labels);
+                }
+            });
+            this.artifactReferenceBuffer = new CoalescingBuffer<>("artifact reference(s)", reference -> this.identityOf(reference, "name"), (testRunId, testId, references) -> {
+                if (testId != null) {
+                    this.submitTestArtifactReferences(testRunId, testId, references);
+                } else {
+                    this.submitTestRunArtifactReferences(testRunId, references);
+                }
+            });
+            this.testCaseResultBuffer = new CoalescingBuffer<>("test case result(s)", result -> this.identityOf(result, "tcmType", "testCaseId"), this::submitTestCaseResults);
+        } else {
+            this.labelBuffer = null;
+            this.artifactReferenceBuffer = null;
+            this.testCaseResultBuffer = null;
         }
+
+        AgentMetrics.getInstance().registerGauge("deferredDeliveries", deferredDeliveries::size);
     }
 
-    private RetrofitZebrunnerApiClient initClient() {
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
-                .addInterceptor(new AuthorizationHeaderInterceptor(AUTH_HEADER_INTERCEPTOR_EXCLUSIONS, this::obtainAuthToken))
-                .build();
+    /**
+     * Starts the background work of the agent. Called once, along with building the client.
+     */
+    private void startBackgroundWork() {
+        this.shardedRun = shard != null
+                ? new ShardedRun(shard, HttpRunCoordinator.fromConfiguration())
+                : null;
 
-        Gson gson = new GsonBuilder().registerTypeAdapter(OffsetDateTime.class, new OffsetDateTimeConverter())
-                                     .create();
+        this.testFinishBatcher = EspressoConfiguration.isTestBatchingEnabled()
+                ? new KeyedBatcher<>(
+                        "test-finish",
+                        EspressoConfiguration.getTestBatchSize(),
+                        EspressoConfiguration.getTestBatchWindow(),
+                        this::sendTestFinishBatch
+                )
+                : null;
+        this.deferredRegistrations = EspressoConfiguration.isDeferredRegistrationEnabled()
+                ? new DeferredTestRegistrations(
+                        EspressoConfiguration.getLiveStartThreshold(),
+                        gson,
+                        (testRunId, test) -> this.sendTestStart(testRunId, test, false),
+                        this::registerTestFinish
+                )
+                : null;
+
+        AgentMetrics metrics = AgentMetrics.getInstance();
+        if (EspressoConfiguration.isLogBufferEnabled()) {
+            this.logShipper = LogShipper.fromConfiguration(this::shipLogs);
+            metrics.registerGauge("logBuffer", logShipper::getBufferedLogs);
+        }
+        if (EspressoConfiguration.isAsyncScreenshotUploadEnabled()) {
+            this.screenshotPipeline = ScreenshotPipeline.fromConfiguration(this::sendScreenshot);
+            metrics.registerGauge("screenshots", screenshotPipeline::getPendingScreenshots);
+        }
+
+        if (reportingEnabled && EspressoConfiguration.isJournalEnabled()) {
+            this.openJournal(EspressoConfiguration.getJournalDirectory());
+        }
+    }
+
+    /**
+     * Picks up the test run (and the auth token) of a previous process of the same run, so the current process
+     * makes only the calls specific to its tests.
+     *
+     * @return id of the test run to report into, or null if the current process should start the test run
+     */
+    private Long resumeRunContext() {
+        Long testRunId = EspressoConfiguration.getRunContextTestRunId();
+        RunContext context = runContextStore != null
+                ? runContextStore.load(ConfigurationHolder.getHost(), ConfigurationHolder.getProjectKey())
+                : null;
+        if (context == null) {
+            return testRunId;
+        }
+
+        if (context.getAuthorizationHeader() != null) {
+            Instant expiresAt = context.getAuthTokenExpiresAt() != null ? Instant.ofEpochMilli(context.getAuthTokenExpiresAt()) : null;
+            // a token expiring soon would be refreshed right away anyway
+            if (expiresAt == null || expiresAt.isAfter(Instant.now().plus(EspressoConfiguration.getAuthRefreshMargin()))) {
+                authTokenHolder.seed(new AuthToken(context.getAuthorizationHeader(), expiresAt));
+            }
+        }
+        return testRunId != null ? testRunId : context.getTestRunId();
+    }
+
+    private void saveRunContext(Long testRunId) {
+        if (runContextStore == null || testRunId == null) {
+            return;
+        }
+
+        RunContext context = new RunContext();
+        context.setHost(ConfigurationHolder.getHost());
+        context.setProjectKey(ConfigurationHolder.getProjectKey());
+        context.setTestRunId(testRunId);
+        AuthToken token = authTokenHolder.getCurrent();
+        if (token != null) {
+            context.setAuthorizationHeader(token.getAuthorizationHeader());
+            context.setAuthTokenExpiresAt(token.getExpiresAt() != null ? token.getExpiresAt().toEpochMilli() : null);
+        }
+        runContextStore.save(context);
+    }
+
+    private void openJournal(File directory) {
+        try {
+            this.journal = EventJournal.open(
+                    directory,
+                    EspressoConfiguration.getJournalSegmentSize(),
+                    EspressoConfiguration.getJournalSyncInterval(),
+                    gson
+            );
+            this.journalShipper = new JournalShipper(journal, this::deliverJournalEvent, ZebrunnerApiClientImpl::isRejectedEvent);
+            this.journalShipper.start();
+        } catch (IOException e) {
+            log.error("Could not open reporting journal in {}. Events will be sent directly.", directory, e);
+            this.journal = null;
+        }
+    }
+
+    /**
+     * Appends the event to the journal, so it is delivered to the server in background.
+     *
+     * @return false if journaling is disabled or the event could not be journaled, so it should be delivered right away
+     */
+    private boolean journal(JournalEventType type, Long testRunId, Long testId, Object payload) {
+        if (journal == null) {
+            return false;
+        }
+
+        try {
+            journal.append(new JournalEvent(type, testRunId, testId, gson.toJsonTree(payload)));
+            journalShipper.wakeUp();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not append {} event to the reporting journal. The event will be sent directly.", type, e);
+            return false;
+        }
+    }
+
+    /**
+     * Delivers the event synchronously: the shipper commits the event once this method returns,
+     * so the event must not be left in a batch, which would be lost if the process crashed.
+     */
+    private void deliverJournalEvent(JournalEvent event) {
+        Long testRunId = event.getTestRunId();
+        Long testId = event.getTestId();
+        JsonElement payload = event.getPayload();
+
+        switch (event.getType()) {
+            case TEST_FINISH:
+                this.sendTestFinish(testRunId, gson.fromJson(payload, TestDTO.class));
+                break;
+            case TEST_RUN_FINISH:
+                this.deliverTestRunFinish(gson.fromJson(payload, TestRunDTO.class));
+                break;
+            case LOGS:
+                this.deliverLogs(gson.fromJson(payload, new TypeToken<List<Log>>() {}.getType()), testRunId);
+                break;
+            case TEST_CASE_RESULTS:
+                this.deliverTestCaseResults(testRunId, testId, gson.fromJson(payload, new TypeToken<List<TestCaseResult>>() {}.getType()));
+                break;
+            case TEST_LABELS:
+                this.deliverTestLabels(testRunId, testId, gson.fromJson(payload, new TypeToken<List<LabelDTO>>() {}.getType()));
+                break;
+            case TEST_RUN_LABELS:
+                this.deliverTestRunLabels(testRunId, gson.fromJson(payload, new TypeToken<List<LabelDTO>>() {}.getType()));
+                break;
+            case TEST_ARTIFACT_REFERENCE:
+                this.deliverTestArtifactReferences(testRunId, testId, this.artifactReferencesOf(payload));
+                break;
+            case TEST_RUN_ARTIFACT_REFERENCE:
+                this.deliverTestRunArtifactReferences(testRunId, this.artifactReferencesOf(payload));
+                break;
+        }
+    }
+
+    /**
+     * @return true if the server rejected the journaled event itself, so it is skipped rather than retried
+     */
+    private static boolean isRejectedEvent(Exception e) {
+        return e instanceof ServerResponseException && ((ServerResponseException) e).isRejected();
+    }
+
+    /**
+     * Journals written before the references were coalesced contain a single reference per event.
+     */
+    private List<ArtifactReferenceDTO> artifactReferencesOf(JsonElement payload) {
+        return payload.isJsonArray()
+                ? gson.fromJson(payload, new TypeToken<List<ArtifactReferenceDTO>>() {}.getType())
+                : Collections.singletonList(gson.fromJson(payload, ArtifactReferenceDTO.class));
+    }
+
+    /**
+     * Delivers the events left in the journal located in the given directory, e.g. by a crashed instrumentation process.
+     *
+     * @return number of delivered events
+     */
+    public int replayJournal(File directory) throws IOException {
+        this.client();
+        try (EventJournal replayedJournal = EventJournal.open(directory, EspressoConfiguration.getJournalSegmentSize(), null, gson)) {
+            return new JournalShipper(replayedJournal, this::deliverJournalEvent, ZebrunnerApiClientImpl::isRejectedEvent)
+                    .replayAll(EspressoConfiguration.getDispatchDrainTimeout());
+        } finally {
+            this.flushAttachments();
+            this.flushPendingDeliveries();
+        }
+    }
+
+    /**
+     * Prepares the client in background, so the first reporting call does not pay for it on the test thread:
+     * loads the run context, builds the http client and starts the background work of the agent (e.g. opens the journal),
+     * resolves the server host and authenticates, which also opens the (TLS) connection.
+     * A call made in the meantime waits only for the step it needs, e.g. for the token being obtained.
+     */
+    public void warmUp() {
+        if (!reportingEnabled) {
+            return;
+        }
+
+        Thread warmup = new Thread(() -> {
+            AgentMetrics metrics = AgentMetrics.getInstance();
+            long startedAt = System.nanoTime();
+            try {
+                this.client();
+                long clientBuiltAt = System.nanoTime();
+
+                HttpUrl host = HttpUrl.get(ConfigurationHolder.getHost());
+                okHttpClient.dns().lookup(host.host());
+                long resolvedAt = System.nanoTime();
+                metrics.recordStartupPhase("warmup.dns", resolvedAt - clientBuiltAt);
 
-        return new Retrofit.Builder().baseUrl(ConfigurationHolder.getHost())
-                                     .client(okHttpClient)
-                                     .addConverterFactory(ScalarsConverterFactory.create())
-                                     .addConverterFactory(GsonConverterFactory.create(gson))
-                                     .build()
-                                     .create(RetrofitZebrunnerApiClient.class);
+                authTokenHolder.getAuthorizationHeader();
+                long authenticatedAt = System.nanoTime();
+                metrics.recordStartupPhase("warmup.connection-and-authentication", authenticatedAt - resolvedAt);
+
+                log.info("Zebrunner API client warmed up in {} ms: client {} ms, dns {} ms, connection and authentication {} ms.",
+                        TimeUnit.NANOSECONDS.toMillis(authenticatedAt - startedAt),
+                        TimeUnit.NANOSECONDS.toMillis(clientBuiltAt - startedAt),
+                        TimeUnit.NANOSECONDS.toMillis(resolvedAt - clientBuiltAt),
+                        TimeUnit.NANOSECONDS.toMillis(authenticatedAt - resolvedAt));
+            } catch (Exception e) {
+                // the failed step is retried by the first call which needs it
+                log.warn("Could not warm up Zebrunner API client.", e);
+            }
+        }, "zebrunner-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
     }
 
-    private synchronized String obtainAuthToken() {
-        if (authToken == null) {
-            authToken = this.authenticateClient();
+    private RetrofitZebrunnerApiClient client() {
+        RetrofitZebrunnerApiClient current = client;
+        if (current != null) {
+            return current;
         }
 
-        return authToken;
+        long startedAt = System.nanoTime();
+        synchronized (clientLock) {
+            if (client == null) {
+                client = this.initClient();
+                AgentMetrics.getInstance().recordStartupPhase("client", System.nanoTime() - startedAt);
+            } else {
+                // the client was being built by another thread, e.g. by the warmup
+                AgentMetrics.getInstance().recordStartupPhase("client-wait", System.nanoTime() - startedAt);
+            }
+            return client;
+        }
+    }
+
+    private RetrofitZebrunnerApiClient initClient() {
+        // the run context may provide the auth token, so it is loaded before the first authentication
+        this.resumedTestRunId = reportingEnabled ? this.resumeRunContext() : null;
+        this.gson = new GsonBuilder().registerTypeAdapter(OffsetDateTime.class, new OffsetDateTimeTypeAdapter())
+                                     .registerTypeAdapterFactory(new DtoTypeAdapterFactory())
+                                     .create();
+
+        AuthorizationHeaderInterceptor authorization = new AuthorizationHeaderInterceptor(AUTH_HEADER_INTERCEPTOR_EXCLUSIONS, this::obtainAuthToken);
+        okHttpClient = HttpTransport.newClientBuilder(resiliencePolicy, authorization)
+                .authenticator(new TokenAuthenticator(AUTH_HEADER_INTERCEPTOR_EXCLUSIONS, authTokenHolder))
+                .build();
+
+        RetrofitZebrunnerApiClient apiClient = new Retrofit.Builder().baseUrl(ConfigurationHolder.getHost())
+                                                                     .client(okHttpClient)
+                                                                     .addConverterFactory(ScalarsConverterFactory.create())
+                                                                     .addConverterFactory(StreamingGsonConverterFactory.create(gson))
+                                                                     .build()
+                                                                     .create(RetrofitZebrunnerApiClient.class);
+        this.startBackgroundWork();
+        return apiClient;
+    }
+
+    private String obtainAuthToken() {
+        if (firstAuthorization.compareAndSet(true, false)) {
+            // includes the wait for the authentication started by the warmup, if any
+            long startedAt = System.nanoTime();
+            String authorizationHeader = authTokenHolder.getAuthorizationHeader();
+            AgentMetrics.getInstance().recordStartupPhase("first-call.authentication-wait", System.nanoTime() - startedAt);
+            return authorizationHeader;
+        }
+        return authTokenHolder.getAuthorizationHeader();
     }
 
     @SneakyThrows
-    private String authenticateClient() {
+    private AuthToken authenticateClient() {
         String refreshToken = ConfigurationHolder.getToken();
 
-        Response<AutenticationData> response = client.refreshToken(Collections.singletonMap("refreshToken", refreshToken))
+        Response<AutenticationData> response = this.client().refreshToken(Collections.singletonMap("refreshToken", refreshToken))
                                                      .execute();
         if (!response.isSuccessful()) {
-            // null out the api client since we cannot use it anymore
-            client = null;
             this.throwServerException("Not able to obtain api token", response);
         }
 
-        return response.body().getAuthTokenType() + " " + response.body().getAuthToken();
+        return AuthToken.of(response.body().getAuthTokenType(), response.body().getAuthToken());
     }
 
     private String formatError(String message, Response<?> response) {
@@ -111,17 +488,43 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     private void throwServerException(String message, Response<?> response) {
-        throw new ServerException(this.formatError(message, response));
+        throw new ServerResponseException(this.formatError(message, response), response.code());
     }
 
     @Override
-    @SneakyThrows
     public TestRunDTO registerTestRunStart(TestRunDTO testRun) {
-        Response<TestRunDTO> response = client.startTestRun(ConfigurationHolder.getProjectKey(), testRun)
+        // resumes the run context and starts the background work, unless the warmup has done it
+        this.client();
+        if (resumedTestRunId != null) {
+            runResumed = true;
+            testRun.setId(resumedTestRunId);
+            log.info("Reporting into test run {} started by a previous instrumentation process.", resumedTestRunId);
+            this.saveRunContext(resumedTestRunId);
+            return testRun;
+        }
+
+        TestRunDTO startedTestRun = this.joinOrStartTestRun(testRun);
+        this.saveRunContext(startedTestRun.getId());
+        return startedTestRun;
+    }
+
+    private TestRunDTO joinOrStartTestRun(TestRunDTO testRun) {
+        if (shardedRun != null) {
+            try {
+                testRun.setId(shardedRun.join(() -> this.startTestRun(testRun).getId()));
+                return testRun;
+            } catch (Exception e) {
+                log.error("Could not join the coordinated test run. The current shard will report its own test run.", e);
+            }
+        }
+        return this.startTestRun(testRun);
+    }
+
+    @SneakyThrows
+    private TestRunDTO startTestRun(TestRunDTO testRun) {
+        Response<TestRunDTO> response = this.client().startTestRun(ConfigurationHolder.getProjectKey(), testRun)
                                               .execute();
         if (!response.isSuccessful()) {
-            // null out the api client since we cannot use it anymore
-            client = null;
             this.throwServerException("Could not register start of the test run.", response);
         }
 
@@ -131,9 +534,14 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public void patchTestRunBuild(Long testRunId, String build) {
+        // set by the process which started the test run
+        if (runResumed || shardedRun != null && !shardedRun.isLeader()) {
+            return;
+        }
+
         JsonPatchRequestItem item = new JsonPatchRequestItem("replace", "/config/build", build);
 
-        Response<String> response = client.patchTestRun(testRunId, List.of(item))
+        Response<String> response = this.client().patchTestRun(testRunId, List.of(item))
                                           .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not patch build of the test run.", response);
@@ -143,7 +551,12 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public void setTestRunPlatform(Long testRunId, String platformName, String platformVersion) {
-        Response<String> response = client.setTestRunPlatform(
+        // set by the process which started the test run
+        if (runResumed || shardedRun != null && !shardedRun.isLeader()) {
+            return;
+        }
+
+        Response<String> response = this.client().setTestRunPlatform(
                                                   testRunId,
                                                   new TestRunPlatform(platformName, platformVersion)
                                           )
@@ -154,9 +567,138 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     @Override
-    @SneakyThrows
     public void registerTestRunFinish(TestRunDTO testRun) {
-        Response<String> response = client.updateTestRun(testRun.getId(), testRun)
+        if (screenshotPipeline != null) {
+            screenshotPipeline.drain(EspressoConfiguration.getDispatchDrainTimeout());
+        }
+        if (logShipper != null) {
+            logShipper.drain(EspressoConfiguration.getDispatchDrainTimeout());
+            log.info("Test logs: {}", logShipper.getSummary());
+        }
+        this.reportMetrics(testRun.getId());
+        this.flushAttachments();
+
+        try {
+            if (this.isRunSharedBetweenProcesses()) {
+                // no process knows whether it is the last one, e.g. with the orchestrator running a process per test
+                if (journalShipper != null) {
+                    journalShipper.drain(EspressoConfiguration.getDispatchDrainTimeout());
+                }
+                this.flushPendingDeliveries();
+                log.info("Test run {} is shared by the instrumentation processes of the run and is left for the owner of the run to finish.", testRun.getId());
+                return;
+            }
+            if (shardedRun != null) {
+                // results of the shard must reach the server before the last shard finishes the run
+                if (journalShipper != null) {
+                    journalShipper.drain(EspressoConfiguration.getDispatchDrainTimeout());
+                }
+                this.flushPendingDeliveries();
+                if (!shardedRun.leave()) {
+                    return;
+                }
+            }
+
+            if (this.journal(JournalEventType.TEST_RUN_FINISH, testRun.getId(), null, testRun)) {
+                journalShipper.drain(EspressoConfiguration.getDispatchDrainTimeout());
+            } else {
+                this.deliverTestRunFinish(testRun);
+            }
+        } finally {
+            // keeps the token refreshed during the run for the next process
+            this.saveRunContext(testRun.getId());
+            log.info("Zebrunner API client: {} {}", resiliencePolicy.getSummary(), deferredDeliveries.getSummary());
+            if (deferredRegistrations != null) {
+                log.info("Deferred test registration: {}", deferredRegistrations.getSummary());
+            }
+            if (knownIssueCache != null) {
+                log.info("Known issues: {}", knownIssueCache.getSummary());
+            }
+            if (labelBuffer != null) {
+                log.info("Coalesced attachments: {}, {}, {}.",
+                        labelBuffer.getSummary(), artifactReferenceBuffer.getSummary(), testCaseResultBuffer.getSummary());
+            }
+        }
+    }
+
+    /**
+     * With a run context, or a test run started beforehand, every instrumentation process reports into the same test run.
+     * The test run is then finished by the owner of the run key rather than by any of the processes.
+     */
+    private boolean isRunSharedBetweenProcesses() {
+        return runContextStore != null || resumedTestRunId != null;
+    }
+
+    /**
+     * Sends the labels, artifact references and test case results attached so far, so they are visible in Zebrunner
+     * before the tests or the test run are finished.
+     */
+    public void flushAttachments() {
+        if (labelBuffer != null) {
+            labelBuffer.flushAll();
+            artifactReferenceBuffer.flushAll();
+            testCaseResultBuffer.flushAll();
+        }
+    }
+
+    private void flushAttachments(Long testRunId, Long testId) {
+        if (labelBuffer != null) {
+            labelBuffer.flush(testRunId, testId);
+            artifactReferenceBuffer.flush(testRunId, testId);
+            testCaseResultBuffer.flush(testRunId, testId);
+        }
+    }
+
+    /**
+     * @param fields fields identifying the item. If the item has none of them, the whole item is its identity
+     */
+    private String identityOf(Object item, String... fields) {
+        JsonObject json = gson.toJsonTree(item).getAsJsonObject();
+        StringBuilder identity = new StringBuilder();
+        for (String field : fields) {
+            JsonElement value = json.get(field);
+            if (value != null && !value.isJsonNull()) {
+                identity.append(field).append('=').append(value).append(';');
+            }
+        }
+        return identity.length() > 0 ? identity.toString() : json.toString();
+    }
+
+    /**
+     * Delivers the batched and the deferred events. Events in the journal are not drained here,
+     * since the method is called by the journal shipper too.
+     */
+    private void flushPendingDeliveries() {
+        if (testFinishBatcher != null) {
+            testFinishBatcher.flushAll();
+        }
+        if (!deferredDeliveries.replay(EspressoConfiguration.getDispatchDrainTimeout())) {
+            log.warn("Zebrunner server is still not available. Not all the buffered events were delivered.");
+        }
+    }
+
+    private void reportMetrics(Long testRunId) {
+        AgentMetrics metrics = AgentMetrics.getInstance();
+        if (!metrics.isEnabled()) {
+            return;
+        }
+
+        log.info(metrics.getSummary());
+        if (EspressoConfiguration.isMetricsArtifactEnabled()) {
+            try {
+                byte[] json = metrics.toJson().getBytes(StandardCharsets.UTF_8);
+                this.uploadTestRunArtifact(new ByteArrayInputStream(json), "zebrunner-agent-metrics.json", testRunId);
+            } catch (Exception e) {
+                log.warn("Could not attach agent metrics to the test run.", e);
+            }
+        }
+    }
+
+    @SneakyThrows
+    private void deliverTestRunFinish(TestRunDTO testRun) {
+        this.flushPendingDeliveries();
+
+        Response<String> response = this.client().updateTestRun(testRun.getId(), testRun)
                                           .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not register finish of the test run.", response);
@@ -164,9 +706,40 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     @Override
-    @SneakyThrows
     public TestDTO registerTestStart(Long testRunId, TestDTO test, boolean headless) {
-        Response<TestDTO> response = client.startTest(testRunId, headless, test)
+        lastStartedTest.remove();
+        TestDTO startedTest = deferredRegistrations != null && !headless
+                ? deferredRegistrations.start(testRunId, test)
+                : this.sendTestStart(testRunId, test, headless);
+        if (knownIssueCache != null && startedTest != null && startedTest.getId() != null) {
+            testIdentities.put(startedTest.getId(), test.getClassName() + '#' + test.getMethodName());
+        }
+        this.rememberStartedTest(testRunId, startedTest);
+        return startedTest;
+    }
+
+    private void rememberStartedTest(Long testRunId, TestDTO startedTest) {
+        if (startedTest != null && startedTest.getId() != null) {
+            lastStartedTest.set(new StartedTest(testRunId, startedTest.getId()));
+        }
+    }
+
+    /**
+     * Returns the test started last by the current thread and forgets it. The registrar starts the test
+     * on the thread calling it, so the caller learns the ids of the test without relying on the current test
+     * of the registrar, which is tracked per thread.
+     *
+     * @return null if no test was started by the current thread since the previous call
+     */
+    public StartedTest pollStartedTest() {
+        StartedTest startedTest = lastStartedTest.get();
+        lastStartedTest.remove();
+        return startedTest;
+    }
+
+    @SneakyThrows
+    private TestDTO sendTestStart(Long testRunId, TestDTO test, boolean headless) {
+        Response<TestDTO> response = this.client().startTest(testRunId, headless, test)
                                            .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not register start of the test.", response);
@@ -178,19 +751,25 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public TestDTO registerTestRerunStart(Long testRunId, Long testId, TestDTO test, boolean headless) {
-        Response<TestDTO> response = client.rerunTest(testRunId, testId, headless, test)
+        lastStartedTest.remove();
+        Response<TestDTO> response = this.client().rerunTest(testRunId, testId, headless, test)
                                            .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not register start of rerun of the test.", response);
         }
 
+        this.rememberStartedTest(testRunId, response.body());
         return response.body();
     }
 
     @Override
     @SneakyThrows
     public TestDTO registerHeadlessTestUpdate(Long testRunId, TestDTO test) {
-        Response<TestDTO> response = client.updateTest(testRunId, test.getId(), true, test)
+        if (deferredRegistrations != null) {
+            test = deferredRegistrations.resolve(test);
+        }
+
+        Response<TestDTO> response = this.client().updateTest(testRunId, test.getId(), true, test)
                                            .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not register start of the test.", response);
@@ -202,7 +781,19 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public void revertTestRegistration(Long testRunId, Long testId) {
-        Response<String> response = client.deleteTest(testRunId, testId)
+        if (labelBuffer != null) {
+            labelBuffer.discard(testRunId, testId);
+            artifactReferenceBuffer.discard(testRunId, testId);
+            testCaseResultBuffer.discard(testRunId, testId);
+        }
+        if (deferredRegistrations != null) {
+            testId = deferredRegistrations.revert(testId);
+            if (testId == null) {
+                return;
+            }
+        }
+
+        Response<String> response = this.client().deleteTest(testRunId, testId)
                                           .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not revert test registration.", response);
@@ -210,19 +801,113 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     @Override
-    @SneakyThrows
     public void registerTestFinish(Long testRunId, TestDTO test) {
-        Response<TestDTO> response = client.updateTest(testRunId, test.getId(), false, test)
+        testIdentities.remove(test.getId());
+        this.flushAttachments(testRunId, test.getId());
+
+        if (deferredRegistrations != null && deferredRegistrations.isProvisional(test.getId())) {
+            deferredDeliveries.deliver("registration of test " + test.getId(), () -> {
+                Long testId = deferredRegistrations.finish(testRunId, test);
+                if (screenshotPipeline != null) {
+                    screenshotPipeline.release(testId);
+                }
+            });
+            return;
+        }
+
+        if (screenshotPipeline != null) {
+            screenshotPipeline.release(test.getId());
+        }
+
+        if (!this.journal(JournalEventType.TEST_FINISH, testRunId, test.getId(), test)) {
+            deferredDeliveries.deliver("finish of test " + test.getId(), () -> this.deliverTestFinish(testRunId, test));
+        }
+    }
+
+    private void deliverTestFinish(Long testRunId, TestDTO test) {
+        if (testFinishBatcher != null && testBatchUpdateSupported) {
+            testFinishBatcher.add(testRunId, test);
+        } else {
+            this.sendTestFinish(testRunId, test);
+        }
+    }
+
+    @SneakyThrows
+    private void sendTestFinish(Long testRunId, TestDTO test) {
+        Response<TestDTO> response = this.client().updateTest(testRunId, test.getId(), false, test)
                                            .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not register finish of the test.", response);
         }
     }
 
-    @Override
     @SneakyThrows
+    private void sendTestFinishBatch(Long testRunId, List<TestDTO> tests) {
+        if (testBatchUpdateSupported && tests.size() > 1) {
+            Response<TestBatchUpdateResult> response;
+            try {
+                response = this.client().updateTests(testRunId, Collections.singletonMap("items", tests))
+                                 .execute();
+            } catch (CircuitOpenException e) {
+                deferredDeliveries.defer("finish of " + tests.size() + " test(s)", () -> this.sendTestFinishBatch(testRunId, tests));
+                return;
+            }
+            if (response.isSuccessful()) {
+                this.logFailedBatchItems(response.body());
+                return;
+            }
+
+            if (UNSUPPORTED_ENDPOINT_STATUS_CODES.contains(response.code())) {
+                // the server does not support batch updates, so fall back to single calls for the rest of the run
+                testBatchUpdateSupported = false;
+                log.warn("Batch update of tests is not available for your Zebrunner distribution. Tests will be finished one by one.");
+            } else {
+                log.error(this.formatError("Could not register finish of a batch of tests. Tests will be finished one by one.", response));
+            }
+        }
+
+        for (TestDTO test : tests) {
+            try {
+                deferredDeliveries.deliver("finish of test " + test.getId(), () -> this.sendTestFinish(testRunId, test));
+            } catch (Exception e) {
+                log.error("Could not register finish of the test with id {}.", test.getId(), e);
+            }
+        }
+    }
+
+    private void logFailedBatchItems(TestBatchUpdateResult result) {
+        if (result != null && result.getItems() != null) {
+            for (TestBatchUpdateResult.Item item : result.getItems()) {
+                if (!item.isSuccess()) {
+                    log.error("Could not register finish of the test with id {}: {}", item.getTestId(), item.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
     public void sendLogs(Collection<Log> logs, Long testRunId) {
-        Response<String> response = client.postLogs(testRunId, logs)
+        if (deferredRegistrations != null) {
+            logs = deferredRegistrations.resolveLogs(logs, heldLogs -> this.sendLogs(heldLogs, testRunId));
+        }
+        if (logShipper != null) {
+            for (Log testLog : logs) {
+                logShipper.append(testRunId, testLog);
+            }
+        } else {
+            this.shipLogs(testRunId, logs);
+        }
+    }
+
+    private void shipLogs(Long testRunId, Collection<Log> logs) {
+        if (!this.journal(JournalEventType.LOGS, testRunId, null, logs)) {
+            deferredDeliveries.deliver("batch of " + logs.size() + " log(s)", () -> this.deliverLogs(logs, testRunId));
+        }
+    }
+
+    @SneakyThrows
+    private void deliverLogs(Collection<Log> logs, Long testRunId) {
+        Response<String> response = this.client().postLogs(testRunId, logs)
                                           .execute();
         if (!response.isSuccessful()) {
             log.error(this.formatError("Could not send a batch of test logs.", response));
@@ -230,9 +915,28 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     @Override
-    @SneakyThrows
     public void upsertTestCaseResults(Long testRunId, Long testId, Collection<TestCaseResult> testCaseResults) {
-        Response<String> response = client.upsertTestCaseResults(
+        if (testCaseResultBuffer != null) {
+            testCaseResultBuffer.add(testRunId, testId, testCaseResults);
+        } else {
+            this.submitTestCaseResults(testRunId, testId, testCaseResults);
+        }
+    }
+
+    private void submitTestCaseResults(Long testRunId, Long testId, Collection<TestCaseResult> testCaseResults) {
+        if (deferredRegistrations != null && deferredRegistrations.isProvisional(testId)) {
+            deferredRegistrations.whenRegistered(testId, registeredId -> this.submitTestCaseResults(testRunId, registeredId, testCaseResults));
+            return;
+        }
+
+        if (!this.journal(JournalEventType.TEST_CASE_RESULTS, testRunId, testId, testCaseResults)) {
+            deferredDeliveries.deliver("test case results of test " + testId, () -> this.deliverTestCaseResults(testRunId, testId, testCaseResults));
+        }
+    }
+
+    @SneakyThrows
+    private void deliverTestCaseResults(Long testRunId, Long testId, Collection<TestCaseResult> testCaseResults) {
+        Response<String> response = this.client().upsertTestCaseResults(
                                                   testRunId,
                                                   testId,
                                                   Collections.singletonMap("testCases", testCaseResults)
@@ -246,13 +950,45 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     @Override
-    @SneakyThrows
     public void uploadScreenshot(byte[] screenshot, Long testRunId, Long testId, Long capturedAt) {
-        Response<String> response = client.uploadScreenshot(
-                                                  testRunId,
-                                                  testId,
-                                                  capturedAt.toString(),
-                                                  RequestBody.create(MediaType.parse("image/png"), screenshot)
+        if (deferredRegistrations != null && deferredRegistrations.isProvisional(testId)) {
+            deferredRegistrations.whenRegistered(testId, registeredId -> this.uploadScreenshot(screenshot, testRunId, registeredId, capturedAt));
+            return;
+        }
+
+        if (screenshotPipeline != null) {
+            screenshotPipeline.submit(screenshot, testRunId, testId, capturedAt);
+        } else {
+            this.sendScreenshot(new EncodedScreenshot(testRunId, testId, capturedAt, screenshot, null));
+        }
+    }
+
+    /**
+     * Hands a captured bitmap over to the screenshot pipeline. The bitmap is encoded and uploaded in background.
+     * If the pipeline is disabled, the bitmap is encoded and uploaded on the calling thread.
+     */
+    public void uploadScreenshot(Bitmap screenshot, Long testRunId, Long testId, Long capturedAt) {
+        if (deferredRegistrations != null && deferredRegistrations.isProvisional(testId)) {
+            deferredRegistrations.whenRegistered(testId, registeredId -> this.uploadScreenshot(screenshot, testRunId, registeredId, capturedAt));
+            return;
+        }
+
+        if (screenshotPipeline != null) {
+            screenshotPipeline.submit(screenshot, testRunId, testId, capturedAt);
+        } else {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            screenshot.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+            this.uploadScreenshot(outputStream.toByteArray(), testRunId, testId, capturedAt);
+        }
+    }
+
+    @SneakyThrows
+    private void sendScreenshot(EncodedScreenshot screenshot) {
+        Response<String> response = this.client().uploadScreenshot(
+                                                  screenshot.getTestRunId(),
+                                                  screenshot.getTestId(),
+                                                  screenshot.getCapturedAt().toString(),
+                                                  RequestBody.create(MediaType.parse("image/png"), screenshot.getPng())
                                           )
                                           .execute();
         if (!response.isSuccessful()) {
@@ -263,11 +999,12 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public void uploadTestRunArtifact(InputStream artifact, String name, Long testRunId) {
-        Response<String> response = client.uploadTestRunArtifact(
-                                                  testRunId,
-                                                  this.toRequestPart("file", name, artifact)
-                                          )
-                                          .execute();
+        StreamingRequestBody body = StreamingRequestBody.of(null, artifact);
+        Response<String> response = this.executeUpload(
+                name,
+                body,
+                () -> this.client().uploadTestRunArtifact(testRunId, MultipartBody.Part.createFormData("file", name, body))
+        );
         if (!response.isSuccessful()) {
             log.error(this.formatError("Could not attach test run artifact with name " + name, response));
         }
@@ -276,56 +1013,118 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public void uploadTestArtifact(InputStream artifact, String name, Long testRunId, Long testId) {
-        Response<String> response = client.uploadTestArtifact(
-                                                  testRunId,
-                                                  testId,
-                                                  this.toRequestPart("file", name, artifact)
-                                          )
-                                          .execute();
+        // the stream may be closed by the caller once the method returns, so the upload can not be held
+        Long registeredTestId = deferredRegistrations != null
+                ? deferredRegistrations.resolve(testId)
+                : testId;
+
+        StreamingRequestBody body = StreamingRequestBody.of(null, artifact);
+        Response<String> response = this.executeUpload(
+                name,
+                body,
+                () -> this.client().uploadTestArtifact(testRunId, registeredTestId, MultipartBody.Part.createFormData("file", name, body))
+        );
         if (!response.isSuccessful()) {
             log.error(this.formatError("Could not attach test artifact with name " + name, response));
         }
     }
 
-    @SneakyThrows
-    private MultipartBody.Part toRequestPart(String name, String fileName, InputStream inputStream) {
-        byte[] body = new byte[inputStream.available()];
-        inputStream.read(body);
-
-        return MultipartBody.Part.createFormData(name, fileName, RequestBody.create(null, body));
+    /**
+     * Executes an artifact upload. Uploads of file backed artifacts are restarted from the beginning of the file
+     * if the connection drops in the middle of the transfer.
+     */
+    private Response<String> executeUpload(String name, StreamingRequestBody body, Supplier<Call<String>> callSupplier) throws IOException {
+        int maxAttempts = body.isReplayable() ? EspressoConfiguration.getUploadMaxAttempts() : 1;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return callSupplier.get().execute();
+            } catch (IOException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.warn("Upload of artifact '{}' was interrupted (attempt {} of {}). Retrying...", name, attempt, maxAttempts, e);
+            }
+        }
     }
 
     @Override
-    @SneakyThrows
     public void attachArtifactReferenceToTestRun(Long testRunId, ArtifactReferenceDTO artifactReference) {
-        Response<String> response = client.attachArtifactReferenceToTestRun(
+        if (artifactReferenceBuffer != null) {
+            artifactReferenceBuffer.add(testRunId, null, Collections.singletonList(artifactReference));
+        } else {
+            this.submitTestRunArtifactReferences(testRunId, Collections.singletonList(artifactReference));
+        }
+    }
+
+    private void submitTestRunArtifactReferences(Long testRunId, List<ArtifactReferenceDTO> artifactReferences) {
+        if (!this.journal(JournalEventType.TEST_RUN_ARTIFACT_REFERENCE, testRunId, null, artifactReferences)) {
+            deferredDeliveries.deliver("test run artifact references", () -> this.deliverTestRunArtifactReferences(testRunId, artifactReferences));
+        }
+    }
+
+    @SneakyThrows
+    private void deliverTestRunArtifactReferences(Long testRunId, List<ArtifactReferenceDTO> artifactReferences) {
+        Response<String> response = this.client().attachArtifactReferenceToTestRun(
                                                   testRunId,
-                                                  Collections.singletonMap("items", Collections.singletonList(artifactReference))
+                                                  Collections.singletonMap("items", artifactReferences)
                                           )
                                           .execute();
         if (!response.isSuccessful()) {
-            log.error(this.formatError("Could not attach the following test run artifact reference: " + artifactReference, response));
+            log.error(this.formatError("Could not attach the following test run artifact references: " + artifactReferences, response));
         }
     }
 
     @Override
-    @SneakyThrows
     public void attachArtifactReferenceToTest(Long testRunId, Long testId, ArtifactReferenceDTO artifactReference) {
-        Response<String> response = client.attachArtifactReferenceToTest(
+        if (artifactReferenceBuffer != null) {
+            artifactReferenceBuffer.add(testRunId, testId, Collections.singletonList(artifactReference));
+        } else {
+            this.submitTestArtifactReferences(testRunId, testId, Collections.singletonList(artifactReference));
+        }
+    }
+
+    private void submitTestArtifactReferences(Long testRunId, Long testId, List<ArtifactReferenceDTO> artifactReferences) {
+        if (deferredRegistrations != null && deferredRegistrations.isProvisional(testId)) {
+            deferredRegistrations.whenRegistered(testId, registeredId -> this.submitTestArtifactReferences(testRunId, registeredId, artifactReferences));
+            return;
+        }
+
+        if (!this.journal(JournalEventType.TEST_ARTIFACT_REFERENCE, testRunId, testId, artifactReferences)) {
+            deferredDeliveries.deliver("artifact references of test " + testId, () -> this.deliverTestArtifactReferences(testRunId, testId, artifactReferences));
+        }
+    }
+
+    @SneakyThrows
+    private void deliverTestArtifactReferences(Long testRunId, Long testId, List<ArtifactReferenceDTO> artifactReferences) {
+        Response<String> response = this.client().attachArtifactReferenceToTest(
                                                   testRunId,
                                                   testId,
-                                                  Collections.singletonMap("items", Collections.singletonList(artifactReference))
+                                                  Collections.singletonMap("items", artifactReferences)
                                           )
                                           .execute();
         if (!response.isSuccessful()) {
-            log.error(this.formatError("Could not attach the following test artifact reference: " + artifactReference, response));
+            log.error(this.formatError("Could not attach the following test artifact references: " + artifactReferences, response));
         }
     }
 
     @Override
-    @SneakyThrows
     public void attachLabelsToTestRun(Long testRunId, Collection<LabelDTO> labels) {
-        Response<String> response = client.attachLabelsToTestRun(
+        if (labelBuffer != null) {
+            labelBuffer.add(testRunId, null, labels);
+        } else {
+            this.submitTestRunLabels(testRunId, labels);
+        }
+    }
+
+    private void submitTestRunLabels(Long testRunId, Collection<LabelDTO> labels) {
+        if (!this.journal(JournalEventType.TEST_RUN_LABELS, testRunId, null, labels)) {
+            deferredDeliveries.deliver("test run labels", () -> this.deliverTestRunLabels(testRunId, labels));
+        }
+    }
+
+    @SneakyThrows
+    private void deliverTestRunLabels(Long testRunId, Collection<LabelDTO> labels) {
+        Response<String> response = this.client().attachLabelsToTestRun(
                                                   testRunId,
                                                   Collections.singletonMap("items", labels)
                                           )
@@ -336,9 +1135,28 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     @Override
-    @SneakyThrows
     public void attachLabelsToTest(Long testRunId, Long testId, Collection<LabelDTO> labels) {
-        Response<String> response = client.attachLabelsToTest(
+        if (labelBuffer != null) {
+            labelBuffer.add(testRunId, testId, labels);
+        } else {
+            this.submitTestLabels(testRunId, testId, labels);
+        }
+    }
+
+    private void submitTestLabels(Long testRunId, Long testId, Collection<LabelDTO> labels) {
+        if (deferredRegistrations != null && deferredRegistrations.isProvisional(testId)) {
+            deferredRegistrations.whenRegistered(testId, registeredId -> this.submitTestLabels(testRunId, registeredId, labels));
+            return;
+        }
+
+        if (!this.journal(JournalEventType.TEST_LABELS, testRunId, testId, labels)) {
+            deferredDeliveries.deliver("labels of test " + testId, () -> this.deliverTestLabels(testRunId, testId, labels));
+        }
+    }
+
+    @SneakyThrows
+    private void deliverTestLabels(Long testRunId, Long testId, Collection<LabelDTO> labels) {
+        Response<String> response = this.client().attachLabelsToTest(
                                                   testRunId,
                                                   testId,
                                                   Collections.singletonMap("items", labels)
@@ -352,7 +1170,7 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public ExchangeRunContextResponse exchangeRerunCondition(String rerunCondition) {
-        Response<ExchangeRunContextResponse> response = client.exchangeRerunCondition(rerunCondition)
+        Response<ExchangeRunContextResponse> response = this.client().exchangeRerunCondition(rerunCondition)
                                                               .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not get tests by ci run id.", response);
@@ -364,7 +1182,7 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public TestSessionDTO startSession(Long testRunId, TestSessionDTO testSession) {
-        Response<TestSessionDTO> response = client.startSession(testRunId, testSession)
+        Response<TestSessionDTO> response = this.client().startSession(testRunId, testSession)
                                                   .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not register start of the test session.", response);
@@ -376,7 +1194,7 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     @Override
     @SneakyThrows
     public void updateSession(Long testRunId, TestSessionDTO testSession) {
-        Response<String> response = client.updateSession(testRunId, testSession.getId(), testSession)
+        Response<String> response = this.client().updateSession(testRunId, testSession.getId(), testSession)
                                           .execute();
         if (!response.isSuccessful()) {
             this.throwServerException("Could not update test session.", response);
@@ -384,9 +1202,27 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
     }
 
     @Override
-    @SneakyThrows
     public boolean isKnownIssueAttachedToTest(Long testRunId, Long testId, String failureStacktrace) {
-        Response<KnownIssueConfirmation> response = client.confirmIssue(
+        if (knownIssueCache == null || failureStacktrace == null) {
+            return this.confirmKnownIssue(testRunId, testId, failureStacktrace);
+        }
+
+        String testIdentity = testIdentities.get(testId);
+        return knownIssueCache.isKnownIssue(
+                testIdentity != null ? testIdentity : "test:" + testId,
+                failureStacktrace,
+                () -> this.confirmKnownIssue(testRunId, testId, failureStacktrace)
+        );
+    }
+
+    @SneakyThrows
+    private boolean confirmKnownIssue(Long testRunId, Long testId, String failureStacktrace) {
+        if (deferredRegistrations != null) {
+            // the server needs the test to answer, so a deferred test is registered right away
+            testId = deferredRegistrations.resolve(testId);
+        }
+
+        Response<KnownIssueConfirmation> response = this.client().confirmIssue(
                                                                   testRunId,
                                                                   testId,
                                                                   Collections.singletonMap("failureReason", failureStacktrace)
@@ -399,4 +1235,12 @@ public class ZebrunnerApiClientImpl implements ZebrunnerApiClient {
         return response.body().isKnownIssue();
     }
 
+    @Value
+    public static class StartedTest {
+
+        Long testRunId;
+        Long testId;
+
+    }
+
 }
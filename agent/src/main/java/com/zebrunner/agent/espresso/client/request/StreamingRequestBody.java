@@ -0,0 +1,80 @@
+package com.zebrunner.agent.espresso.client.request;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Request body which streams the content of an {@link InputStream} into the request sink segment by segment,
+ * so the memory consumption does not depend on the size of the content.
+ * <p>
+ * If the stream is backed by a file, the body knows its length and can be written more than once:
+ * every write starts from the position the file had when the body was created.
+ * This allows to resend the body after a dropped connection. Any other stream can be written only once.
+ */
+public class StreamingRequestBody extends RequestBody {
+
+    private static final long SEGMENT_SIZE = 8 * 1024;
+
+    private final MediaType contentType;
+    private final InputStream inputStream;
+    private final FileChannel fileChannel;
+    private final long startPosition;
+
+    public static StreamingRequestBody of(MediaType contentType, InputStream inputStream) throws IOException {
+        if (inputStream instanceof FileInputStream) {
+            FileChannel fileChannel = ((FileInputStream) inputStream).getChannel();
+            return new StreamingRequestBody(contentType, inputStream, fileChannel, fileChannel.position());
+        }
+        return new StreamingRequestBody(contentType, inputStream, null, 0);
+    }
+
+    private StreamingRequestBody(MediaType contentType, InputStream inputStream, FileChannel fileChannel, long startPosition) {
+        this.contentType = contentType;
+        this.inputStream = inputStream;
+        this.fileChannel = fileChannel;
+        this.startPosition = startPosition;
+    }
+
+    public boolean isReplayable() {
+        return fileChannel != null;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return this.isReplayable()
+                ? fileChannel.size() - startPosition
+                : -1;
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return !this.isReplayable();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if (this.isReplayable()) {
+            fileChannel.position(startPosition);
+        }
+
+        // the source is intentionally not closed: the stream is owned by the caller
+        Source source = Okio.source(inputStream);
+        while (source.read(sink.getBuffer(), SEGMENT_SIZE) != -1) {
+            sink.emitCompleteSegments();
+        }
+    }
+
+}
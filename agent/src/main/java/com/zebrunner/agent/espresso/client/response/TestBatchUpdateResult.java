@@ -0,0 +1,27 @@
+package com.zebrunner.agent.espresso.client.response;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class TestBatchUpdateResult {
+
+    private List<Item> items;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class Item {
+
+        private Long testId;
+        private boolean success;
+        private String message;
+
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.zebrunner.agent.espresso.client.shard;
+
+import com.google.gson.Gson;
+import com.zebrunner.agent.espresso.client.transport.HttpTransport;
+import com.zebrunner.agent.espresso.client.transport.ResiliencePolicy;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+import com.zebrunner.agent.espresso.core.shard.RunCoordinator;
+import com.zebrunner.agent.espresso.core.shard.RunMembership;
+import com.zebrunner.agent.espresso.core.shard.ShardContext;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Coordinates the shards through a small HTTP service shared by all the devices of the run:
+ * <ul>
+ *     <li>{@code POST /runs/{key}/shards/{index}?count={n}} joins the run. The response is
+ *     {@code {"testRunId": 1, "leader": false}}. While the run is not started yet, {@code testRunId} is null and
+ *     {@code leader} tells whether the shard holds the lease to start it. Other shards repeat the request.</li>
+ *     <li>{@code PUT /runs/{key}} with {@code {"testRunId": 1, "shardIndex": 0}} publishes the id of the started run.</li>
+ *     <li>{@code DELETE /runs/{key}/leader?shardIndex={index}} gives up the lease if the run could not be started.</li>
+ *     <li>{@code DELETE /runs/{key}/shards/{index}?count={n}} leaves the run. The response is {@code {"remaining": 0}}.</li>
+ * </ul>
+ * The service should expire leases of shards which crashed before they published the run id.
+ */
+@Slf4j
+public class HttpRunCoordinator implements RunCoordinator {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private static final long INITIAL_POLL_PAUSE_MILLIS = 200;
+    private static final long MAX_POLL_PAUSE_MILLIS = 2_000;
+
+    private final HttpUrl baseUrl;
+    private final OkHttpClient client;
+    private final Duration joinTimeout;
+    private final Gson gson = new Gson();
+
+    public HttpRunCoordinator(HttpUrl baseUrl, OkHttpClient client, Duration joinTimeout) {
+        this.baseUrl = baseUrl;
+        this.client = client;
+        this.joinTimeout = joinTimeout;
+    }
+
+    /**
+     * The coordinator gets its own resilience policy, so its availability does not affect the reporting traffic.
+     */
+    public static HttpRunCoordinator fromConfiguration() {
+        return new HttpRunCoordinator(
+                HttpUrl.get(EspressoConfiguration.getShardCoordinatorUrl()),
+                HttpTransport.newClientBuilder(ResiliencePolicy.fromConfiguration()).build(),
+                EspressoConfiguration.getShardJoinTimeout()
+        );
+    }
+
+    @Override
+    public RunMembership join(ShardContext shard, Callable<Long> runStarter) throws Exception {
+        long deadline = System.nanoTime() + joinTimeout.toNanos();
+        long pauseMillis = INITIAL_POLL_PAUSE_MILLIS;
+
+        while (true) {
+            JoinResponse response = this.execute(
+                    new Request.Builder().url(this.shardUrl(shard))
+                                         .post(RequestBody.create(new byte[0], JSON))
+                                         .build(),
+                    JoinResponse.class
+            );
+
+            if (response.testRunId != null) {
+                return new RunMembership(response.testRunId, response.leader);
+            }
+            if (response.leader) {
+                return new RunMembership(this.startRun(shard, runStarter), true);
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("Test run with key '" + shard.getRunKey() + "' was not started by another shard within " + joinTimeout + ".");
+            }
+
+            Thread.sleep(pauseMillis);
+            pauseMillis = Math.min(pauseMillis * 2, MAX_POLL_PAUSE_MILLIS);
+        }
+    }
+
+    private Long startRun(ShardContext shard, Callable<Long> runStarter) throws Exception {
+        Long testRunId;
+        try {
+            testRunId = runStarter.call();
+        } catch (Exception e) {
+            this.releaseLease(shard);
+            throw e;
+        }
+
+        PublishRequest publishRequest = new PublishRequest(testRunId, shard.getShardIndex());
+        try {
+            this.execute(
+                    new Request.Builder().url(this.runUrl(shard).build())
+                                         .put(RequestBody.create(gson.toJson(publishRequest), JSON))
+                                         .build(),
+                    null
+            );
+        } catch (IOException e) {
+            // the run is started already, so the current shard keeps it. Other shards will time out and start their own
+            log.error("Could not publish id of the test run with key '{}' to other shards.", shard.getRunKey(), e);
+        }
+        return testRunId;
+    }
+
+    private void releaseLease(ShardContext shard) {
+        try {
+            HttpUrl url = this.runUrl(shard)
+                              .addPathSegment("leader")
+                              .addQueryParameter("shardIndex", String.valueOf(shard.getShardIndex()))
+                              .build();
+            this.execute(new Request.Builder().url(url).delete().build(), null);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not release the lease to start the test run with key '{}'.", shard.getRunKey(), e);
+        }
+    }
+
+    @Override
+    public int leave(ShardContext shard) throws IOException {
+        LeaveResponse response = this.execute(
+                new Request.Builder().url(this.shardUrl(shard)).delete().build(),
+                LeaveResponse.class
+        );
+        return response.remaining;
+    }
+
+    private HttpUrl.Builder runUrl(ShardContext shard) {
+        return baseUrl.newBuilder()
+                      .addPathSegment("runs")
+                      .addPathSegment(shard.getRunKey());
+    }
+
+    private HttpUrl shardUrl(ShardContext shard) {
+        return this.runUrl(shard)
+                   .addPathSegment("shards")
+                   .addPathSegment(String.valueOf(shard.getShardIndex()))
+                   .addQueryParameter("count", String.valueOf(shard.getShardCount()))
+                   .build();
+    }
+
+    private <T> T execute(Request request, Class<T> responseType) throws IOException {
+        try (Response response = client.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful()) {
+                throw new IOException("Run coordinator responded to " + request.method() + " " + request.url()
+                        + " with status code " + response.code() + ".");
+            }
+            if (responseType == null) {
+                return null;
+            }
+
+            T result = body != null ? gson.fromJson(body.charStream(), responseType) : null;
+            if (result == null) {
+                throw new IOException("Run coordinator returned an empty response to " + request.method() + " " + request.url() + ".");
+            }
+            return result;
+        }
+    }
+
+    private static final class JoinResponse {
+
+        private Long testRunId;
+        private boolean leader;
+
+    }
+
+    private static final class LeaveResponse {
+
+        private int remaining;
+
+    }
+
+    private static final class PublishRequest {
+
+        private final Long testRunId;
+        private final int shardIndex;
+
+        private PublishRequest(Long testRunId, int shardIndex) {
+            this.testRunId = testRunId;
+            this.shardIndex = shardIndex;
+        }
+
+    }
+
+}
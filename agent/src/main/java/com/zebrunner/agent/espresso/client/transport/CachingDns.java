@@ -0,0 +1,64 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Dns;
+
+/**
+ * Caches resolved addresses for the given time to live.
+ * <p>
+ * If a host can not be resolved after its entry has expired, the stale addresses are returned,
+ * so a flaky resolver on a device does not fail the reporting of a whole run.
+ */
+@Slf4j
+public class CachingDns implements Dns {
+
+    private final Dns delegate;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public CachingDns(Dns delegate, Duration ttl) {
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry = entries.get(hostname);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.resolvedAt < ttlNanos) {
+            return entry.addresses;
+        }
+
+        try {
+            List<InetAddress> addresses = delegate.lookup(hostname);
+            entries.put(hostname, new Entry(addresses, now));
+            return addresses;
+        } catch (UnknownHostException e) {
+            if (entry != null) {
+                log.debug("Could not resolve {}. Previously resolved addresses will be used.", hostname, e);
+                return entry.addresses;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+
+        private final List<InetAddress> addresses;
+        private final long resolvedAt;
+
+        private Entry(List<InetAddress> addresses, long resolvedAt) {
+            this.addresses = List.copyOf(addresses);
+            this.resolvedAt = resolvedAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import java.time.Duration;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stops sending requests to the server after a number of consecutive failures.
+ * <p>
+ * Once opened, the circuit rejects requests for the open duration. Then a single probe request is let through:
+ * if it succeeds, the circuit is closed again; otherwise it is opened for twice as long (up to 16 open durations).
+ * Only connection failures and 5xx responses count as failures. Any other response proves the server is available.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+
+    }
+
+    private static final int MAX_OPEN_DURATION_MULTIPLIER = 16;
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean probeInFlight = new AtomicBoolean();
+    private final AtomicInteger openedCount = new AtomicInteger();
+    private final CopyOnWriteArrayList<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntilNanos;
+
+    // guarded by this
+    private int openDurationMultiplier = 1;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Registers a listener notified about every state change. The listener is invoked on the thread which
+     * caused the change, so it should not block.
+     */
+    public void addListener(Consumer<State> listener) {
+        listeners.add(listener);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getOpenedCount() {
+        return openedCount.get();
+    }
+
+    /**
+     * @return nanoseconds left until a probe request is allowed, or 0 if requests are allowed now
+     */
+    public long getRemainingOpenNanos() {
+        return state == State.OPEN
+                ? Math.max(0, openUntilNanos - System.nanoTime())
+                : 0;
+    }
+
+    /**
+     * @return true if a request may be sent. Every allowed request must be followed by
+     * {@link #onSuccess()} or {@link #onFailure()}
+     */
+    public boolean tryAcquirePermission() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openUntilNanos < 0) {
+                return false;
+            }
+            this.transition(State.OPEN, State.HALF_OPEN);
+        }
+
+        return probeInFlight.compareAndSet(false, true);
+    }
+
+    /**
+     * Gives back a permission which was not used to send a request, e.g. because the caller was interrupted.
+     * If it was the one of the probe request, another caller may send the probe.
+     */
+    public void releasePermission() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight.set(false);
+        }
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state != State.CLOSED) {
+            this.close();
+        }
+    }
+
+    public void onFailure() {
+        State current = state;
+        if (current == State.HALF_OPEN) {
+            this.open(true);
+        } else if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            this.open(false);
+        }
+    }
+
+    private void open(boolean probeFailed) {
+        long openDurationMillis;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                return;
+            }
+            openDurationMultiplier = probeFailed
+                    ? Math.min(openDurationMultiplier * 2, MAX_OPEN_DURATION_MULTIPLIER)
+                    : 1;
+            long openDuration = openDurationNanos * openDurationMultiplier;
+            openUntilNanos = System.nanoTime() + openDuration;
+            openDurationMillis = Duration.ofNanos(openDuration).toMillis();
+            consecutiveFailures.set(0);
+            probeInFlight.set(false);
+            state = State.OPEN;
+            openedCount.incrementAndGet();
+        }
+        log.warn("Zebrunner server is not available. Requests are suspended for {} ms.", openDurationMillis);
+        this.notifyListeners(State.OPEN);
+    }
+
+    private void close() {
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            openDurationMultiplier = 1;
+            probeInFlight.set(false);
+            state = State.CLOSED;
+        }
+        log.info("Zebrunner server is available again. Requests are resumed.");
+        this.notifyListeners(State.CLOSED);
+    }
+
+    private void transition(State from, State to) {
+        synchronized (this) {
+            if (state != from) {
+                return;
+            }
+            state = to;
+        }
+        this.notifyListeners(to);
+    }
+
+    private void notifyListeners(State newState) {
+        for (Consumer<State> listener : listeners) {
+            try {
+                listener.accept(newState);
+            } catch (RuntimeException e) {
+                log.debug("Circuit breaker listener failed.", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request while the circuit breaker considers the server unavailable.
+ */
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+
+}
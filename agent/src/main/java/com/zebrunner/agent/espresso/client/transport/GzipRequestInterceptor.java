@@ -0,0 +1,76 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import java.io.IOException;
+
+import lombok.RequiredArgsConstructor;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Compresses JSON and text request bodies which are not smaller than the given size.
+ * <p>
+ * Bodies of unknown length (e.g. JSON streamed by the converter) are buffered first, so the size threshold
+ * can be applied to them too. The compressed body has a known length and can be replayed on retries.
+ * Multipart bodies (screenshots and artifacts) are sent as is.
+ */
+@RequiredArgsConstructor
+public class GzipRequestInterceptor implements Interceptor {
+
+    private final long minSize;
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+
+        if (!this.isCompressible(request, body)) {
+            return chain.proceed(request);
+        }
+
+        long contentLength = body.contentLength();
+        if (contentLength >= 0 && contentLength < minSize) {
+            return chain.proceed(request);
+        }
+
+        Buffer content = new Buffer();
+        body.writeTo(content);
+
+        if (content.size() < minSize) {
+            return chain.proceed(
+                    request.newBuilder()
+                           .method(request.method(), RequestBody.create(content.readByteString(), body.contentType()))
+                           .build()
+            );
+        }
+
+        Buffer compressed = new Buffer();
+        try (BufferedSink gzipSink = Okio.buffer(new GzipSink(compressed))) {
+            gzipSink.writeAll(content);
+        }
+
+        return chain.proceed(
+                request.newBuilder()
+                       .header("Content-Encoding", "gzip")
+                       .method(request.method(), RequestBody.create(compressed.readByteString(), body.contentType()))
+                       .build()
+        );
+    }
+
+    private boolean isCompressible(Request request, RequestBody body) {
+        if (body == null || body.isOneShot() || body.isDuplex() || request.header("Content-Encoding") != null) {
+            return false;
+        }
+
+        MediaType contentType = body.contentType();
+        return contentType != null
+                && ("json".equals(contentType.subtype()) || "text".equals(contentType.type()));
+    }
+
+}
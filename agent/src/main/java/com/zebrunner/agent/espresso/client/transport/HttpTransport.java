@@ -0,0 +1,95 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+import com.zebrunner.agent.espresso.core.metrics.AgentMetrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Builds the {@link OkHttpClient} used for the reporting traffic from the {@link EspressoConfiguration}.
+ * <p>
+ * The connection pool keeps a warm connection for every thread which may talk to the server at the same time.
+ * Over TLS, HTTP/2 is negotiated when the server supports it, so the concurrent requests share a single connection.
+ * Requests are scheduled in priority lanes, so bulk uploads do not delay the test status updates.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class HttpTransport {
+
+    // shared by all the clients, since their requests compete for the same network
+    private static PriorityLaneInterceptor laneInterceptor;
+
+    public static OkHttpClient.Builder newClientBuilder(ResiliencePolicy resiliencePolicy) {
+        return newClientBuilder(resiliencePolicy, null);
+    }
+
+    /**
+     * @param resiliencePolicy policy applied to every request before any other interceptor, so retries go
+     *                         through compression and authorization again
+     * @param authorization    interceptor adding the authorization to the requests, or null. Applied before a request
+     *                         takes its lane, so a request waiting for the authentication does not hold a lane permit
+     */
+    public static OkHttpClient.Builder newClientBuilder(ResiliencePolicy resiliencePolicy, Interceptor authorization) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(EspressoConfiguration.getHttpMaxRequestsPerHost());
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+
+        AgentMetrics metrics = AgentMetrics.getInstance();
+        if (metrics.isEnabled()) {
+            builder.addInterceptor(MetricsInterceptor.calls(metrics))
+                   .addNetworkInterceptor(MetricsInterceptor.attempts(metrics));
+        }
+
+        builder.addInterceptor(resiliencePolicy);
+        if (authorization != null) {
+            builder.addInterceptor(authorization);
+        }
+        if (EspressoConfiguration.isPriorityLanesEnabled()) {
+            // inside of the resilience policy, so a request does not hold its lane while backing off before a retry
+            builder.addInterceptor(getLaneInterceptor(metrics));
+        }
+        builder.connectionPool(new ConnectionPool(
+                       EspressoConfiguration.getHttpMaxIdleConnections(),
+                       EspressoConfiguration.getHttpKeepAlive().toMillis(),
+                       TimeUnit.MILLISECONDS
+               ))
+               .dispatcher(dispatcher)
+               .protocols(EspressoConfiguration.isHttp2Enabled()
+                       ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                       : List.of(Protocol.HTTP_1_1))
+               .connectTimeout(EspressoConfiguration.getHttpConnectTimeout())
+               .readTimeout(EspressoConfiguration.getHttpReadTimeout())
+               .writeTimeout(EspressoConfiguration.getHttpWriteTimeout())
+               .retryOnConnectionFailure(true);
+
+        Duration dnsCacheTtl = EspressoConfiguration.getHttpDnsCacheTtl();
+        if (!dnsCacheTtl.isZero() && !dnsCacheTtl.isNegative()) {
+            builder.dns(new CachingDns(Dns.SYSTEM, dnsCacheTtl));
+        }
+
+        if (EspressoConfiguration.isHttpGzipEnabled()) {
+            builder.addInterceptor(new GzipRequestInterceptor(EspressoConfiguration.getHttpGzipMinSize()));
+        }
+
+        return builder;
+    }
+
+    private static synchronized PriorityLaneInterceptor getLaneInterceptor(AgentMetrics metrics) {
+        if (laneInterceptor == null) {
+            laneInterceptor = PriorityLaneInterceptor.fromConfiguration(metrics);
+        }
+        return laneInterceptor;
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import java.util.Set;
+
+/**
+ * Priority class of a request to the reporting API, from the highest priority to the lowest.
+ */
+public enum Lane {
+
+    /**
+     * Test run and test registrations, labels, known issues and the other small calls the dashboard depends on.
+     */
+    LIFECYCLE,
+    LOGS,
+    /**
+     * Screenshots and artifacts.
+     */
+    BULK;
+
+    // the token refresh may be made by a request which holds a permit of its lane, see TokenAuthenticator
+    private static final Set<String> UNSCHEDULED_ENDPOINTS = Set.of("refreshToken");
+    private static final Set<String> LOG_ENDPOINTS = Set.of("postLogs");
+    private static final Set<String> BULK_ENDPOINTS = Set.of("uploadScreenshot", "uploadTestRunArtifact", "uploadTestArtifact");
+
+    /**
+     * @param endpoint name of the {@code RetrofitZebrunnerApiClient} method
+     * @return lane of the endpoint, or null if requests of the endpoint are not scheduled in lanes
+     */
+    public static Lane of(String endpoint) {
+        if (UNSCHEDULED_ENDPOINTS.contains(endpoint)) {
+            return null;
+        }
+        if (LOG_ENDPOINTS.contains(endpoint)) {
+            return LOGS;
+        }
+        if (BULK_ENDPOINTS.contains(endpoint)) {
+            return BULK;
+        }
+        return LIFECYCLE;
+    }
+
+    public String getName() {
+        return this.name().toLowerCase();
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import com.zebrunner.agent.espresso.core.metrics.AgentMetrics;
+import com.zebrunner.agent.espresso.core.metrics.EndpointMetrics;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import retrofit2.Invocation;
+
+/**
+ * Records the metrics of API calls. Endpoints are identified by the name of the
+ * {@code RetrofitZebrunnerApiClient} method which made the call.
+ * <p>
+ * As an application interceptor, it records latency (including retries) and errors of the call.
+ * As a network interceptor, it counts every attempt and the transferred bytes.
+ * Bytes of request bodies with an unknown length (e.g. compressed ones) are counted while the body is written.
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    private static final String UNKNOWN_ENDPOINT = "other";
+
+    private final AgentMetrics metrics;
+    private final boolean network;
+
+    private MetricsInterceptor(AgentMetrics metrics, boolean network) {
+        this.metrics = metrics;
+        this.network = network;
+    }
+
+    public static MetricsInterceptor calls(AgentMetrics metrics) {
+        return new MetricsInterceptor(metrics, false);
+    }
+
+    public static MetricsInterceptor attempts(AgentMetrics metrics) {
+        return new MetricsInterceptor(metrics, true);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        EndpointMetrics endpoint = metrics.endpoint(endpointName(request));
+        return network
+                ? this.interceptAttempt(chain, request, endpoint)
+                : this.interceptCall(chain, request, endpoint);
+    }
+
+    private Response interceptCall(Chain chain, Request request, EndpointMetrics endpoint) throws IOException {
+        endpoint.getCalls().incrementAndGet();
+        long startedAt = System.nanoTime();
+        try {
+            Response response = chain.proceed(request);
+            if (!response.isSuccessful()) {
+                endpoint.getErrors().incrementAndGet();
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            endpoint.getErrors().incrementAndGet();
+            throw e;
+        } finally {
+            endpoint.getLatency().record(System.nanoTime() - startedAt);
+        }
+    }
+
+    private Response interceptAttempt(Chain chain, Request request, EndpointMetrics endpoint) throws IOException {
+        endpoint.getAttempts().incrementAndGet();
+
+        RequestBody requestBody = request.body();
+        if (requestBody != null) {
+            long contentLength = requestBody.contentLength();
+            if (contentLength >= 0) {
+                endpoint.getRequestBytes().addAndGet(contentLength);
+            } else {
+                request = request.newBuilder()
+                                 .method(request.method(), new CountingRequestBody(requestBody, endpoint))
+                                 .build();
+            }
+        }
+
+        Response response = chain.proceed(request);
+        ResponseBody responseBody = response.body();
+        if (responseBody != null && responseBody.contentLength() > 0) {
+            endpoint.getResponseBytes().addAndGet(responseBody.contentLength());
+        }
+        return response;
+    }
+
+    /**
+     * Counts the bytes of a body with an unknown length as they are written.
+     */
+    private static final class CountingRequestBody extends RequestBody {
+
+        private final RequestBody delegate;
+        private final EndpointMetrics endpoint;
+
+        private CountingRequestBody(RequestBody delegate, EndpointMetrics endpoint) {
+            this.delegate = delegate;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return delegate.isOneShot();
+        }
+
+        @Override
+        public boolean isDuplex() {
+            return delegate.isDuplex();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            BufferedSink countingSink = Okio.buffer(new ForwardingSink(sink) {
+
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    super.write(source, byteCount);
+                    endpoint.getRequestBytes().addAndGet(byteCount);
+                }
+
+            });
+            delegate.writeTo(countingSink);
+            countingSink.emit();
+        }
+
+    }
+
+    static String endpointName(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        return invocation != null
+                ? invocation.method().getName()
+                : UNKNOWN_ENDPOINT;
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+import com.zebrunner.agent.espresso.core.metrics.AgentMetrics;
+import com.zebrunner.agent.espresso.core.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * Schedules the requests in priority lanes (see {@link Lane}), so uploads of screenshots and artifacts
+ * do not hold up the test status updates and the logs.
+ * <p>
+ * Every lane limits the number of its requests in flight and, optionally, the bandwidth of their bodies.
+ * A request of a lower lane waits before it is started, and pauses between the chunks of its body,
+ * while requests of a higher lane are queued or in flight. The total time a request yields this way is bounded,
+ * so the lower lanes are slowed down but never starved.
+ * <p>
+ * The token refresh is not scheduled, since it is made on behalf of requests which may hold all the permits of a lane.
+ */
+public class PriorityLaneInterceptor implements Interceptor {
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final long YIELD_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private final long maxYieldNanos;
+    private final long acquireTimeoutNanos;
+
+    /**
+     * @param acquireTimeout max time a request waits for a permit of its lane, failing with an {@link InterruptedIOException}
+     */
+    public PriorityLaneInterceptor(Map<Lane, Integer> concurrency,
+                                   Map<Lane, Long> bandwidthBytesPerSecond,
+                                   Duration maxYield,
+                                   Duration acquireTimeout,
+                                   AgentMetrics metrics) {
+        this.maxYieldNanos = maxYield.toNanos();
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        for (Lane lane : Lane.values()) {
+            long bandwidth = bandwidthBytesPerSecond.getOrDefault(lane, 0L);
+            LaneState state = new LaneState(
+                    Math.max(1, concurrency.getOrDefault(lane, 1)),
+                    bandwidth > 0 ? new RateLimiter(bandwidth) : null,
+                    metrics.queueTime("lane." + lane.getName()),
+                    metrics.queueTime("lane." + lane.getName() + ".preempted")
+            );
+            lanes.put(lane, state);
+            metrics.registerGauge("lane." + lane.getName(), state.waiting::get);
+        }
+    }
+
+    public static PriorityLaneInterceptor fromConfiguration(AgentMetrics metrics) {
+        Map<Lane, Integer> concurrency = new EnumMap<>(Lane.class);
+        Map<Lane, Long> bandwidth = new EnumMap<>(Lane.class);
+        for (Lane lane : Lane.values()) {
+            concurrency.put(lane, EspressoConfiguration.getLaneConcurrency(lane.getName()));
+            bandwidth.put(lane, EspressoConfiguration.getLaneBandwidth(lane.getName()));
+        }
+        return new PriorityLaneInterceptor(
+                concurrency, bandwidth, EspressoConfiguration.getLaneMaxYield(), EspressoConfiguration.getLaneAcquireTimeout(), metrics
+        );
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Lane lane = Lane.of(MetricsInterceptor.endpointName(request));
+        if (lane == null) {
+            return chain.proceed(request);
+        }
+        LaneState state = lanes.get(lane);
+        YieldBudget yieldBudget = new YieldBudget();
+
+        long queuedAt = System.nanoTime();
+        state.waiting.incrementAndGet();
+        try {
+            this.yieldToHigherLanes(lane, yieldBudget);
+            if (!state.permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new InterruptedIOException("Timed out waiting in the " + lane.getName() + " lane");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting in the " + lane.getName() + " lane");
+        } finally {
+            state.waiting.decrementAndGet();
+        }
+        state.queueTime.record(System.nanoTime() - queuedAt);
+
+        state.active.incrementAndGet();
+        try {
+            RequestBody body = request.body();
+            if (body != null && (state.bandwidth != null || lane != Lane.LIFECYCLE)) {
+                request = request.newBuilder()
+                                 .method(request.method(), new LaneRequestBody(body, lane, state, yieldBudget))
+                                 .build();
+            }
+            return chain.proceed(request);
+        } finally {
+            state.active.decrementAndGet();
+            state.permits.release();
+            if (yieldBudget.yieldedNanos > 0) {
+                state.preemptedTime.record(yieldBudget.yieldedNanos);
+            }
+        }
+    }
+
+    /**
+     * Parks the current thread while a higher lane has requests queued or in flight, within the yield budget.
+     */
+    private void yieldToHigherLanes(Lane lane, YieldBudget budget) throws InterruptedException {
+        while (budget.yieldedNanos < maxYieldNanos && this.isHigherLaneBusy(lane)) {
+            long parkedAt = System.nanoTime();
+            LockSupport.parkNanos(YIELD_PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            budget.yieldedNanos += System.nanoTime() - parkedAt;
+        }
+    }
+
+    private boolean isHigherLaneBusy(Lane lane) {
+        for (Lane higherLane : Lane.values()) {
+            if (higherLane.ordinal() >= lane.ordinal()) {
+                return false;
+            }
+            LaneState state = lanes.get(higherLane);
+            if (state.waiting.get() > 0 || state.active.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class LaneState {
+
+        private final Semaphore permits;
+        private final RateLimiter bandwidth;
+        private final LatencyHistogram queueTime;
+        private final LatencyHistogram preemptedTime;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+
+        private LaneState(int concurrency, RateLimiter bandwidth, LatencyHistogram queueTime, LatencyHistogram preemptedTime) {
+            this.permits = new Semaphore(concurrency, true);
+            this.bandwidth = bandwidth;
+            this.queueTime = queueTime;
+            this.preemptedTime = preemptedTime;
+        }
+
+    }
+
+    /**
+     * Time a single request has yielded to the higher lanes so far. Accessed by the thread of the request only.
+     */
+    private static final class YieldBudget {
+
+        private long yieldedNanos;
+
+    }
+
+    /**
+     * Writes the body chunk by chunk, applying the bandwidth limit of the lane and yielding to the higher lanes.
+     */
+    private final class LaneRequestBody extends RequestBody {
+
+        private final RequestBody delegate;
+        private final Lane lane;
+        private final LaneState state;
+        private final YieldBudget yieldBudget;
+
+        private LaneRequestBody(RequestBody delegate, Lane lane, LaneState state, YieldBudget yieldBudget) {
+            this.delegate = delegate;
+            this.lane = lane;
+            this.state = state;
+            this.yieldBudget = yieldBudget;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return delegate.isOneShot();
+        }
+
+        @Override
+        public boolean isDuplex() {
+            return delegate.isDuplex();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            BufferedSink laneSink = Okio.buffer(new LaneSink(sink));
+            delegate.writeTo(laneSink);
+            laneSink.emit();
+        }
+
+        private final class LaneSink extends ForwardingSink {
+
+            private LaneSink(Sink delegate) {
+                super(delegate);
+            }
+
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                long remaining = byteCount;
+                while (remaining > 0) {
+                    long chunk = Math.min(CHUNK_SIZE, remaining);
+                    try {
+                        yieldToHigherLanes(lane, yieldBudget);
+                        if (state.bandwidth != null) {
+                            state.bandwidth.acquire(chunk);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while writing a request of the " + lane.getName() + " lane");
+                    }
+                    super.write(source, chunk);
+                    remaining -= chunk;
+                }
+            }
+
+        }
+
+    }
+
+}
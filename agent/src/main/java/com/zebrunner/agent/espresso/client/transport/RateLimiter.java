@@ -0,0 +1,59 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the rate of requests (or bytes) sent by the agent.
+ * <p>
+ * The bucket holds up to one second worth of permits, so short bursts are not delayed.
+ * A caller reserves a permit under the lock and waits for it outside of the lock.
+ */
+public class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double maxPermits;
+
+    // guarded by this
+    private double storedPermits;
+    private long lastRefillNanos;
+
+    public RateLimiter(double permitsPerSecond) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxPermits = Math.max(1, permitsPerSecond);
+        this.storedPermits = maxPermits;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, waiting for it if the rate is exceeded.
+     *
+     * @return time spent waiting in nanoseconds
+     */
+    public long acquire() throws InterruptedException {
+        return this.acquire(1);
+    }
+
+    /**
+     * Takes the given number of permits, e.g. one per byte, waiting for them if the rate is exceeded.
+     *
+     * @return time spent waiting in nanoseconds
+     */
+    public long acquire(long permits) throws InterruptedException {
+        long waitNanos = this.reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    private synchronized long reserve(long permits) {
+        long now = System.nanoTime();
+        storedPermits = Math.min(maxPermits, storedPermits + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+
+        // the balance goes below zero for the callers which have to wait
+        storedPermits -= permits;
+        return storedPermits >= 0 ? 0 : (long) (-storedPermits / permitsPerNano);
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.zebrunner.agent.espresso.client.transport;
+
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Applies the rate limit, the circuit breaker and the retry policy to every request sent to the server.
+ * <p>
+ * A request is retried with jittered exponential backoff when:
+ * <ul>
+ *     <li>the server rejected it without processing: {@code 429} or {@code 503}. {@code Retry-After} is honored;</li>
+ *     <li>the connection could not be established, so the request was not sent at all;</li>
+ *     <li>the request is idempotent ({@code GET}, {@code PUT}, {@code DELETE}, ...) and failed with an I/O error
+ *     or a {@code 5xx} response.</li>
+ * </ul>
+ * One-shot request bodies are never retried.
+ */
+@Slf4j
+public class ResiliencePolicy implements Interceptor {
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+    private static final Set<Integer> REJECTED_STATUS_CODES = Set.of(429, 503);
+    private static final Set<Integer> FAILED_STATUS_CODES = Set.of(408, 500, 502, 504);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long maxRetryAfterMillis;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong backoffNanos = new AtomicLong();
+    private final AtomicLong rateLimitWaitNanos = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    public static ResiliencePolicy fromConfiguration() {
+        double requestsPerSecond = EspressoConfiguration.getRateLimit();
+        return new ResiliencePolicy(
+                EspressoConfiguration.getRetryMaxAttempts(),
+                EspressoConfiguration.getRetryInitialBackoff(),
+                EspressoConfiguration.getRetryMaxBackoff(),
+                requestsPerSecond > 0 ? new RateLimiter(requestsPerSecond) : null,
+                new CircuitBreaker(
+                        EspressoConfiguration.getCircuitBreakerFailureThreshold(),
+                        EspressoConfiguration.getCircuitBreakerOpenDuration()
+                )
+        );
+    }
+
+    public ResiliencePolicy(int maxAttempts,
+                            Duration initialBackoff,
+                            Duration maxBackoff,
+                            RateLimiter rateLimiter,
+                            CircuitBreaker circuitBreaker) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.maxRetryAfterMillis = Math.max(maxBackoffMillis, TimeUnit.MINUTES.toMillis(1));
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        boolean replayable = body == null || !body.isOneShot();
+        boolean idempotent = IDEMPOTENT_METHODS.contains(request.method());
+
+        for (int attempt = 1; ; attempt++) {
+            this.acquirePermission(request);
+            requests.incrementAndGet();
+
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (RuntimeException e) {
+                // not a response of the server, e.g. a failure of another interceptor
+                circuitBreaker.releasePermission();
+                throw e;
+            } catch (IOException e) {
+                circuitBreaker.onFailure();
+                boolean retriable = replayable && (idempotent || isNotSent(e)) && attempt < maxAttempts;
+                if (!retriable) {
+                    throw e;
+                }
+                log.debug("{} {} failed (attempt {} of {}). Retrying...", request.method(), request.url().encodedPath(), attempt, maxAttempts, e);
+                this.backoff(this.computeBackoff(attempt));
+                continue;
+            }
+
+            int code = response.code();
+            if (code >= 500) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+
+            boolean retriable = REJECTED_STATUS_CODES.contains(code) || (idempotent && FAILED_STATUS_CODES.contains(code));
+            if (!retriable || !replayable || attempt >= maxAttempts) {
+                return response;
+            }
+
+            long retryAfterMillis = retryAfterMillis(response);
+            if (retryAfterMillis > maxRetryAfterMillis) {
+                return response;
+            }
+
+            response.close();
+            log.debug("{} {} responded with {} (attempt {} of {}). Retrying...", request.method(), request.url().encodedPath(), code, attempt, maxAttempts);
+            this.backoff(retryAfterMillis >= 0 ? retryAfterMillis : this.computeBackoff(attempt));
+        }
+    }
+
+    private void acquirePermission(Request request) throws IOException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            rejectedRequests.incrementAndGet();
+            throw new CircuitOpenException("Zebrunner server is not available. " + request.method() + " " + request.url().encodedPath() + " is not sent.");
+        }
+
+        if (rateLimiter != null) {
+            try {
+                rateLimitWaitNanos.addAndGet(rateLimiter.acquire());
+            } catch (InterruptedException e) {
+                // the request is not sent, so the permission must not be held, otherwise a probe would never end
+                circuitBreaker.releasePermission();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for rate limit");
+            }
+        }
+    }
+
+    /**
+     * Full jitter: a random delay between zero and the exponentially growing cap.
+     */
+    private long computeBackoff(int attempt) {
+        long cap = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private void backoff(long millis) throws IOException {
+        retries.incrementAndGet();
+        backoffNanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for retry");
+        }
+    }
+
+    public String getSummary() {
+        return String.format(
+                "%d request(s), %d retry(ies), %d ms of backoff, %d ms of rate limit waits, %d request(s) rejected by open circuit. "
+                        + "Circuit breaker is %s, opened %d time(s).",
+                requests.get(),
+                retries.get(),
+                TimeUnit.NANOSECONDS.toMillis(backoffNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(rateLimitWaitNanos.get()),
+                rejectedRequests.get(),
+                circuitBreaker.getState(),
+                circuitBreaker.getOpenedCount()
+        );
+    }
+
+    private static boolean isNotSent(IOException e) {
+        return e instanceof ConnectException || e instanceof UnknownHostException || e instanceof NoRouteToHostException;
+    }
+
+    /**
+     * @return delay requested by the {@code Retry-After} header in milliseconds, or -1 if there is no valid header
+     */
+    private static long retryAfterMillis(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return -1;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            // not a number of seconds, so it must be an HTTP date
+        }
+
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            log.debug("Could not parse Retry-After header value '{}'.", retryAfter);
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.zebrunner.agent.espresso.core;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded cache of test method metadata.
+ * <p>
+ * On the first lookup for a test class all its public methods are resolved at once, so every next test of the class
+ * costs a map lookup instead of a reflective method search. The least recently used classes are evicted
+ * once the number of cached classes exceeds the max size.
+ * <p>
+ * The lock is held for the map lookup only. Methods of a class are resolved outside of it, so tests running
+ * in parallel do not wait for the reflection of each other.
+ */
+public class TestClassMetadataCache {
+
+    // guarded by itself
+    private final Map<Class<?>, Map<String, TestMethodMetadata>> classes;
+
+    public TestClassMetadataCache(int maxClasses) {
+        this.classes = new LinkedHashMap<Class<?>, Map<String, TestMethodMetadata>>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Class<?>, Map<String, TestMethodMetadata>> eldest) {
+                return this.size() > maxClasses;
+            }
+
+        };
+    }
+
+    /**
+     * Returns metadata of the test method with the given name. The name may contain parameters suffix
+     * of a parameterized test (e.g. {@code shouldLogin[1]}).
+     */
+    public TestMethodMetadata get(Class<?> testClass, String methodName) throws NoSuchMethodException {
+        Map<String, TestMethodMetadata> methods;
+        synchronized (classes) {
+            methods = classes.get(testClass);
+        }
+
+        if (methods == null) {
+            Map<String, TestMethodMetadata> resolvedMethods = resolveMethods(testClass);
+            synchronized (classes) {
+                // the class may be resolved by another thread in the meantime. its metadata is kept, as it is already in use
+                methods = classes.putIfAbsent(testClass, resolvedMethods);
+                if (methods == null) {
+                    methods = resolvedMethods;
+                }
+            }
+        }
+
+        TestMethodMetadata metadata = methods.get(methodName);
+        if (metadata == null) {
+            metadata = methods.get(stripParameters(methodName));
+        }
+        if (metadata == null) {
+            throw new NoSuchMethodException(testClass.getName() + "." + methodName + "()");
+        }
+        return metadata;
+    }
+
+    private static Map<String, TestMethodMetadata> resolveMethods(Class<?> testClass) {
+        Map<String, TestMethodMetadata> methods = new HashMap<>();
+        for (Method method : testClass.getMethods()) {
+            TestMethodMetadata existing = methods.get(method.getName());
+            // overloads are possible, but a method without parameters is the one a plain junit test refers to
+            if (existing == null || method.getParameterCount() == 0 && existing.getMethod().getParameterCount() > 0) {
+                methods.put(method.getName(), toMetadata(method));
+            }
+        }
+        return methods;
+    }
+
+    private static TestMethodMetadata toMetadata(Method method) {
+        List<String> parameterClassNames = Arrays.stream(method.getParameterTypes())
+                                                 .map(Class::getName)
+                                                 .collect(Collectors.toList());
+        return new TestMethodMetadata(method, Collections.unmodifiableList(parameterClassNames));
+    }
+
+    private static String stripParameters(String methodName) {
+        int parametersStart = methodName.indexOf('[');
+        return parametersStart > 0
+                ? methodName.substring(0, parametersStart).trim()
+                : methodName;
+    }
+
+}
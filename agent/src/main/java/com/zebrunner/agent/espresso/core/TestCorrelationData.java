@@ -1,6 +1,8 @@
 package com.zebrunner.agent.espresso.core;
 
 import com.google.gson.Gson;
+import com.google.gson.annotations.JsonAdapter;
+import com.zebrunner.agent.espresso.core.converter.TestCorrelationDataTypeAdapter;
 
 import java.util.List;
 
@@ -9,11 +11,15 @@ import lombok.Value;
 
 @Value
 @Builder
+@JsonAdapter(TestCorrelationDataTypeAdapter.class)
 public class TestCorrelationData {
 
     private static final Gson GSON = new Gson();
 
-    String thread = Thread.currentThread().getName();
+    /**
+     * Name of the thread running the test. Passed explicitly, since the data may be built on another thread.
+     */
+    String thread;
 
     String className;
     String methodName;
@@ -0,0 +1,36 @@
+package com.zebrunner.agent.espresso.core;
+
+import com.zebrunner.agent.espresso.core.converter.TestCorrelationDataTypeAdapter;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Reflection data of a test method resolved once per test class.
+ * <p>
+ * The parameter class names are rendered to json once, so a test start renders only the parts of its correlation data
+ * which differ between the tests. The json is the same as {@link TestCorrelationData#asJsonString()}.
+ */
+@Getter
+public class TestMethodMetadata {
+
+    private final Method method;
+    private final List<String> parameterClassNames;
+    private final String parameterClassNamesJson;
+
+    public TestMethodMetadata(Method method, List<String> parameterClassNames) {
+        this.method = method;
+        this.parameterClassNames = parameterClassNames;
+        this.parameterClassNamesJson = TestCorrelationDataTypeAdapter.toJsonArray(parameterClassNames);
+    }
+
+    public String getCorrelationDataJson(TestCorrelationData correlationData) {
+        if (correlationData.getParameterClassNames() != parameterClassNames) {
+            return correlationData.asJsonString();
+        }
+        return TestCorrelationDataTypeAdapter.toJson(correlationData, parameterClassNamesJson);
+    }
+
+}
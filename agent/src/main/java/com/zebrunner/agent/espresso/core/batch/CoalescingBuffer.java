@@ -0,0 +1,128 @@
+package com.zebrunner.agent.espresso.core.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects the items attached to a test (or to the test run) and sends them with a single request once flushed,
+ * e.g. when the test is finished. Items with the same identity are merged: the last one added wins,
+ * keeping the position of the first one.
+ *
+ * @param <T> item type, e.g. label
+ */
+@Slf4j
+public class CoalescingBuffer<T> {
+
+    private final String name;
+    private final Function<T, String> identity;
+    private final Sender<T> sender;
+
+    // guarded by this
+    private final Map<Target, Map<String, T>> pendingItems = new HashMap<>();
+
+    private final AtomicLong addedItems = new AtomicLong();
+    private final AtomicLong sentItems = new AtomicLong();
+    private final AtomicLong sentRequests = new AtomicLong();
+
+    /**
+     * @param identity returns the identity of an item, items with the same identity are sent once
+     */
+    public CoalescingBuffer(String name, Function<T, String> identity, Sender<T> sender) {
+        this.name = name;
+        this.identity = identity;
+        this.sender = sender;
+    }
+
+    /**
+     * @param testId id of the test, or null for the items of the test run
+     */
+    public void add(Long testRunId, Long testId, Collection<T> items) {
+        synchronized (this) {
+            Map<String, T> targetItems = pendingItems.computeIfAbsent(new Target(testRunId, testId), target -> new LinkedHashMap<>());
+            for (T item : items) {
+                targetItems.put(identity.apply(item), item);
+            }
+        }
+        addedItems.addAndGet(items.size());
+    }
+
+    /**
+     * Sends the pending items of the test (or of the test run, if the test id is null) on the calling thread.
+     */
+    public void flush(Long testRunId, Long testId) {
+        Target target = new Target(testRunId, testId);
+        Map<String, T> items;
+        synchronized (this) {
+            items = pendingItems.remove(target);
+        }
+
+        if (items != null) {
+            this.send(target, items);
+        }
+    }
+
+    /**
+     * Sends all the pending items on the calling thread.
+     */
+    public void flushAll() {
+        Map<Target, Map<String, T>> items;
+        synchronized (this) {
+            items = new HashMap<>(pendingItems);
+            pendingItems.clear();
+        }
+
+        items.forEach(this::send);
+    }
+
+    /**
+     * Drops the pending items of the test, e.g. when its registration is reverted.
+     */
+    public void discard(Long testRunId, Long testId) {
+        synchronized (this) {
+            pendingItems.remove(new Target(testRunId, testId));
+        }
+    }
+
+    public String getSummary() {
+        return addedItems.get() + " " + name + " sent as " + sentItems.get() + " item(s) in " + sentRequests.get() + " request(s)";
+    }
+
+    private void send(Target target, Map<String, T> items) {
+        List<T> distinctItems = new ArrayList<>(items.values());
+        try {
+            sender.send(target.testRunId, target.testId, distinctItems);
+            sentItems.addAndGet(distinctItems.size());
+            sentRequests.incrementAndGet();
+        } catch (Exception e) {
+            log.error("Could not send {} {}.", distinctItems.size(), name, e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Sender<T> {
+
+        /**
+         * @param testId id of the test, or null for the items of the test run
+         */
+        void send(Long testRunId, Long testId, List<T> items);
+
+    }
+
+    @Value
+    private static class Target {
+
+        Long testRunId;
+        Long testId;
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.zebrunner.agent.espresso.core.batch;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects items into per key batches. A batch is handed over to the sender as soon as it reaches
+ * the max size, or when the time window elapses since the first item of the batch was added,
+ * whichever happens first.
+ *
+ * @param <K> batch key type, e.g. test run id
+ * @param <T> batch item type
+ */
+@Slf4j
+public class KeyedBatcher<K, T> {
+
+    private final int maxBatchSize;
+    private final Duration window;
+    private final BiConsumer<K, List<T>> sender;
+    private final ScheduledExecutorService scheduler;
+
+    // guarded by this
+    private final Map<K, List<T>> batches = new HashMap<>();
+
+    public KeyedBatcher(String name, int maxBatchSize, Duration window, BiConsumer<K, List<T>> sender) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.window = window;
+        this.sender = sender;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "zebrunner-" + name + "-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void add(K key, T item) {
+        List<T> completedBatch = null;
+        synchronized (this) {
+            List<T> batch = batches.get(key);
+            if (batch == null) {
+                List<T> newBatch = new ArrayList<>(maxBatchSize);
+                batches.put(key, newBatch);
+                scheduler.schedule(() -> this.flush(key, newBatch), window.toMillis(), TimeUnit.MILLISECONDS);
+                batch = newBatch;
+            }
+
+            batch.add(item);
+            if (batch.size() >= maxBatchSize) {
+                completedBatch = batches.remove(key);
+            }
+        }
+
+        if (completedBatch != null) {
+            this.send(key, completedBatch);
+        }
+    }
+
+    /**
+     * Sends the pending batch of the given key on the calling thread.
+     */
+    public void flush(K key) {
+        List<T> batch;
+        synchronized (this) {
+            batch = batches.remove(key);
+        }
+
+        if (batch != null) {
+            this.send(key, batch);
+        }
+    }
+
+    /**
+     * Sends all the pending batches on the calling thread.
+     */
+    public void flushAll() {
+        Map<K, List<T>> pendingBatches;
+        synchronized (this) {
+            pendingBatches = new HashMap<>(batches);
+            batches.clear();
+        }
+
+        pendingBatches.forEach(this::send);
+    }
+
+    private void flush(K key, List<T> expectedBatch) {
+        boolean removed;
+        synchronized (this) {
+            removed = batches.remove(key, expectedBatch);
+        }
+
+        if (removed) {
+            this.send(key, expectedBatch);
+        }
+    }
+
+    private void send(K key, List<T> batch) {
+        try {
+            sender.accept(key, batch);
+        } catch (Exception e) {
+            log.error("Could not send a batch of {} item(s).", batch.size(), e);
+        }
+    }
+
+}
@@ -0,0 +1,647 @@
+package com.zebrunner.agent.espresso.core.config;
+
+import com.zebrunner.agent.espresso.core.dispatch.BackpressurePolicy;
+import com.zebrunner.agent.espresso.core.logging.LogDropPolicy;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Locale;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Espresso specific agent settings.
+ * <p>
+ * Every property is resolved from the instrumentation arguments ({@code -e <key> <value>}) first,
+ * then from the JVM system properties and finally from the environment variables
+ * (e.g. {@code reporting.espresso.async.enabled} becomes {@code REPORTING_ESPRESSO_ASYNC_ENABLED}).
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class EspressoConfiguration {
+
+    private static final String INSTRUMENTATION_REGISTRY_CLASS = "androidx.test.platform.app.InstrumentationRegistry";
+
+    private static final String ASYNC_ENABLED = "reporting.espresso.async.enabled";
+    private static final String DISPATCH_THREADS = "reporting.espresso.dispatch.threads";
+    private static final String DISPATCH_QUEUE_CAPACITY = "reporting.espresso.dispatch.queue-capacity";
+    private static final String DISPATCH_BACKPRESSURE = "reporting.espresso.dispatch.backpressure";
+    private static final String DISPATCH_DRAIN_TIMEOUT_MILLIS = "reporting.espresso.dispatch.drain-timeout-millis";
+
+    private static final String TEST_BATCHING_ENABLED = "reporting.espresso.batch.enabled";
+    private static final String TEST_BATCH_SIZE = "reporting.espresso.batch.size";
+    private static final String TEST_BATCH_WINDOW_MILLIS = "reporting.espresso.batch.window-millis";
+
+    private static final String UPLOAD_MAX_ATTEMPTS = "reporting.espresso.upload.max-attempts";
+
+    private static final String SCREENSHOT_ASYNC_ENABLED = "reporting.espresso.screenshot.async.enabled";
+    private static final String SCREENSHOT_ENCODER_THREADS = "reporting.espresso.screenshot.encoder-threads";
+    private static final String SCREENSHOT_UPLOAD_CONCURRENCY = "reporting.espresso.screenshot.upload-concurrency";
+    private static final String SCREENSHOT_QUEUE_CAPACITY = "reporting.espresso.screenshot.queue-capacity";
+    private static final String SCREENSHOT_QUEUE_TIMEOUT_MILLIS = "reporting.espresso.screenshot.queue-timeout-millis";
+    private static final String SCREENSHOT_MAX_DIMENSION = "reporting.espresso.screenshot.max-dimension";
+    private static final String SCREENSHOT_DEDUPE_ENABLED = "reporting.espresso.screenshot.dedupe.enabled";
+
+    private static final String JOURNAL_ENABLED = "reporting.espresso.journal.enabled";
+    private static final String JOURNAL_DIRECTORY = "reporting.espresso.journal.directory";
+    private static final String JOURNAL_SEGMENT_SIZE = "reporting.espresso.journal.segment-size";
+    private static final String JOURNAL_SYNC_INTERVAL_MILLIS = "reporting.espresso.journal.sync-interval-millis";
+
+    private static final String TEST_METADATA_CACHE_SIZE = "reporting.espresso.test-metadata-cache.size";
+
+    private static final String HTTP_CONNECT_TIMEOUT_MILLIS = "reporting.espresso.http.connect-timeout-millis";
+    private static final String HTTP_READ_TIMEOUT_MILLIS = "reporting.espresso.http.read-timeout-millis";
+    private static final String HTTP_WRITE_TIMEOUT_MILLIS = "reporting.espresso.http.write-timeout-millis";
+    private static final String HTTP_MAX_IDLE_CONNECTIONS = "reporting.espresso.http.max-idle-connections";
+    private static final String HTTP_KEEP_ALIVE_MILLIS = "reporting.espresso.http.keep-alive-millis";
+    private static final String HTTP_MAX_REQUESTS_PER_HOST = "reporting.espresso.http.max-requests-per-host";
+    private static final String HTTP2_ENABLED = "reporting.espresso.http.http2.enabled";
+    private static final String HTTP_DNS_CACHE_TTL_MILLIS = "reporting.espresso.http.dns-cache-ttl-millis";
+    private static final String HTTP_GZIP_ENABLED = "reporting.espresso.http.gzip.enabled";
+    private static final String HTTP_GZIP_MIN_SIZE = "reporting.espresso.http.gzip.min-size";
+
+    private static final String AUTH_REFRESH_MARGIN_MILLIS = "reporting.espresso.auth.refresh-margin-millis";
+
+    private static final String RETRY_MAX_ATTEMPTS = "reporting.espresso.retry.max-attempts";
+    private static final String RETRY_INITIAL_BACKOFF_MILLIS = "reporting.espresso.retry.initial-backoff-millis";
+    private static final String RETRY_MAX_BACKOFF_MILLIS = "reporting.espresso.retry.max-backoff-millis";
+    private static final String RATE_LIMIT = "reporting.espresso.rate-limit.requests-per-second";
+    private static final String CIRCUIT_BREAKER_FAILURE_THRESHOLD = "reporting.espresso.circuit-breaker.failure-threshold";
+    private static final String CIRCUIT_BREAKER_OPEN_MILLIS = "reporting.espresso.circuit-breaker.open-millis";
+    private static final String CIRCUIT_BREAKER_BUFFER_CAPACITY = "reporting.espresso.circuit-breaker.buffer-capacity";
+
+    private static final String LOG_BUFFER_ENABLED = "reporting.espresso.logs.buffer.enabled";
+    private static final String LOG_BUFFER_CAPACITY = "reporting.espresso.logs.buffer.capacity";
+    private static final String LOG_BUFFER_MAX_BYTES = "reporting.espresso.logs.buffer.max-bytes";
+    private static final String LOG_BATCH_MAX_BYTES = "reporting.espresso.logs.batch.max-bytes";
+    private static final String LOG_FLUSH_INTERVAL_MILLIS = "reporting.espresso.logs.flush-interval-millis";
+    private static final String LOG_DROP_POLICY = "reporting.espresso.logs.drop-policy";
+    private static final String LOG_SAMPLE_RATE = "reporting.espresso.logs.sample-rate";
+    private static final String LOG_BLOCK_TIMEOUT_MILLIS = "reporting.espresso.logs.block-timeout-millis";
+
+    private static final String METRICS_ENABLED = "reporting.espresso.metrics.enabled";
+    private static final String METRICS_ARTIFACT_ENABLED = "reporting.espresso.metrics.artifact.enabled";
+
+    private static final String SHARD_RUN_KEY = "reporting.espresso.shard.run-key";
+    private static final String SHARD_COORDINATOR_URL = "reporting.espresso.shard.coordinator-url";
+    private static final String SHARD_INDEX = "reporting.espresso.shard.index";
+    private static final String SHARD_COUNT = "reporting.espresso.shard.count";
+    private static final String SHARD_JOIN_TIMEOUT_MILLIS = "reporting.espresso.shard.join-timeout-millis";
+    // sharding arguments of the AndroidJUnitRunner
+    private static final String RUNNER_SHARD_INDEX = "shardIndex";
+    private static final String RUNNER_SHARD_COUNT = "numShards";
+
+    private static final String DEFERRED_REGISTRATION_ENABLED = "reporting.espresso.registration.deferred.enabled";
+    private static final String LIVE_START_THRESHOLD_MILLIS = "reporting.espresso.registration.live-start-threshold-millis";
+
+    private static final String KNOWN_ISSUE_CACHE_ENABLED = "reporting.espresso.known-issue.cache.enabled";
+
+    private static final String TRACE_ENCODING_ENABLED = "reporting.espresso.trace.encoding.enabled";
+    private static final String TRACE_MAX_LENGTH = "reporting.espresso.trace.max-length";
+    private static final String TRACE_HIERARCHY_ARTIFACT_ENABLED = "reporting.espresso.trace.hierarchy-artifact.enabled";
+    private static final String TRACE_COLLAPSE_FRAMEWORK_FRAMES = "reporting.espresso.trace.collapse-framework-frames";
+
+    private static final String PRIORITY_LANES_ENABLED = "reporting.espresso.lanes.enabled";
+    // followed by the lane name and the property, e.g. reporting.espresso.lanes.bulk.concurrency
+    private static final String LANE_PREFIX = "reporting.espresso.lanes.";
+    private static final String LANE_MAX_YIELD_MILLIS = "reporting.espresso.lanes.max-yield-millis";
+    private static final String LANE_ACQUIRE_TIMEOUT_MILLIS = "reporting.espresso.lanes.acquire-timeout-millis";
+
+    private static final String CLIENT_WARMUP_ENABLED = "reporting.espresso.startup.warmup.enabled";
+
+    private static final String RUN_CONTEXT_FILE = "reporting.espresso.run-context.file";
+    private static final String RUN_CONTEXT_KEY = "reporting.espresso.run-context.key";
+    private static final String RUN_CONTEXT_TEST_RUN_ID = "reporting.espresso.run-context.test-run-id";
+
+    private static final String ATTACHMENT_COALESCING_ENABLED = "reporting.espresso.attachments.coalescing.enabled";
+
+    private static final String DURATION_HISTORY_ENABLED = "reporting.espresso.duration-history.enabled";
+    private static final String DURATION_HISTORY_FILE = "reporting.espresso.duration-history.file";
+    private static final String SHARD_DURATION_HISTORY_FILE = "reporting.espresso.shard.duration-history.file";
+    private static final String SHARD_DURATION_HISTORY_CHECKSUM = "reporting.espresso.shard.duration-history.checksum";
+
+    // shared with the agent core, so the same instrumentation argument drives both the rerun registration and filtering
+    private static final String RUN_CONTEXT = "reporting.run.context";
+
+    private static volatile Object instrumentationArguments;
+    private static volatile Method argumentGetter;
+    private static volatile boolean instrumentationArgumentsResolved;
+
+    public static boolean isAsyncReportingEnabled() {
+        return getBoolean(ASYNC_ENABLED, false);
+    }
+
+    public static int getDispatchThreads() {
+        return getInt(DISPATCH_THREADS, 4);
+    }
+
+    public static int getDispatchQueueCapacity() {
+        return getInt(DISPATCH_QUEUE_CAPACITY, 2048);
+    }
+
+    public static BackpressurePolicy getDispatchBackpressurePolicy() {
+        return getEnum(DISPATCH_BACKPRESSURE, BackpressurePolicy.class, BackpressurePolicy.BLOCK);
+    }
+
+    public static Duration getDispatchDrainTimeout() {
+        return Duration.ofMillis(getLong(DISPATCH_DRAIN_TIMEOUT_MILLIS, 120_000L));
+    }
+
+    public static boolean isTestBatchingEnabled() {
+        return getBoolean(TEST_BATCHING_ENABLED, false);
+    }
+
+    public static int getTestBatchSize() {
+        return getInt(TEST_BATCH_SIZE, 50);
+    }
+
+    public static Duration getTestBatchWindow() {
+        return Duration.ofMillis(getLong(TEST_BATCH_WINDOW_MILLIS, 2_000L));
+    }
+
+    public static int getUploadMaxAttempts() {
+        return Math.max(1, getInt(UPLOAD_MAX_ATTEMPTS, 3));
+    }
+
+    /**
+     * Screenshots are uploaded by the calling thread unless the asynchronous pipeline is explicitly enabled.
+     */
+    public static boolean isAsyncScreenshotUploadEnabled() {
+        return getBoolean(SCREENSHOT_ASYNC_ENABLED, false);
+    }
+
+    public static int getScreenshotEncoderThreads() {
+        return getInt(SCREENSHOT_ENCODER_THREADS, 2);
+    }
+
+    public static int getScreenshotUploadConcurrency() {
+        return getInt(SCREENSHOT_UPLOAD_CONCURRENCY, 2);
+    }
+
+    public static int getScreenshotQueueCapacity() {
+        return getInt(SCREENSHOT_QUEUE_CAPACITY, 32);
+    }
+
+    /**
+     * @return how long a test thread waits for room in the full screenshot queue before the screenshot is dropped
+     */
+    public static Duration getScreenshotQueueTimeout() {
+        return Duration.ofMillis(getLong(SCREENSHOT_QUEUE_TIMEOUT_MILLIS, 5_000L));
+    }
+
+    /**
+     * @return max width or height of uploaded screenshots in pixels. Non-positive value disables downscaling
+     */
+    public static int getScreenshotMaxDimension() {
+        return getInt(SCREENSHOT_MAX_DIMENSION, 0);
+    }
+
+    public static boolean isScreenshotDedupeEnabled() {
+        return getBoolean(SCREENSHOT_DEDUPE_ENABLED, true);
+    }
+
+    public static boolean isJournalEnabled() {
+        return getBoolean(JOURNAL_ENABLED, false);
+    }
+
+    public static File getJournalDirectory() {
+        String directory = getProperty(JOURNAL_DIRECTORY);
+        return directory != null
+                ? new File(directory)
+                : new File(System.getProperty("java.io.tmpdir"), "zebrunner-journal");
+    }
+
+    public static int getJournalSegmentSize() {
+        return getInt(JOURNAL_SEGMENT_SIZE, 8 * 1024 * 1024);
+    }
+
+    public static Duration getJournalSyncInterval() {
+        return Duration.ofMillis(getLong(JOURNAL_SYNC_INTERVAL_MILLIS, 1_000L));
+    }
+
+    public static int getTestMetadataCacheSize() {
+        return getInt(TEST_METADATA_CACHE_SIZE, 256);
+    }
+
+    public static Duration getHttpConnectTimeout() {
+        return Duration.ofMillis(getLong(HTTP_CONNECT_TIMEOUT_MILLIS, 10_000L));
+    }
+
+    public static Duration getHttpReadTimeout() {
+        return Duration.ofMillis(getLong(HTTP_READ_TIMEOUT_MILLIS, 30_000L));
+    }
+
+    public static Duration getHttpWriteTimeout() {
+        return Duration.ofMillis(getLong(HTTP_WRITE_TIMEOUT_MILLIS, 60_000L));
+    }
+
+    /**
+     * By default there is an idle connection for every thread which may talk to the server at the same time.
+     */
+    public static int getHttpMaxIdleConnections() {
+        return getInt(HTTP_MAX_IDLE_CONNECTIONS, getDispatchThreads() + getScreenshotUploadConcurrency() + 1);
+    }
+
+    public static Duration getHttpKeepAlive() {
+        return Duration.ofMillis(getLong(HTTP_KEEP_ALIVE_MILLIS, 300_000L));
+    }
+
+    public static int getHttpMaxRequestsPerHost() {
+        return getInt(HTTP_MAX_REQUESTS_PER_HOST, 16);
+    }
+
+    public static boolean isHttp2Enabled() {
+        return getBoolean(HTTP2_ENABLED, true);
+    }
+
+    public static Duration getHttpDnsCacheTtl() {
+        return Duration.ofMillis(getLong(HTTP_DNS_CACHE_TTL_MILLIS, 300_000L));
+    }
+
+    /**
+     * Request compression is opt-in, since the server (or a proxy in front of it) must accept gzip encoded requests.
+     */
+    public static boolean isHttpGzipEnabled() {
+        return getBoolean(HTTP_GZIP_ENABLED, false);
+    }
+
+    public static int getHttpGzipMinSize() {
+        return getInt(HTTP_GZIP_MIN_SIZE, 1024);
+    }
+
+    /**
+     * How long before the expiration the auth token is refreshed in background.
+     */
+    public static Duration getAuthRefreshMargin() {
+        return Duration.ofMillis(getLong(AUTH_REFRESH_MARGIN_MILLIS, 60_000L));
+    }
+
+    public static int getRetryMaxAttempts() {
+        return getInt(RETRY_MAX_ATTEMPTS, 4);
+    }
+
+    public static Duration getRetryInitialBackoff() {
+        return Duration.ofMillis(getLong(RETRY_INITIAL_BACKOFF_MILLIS, 250L));
+    }
+
+    public static Duration getRetryMaxBackoff() {
+        return Duration.ofMillis(getLong(RETRY_MAX_BACKOFF_MILLIS, 10_000L));
+    }
+
+    /**
+     * Max number of requests per second sent by a single agent. Zero or a negative value disables the limit,
+     * which is the default.
+     */
+    public static int getRateLimit() {
+        return getInt(RATE_LIMIT, 0);
+    }
+
+    public static int getCircuitBreakerFailureThreshold() {
+        return getInt(CIRCUIT_BREAKER_FAILURE_THRESHOLD, 5);
+    }
+
+    public static Duration getCircuitBreakerOpenDuration() {
+        return Duration.ofMillis(getLong(CIRCUIT_BREAKER_OPEN_MILLIS, 15_000L));
+    }
+
+    /**
+     * Max number of reporting events buffered while the server is unavailable.
+     */
+    public static int getCircuitBreakerBufferCapacity() {
+        return getInt(CIRCUIT_BREAKER_BUFFER_CAPACITY, 10_000);
+    }
+
+    public static boolean isLogBufferEnabled() {
+        return getBoolean(LOG_BUFFER_ENABLED, true);
+    }
+
+    public static int getLogBufferCapacity() {
+        return getInt(LOG_BUFFER_CAPACITY, 8192);
+    }
+
+    public static long getLogBufferMaxBytes() {
+        return getLong(LOG_BUFFER_MAX_BYTES, 4 * 1024 * 1024);
+    }
+
+    public static long getLogBatchMaxBytes() {
+        return getLong(LOG_BATCH_MAX_BYTES, 256 * 1024);
+    }
+
+    public static Duration getLogFlushInterval() {
+        return Duration.ofMillis(getLong(LOG_FLUSH_INTERVAL_MILLIS, 1_000L));
+    }
+
+    public static LogDropPolicy getLogDropPolicy() {
+        return getEnum(LOG_DROP_POLICY, LogDropPolicy.class, LogDropPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * With the {@link LogDropPolicy#SAMPLE} policy, every n-th log of a test is kept once the buffer is half full.
+     */
+    public static int getLogSampleRate() {
+        return getInt(LOG_SAMPLE_RATE, 10);
+    }
+
+    public static Duration getLogBlockTimeout() {
+        return Duration.ofMillis(getLong(LOG_BLOCK_TIMEOUT_MILLIS, 100L));
+    }
+
+    public static boolean isMetricsEnabled() {
+        return getBoolean(METRICS_ENABLED, true);
+    }
+
+    /**
+     * Whether the collected agent metrics are attached to the test run as a JSON artifact.
+     */
+    public static boolean isMetricsArtifactEnabled() {
+        return getBoolean(METRICS_ARTIFACT_ENABLED, false);
+    }
+
+    /**
+     * Shards with the same run key report into a single test run.
+     */
+    public static String getShardRunKey() {
+        return getProperty(SHARD_RUN_KEY);
+    }
+
+    public static String getShardCoordinatorUrl() {
+        return getProperty(SHARD_COORDINATOR_URL);
+    }
+
+    /**
+     * Defaults to the {@code shardIndex} argument of the {@code AndroidJUnitRunner}.
+     */
+    public static int getShardIndex() {
+        return getInt(SHARD_INDEX, getInt(RUNNER_SHARD_INDEX, 0));
+    }
+
+    /**
+     * Defaults to the {@code numShards} argument of the {@code AndroidJUnitRunner}.
+     */
+    public static int getShardCount() {
+        return getInt(SHARD_COUNT, getInt(RUNNER_SHARD_COUNT, 1));
+    }
+
+    /**
+     * Whether the {@code AndroidJUnitRunner} shards the tests on its own.
+     */
+    public static boolean isRunnerShardingEnabled() {
+        return getProperty(RUNNER_SHARD_COUNT) != null;
+    }
+
+    /**
+     * How long a shard waits for another shard to start the test run. Emulators of a run may boot at different times.
+     */
+    public static Duration getShardJoinTimeout() {
+        return Duration.ofMillis(getLong(SHARD_JOIN_TIMEOUT_MILLIS, 300_000L));
+    }
+
+    /**
+     * Whether a test is registered with a single request once it is finished.
+     */
+    public static boolean isDeferredRegistrationEnabled() {
+        return getBoolean(DEFERRED_REGISTRATION_ENABLED, false);
+    }
+
+    /**
+     * With the deferred registration, tests running longer than this are registered as started, so they are shown in progress.
+     */
+    public static Duration getLiveStartThreshold() {
+        return Duration.ofMillis(getLong(LIVE_START_THRESHOLD_MILLIS, 2_000L));
+    }
+
+    /**
+     * Whether the known issue confirmations are cached for failures with the same normalized stack trace.
+     */
+    public static boolean isKnownIssueCacheEnabled() {
+        return getBoolean(KNOWN_ISSUE_CACHE_ENABLED, true);
+    }
+
+    /**
+     * Whether failure traces are bounded and trimmed before reporting. Otherwise, traces are reported as is.
+     */
+    public static boolean isTraceEncodingEnabled() {
+        return getBoolean(TRACE_ENCODING_ENABLED, true);
+    }
+
+    public static int getTraceMaxLength() {
+        return getInt(TRACE_MAX_LENGTH, 64 * 1024);
+    }
+
+    /**
+     * Whether Espresso view hierarchy dumps are moved from the failure trace to a compressed test artifact.
+     */
+    public static boolean isTraceHierarchyArtifactEnabled() {
+        return getBoolean(TRACE_HIERARCHY_ARTIFACT_ENABLED, true);
+    }
+
+    public static boolean isTraceFrameworkFramesCollapsed() {
+        return getBoolean(TRACE_COLLAPSE_FRAMEWORK_FRAMES, true);
+    }
+
+    /**
+     * Rerun condition provided by Zebrunner, e.g. by a CI job started for a rerun.
+     */
+    public static String getRunContext() {
+        return getProperty(RUN_CONTEXT);
+    }
+
+    public static boolean isPriorityLanesEnabled() {
+        return getBoolean(PRIORITY_LANES_ENABLED, true);
+    }
+
+    /**
+     * @param lane lifecycle, logs or bulk
+     */
+    public static int getLaneConcurrency(String lane) {
+        return getInt(LANE_PREFIX + lane + ".concurrency", "bulk".equals(lane) ? 2 : 4);
+    }
+
+    /**
+     * @param lane lifecycle, logs or bulk
+     * @return max bandwidth of the request bodies of the lane in bytes per second, or 0 if it is not limited
+     */
+    public static long getLaneBandwidth(String lane) {
+        return getLong(LANE_PREFIX + lane + ".bandwidth-bytes-per-second", 0L);
+    }
+
+    /**
+     * Max time a request of a lower lane waits for the requests of the higher lanes.
+     */
+    public static Duration getLaneMaxYield() {
+        return Duration.ofMillis(getLong(LANE_MAX_YIELD_MILLIS, 2_000L));
+    }
+
+    /**
+     * Max time a request waits for a permit of its lane before it fails.
+     */
+    public static Duration getLaneAcquireTimeout() {
+        return Duration.ofMillis(getLong(LANE_ACQUIRE_TIMEOUT_MILLIS, 60_000L));
+    }
+
+    /**
+     * Whether the API client authenticates and connects to the server in background as soon as the listener is created,
+     * rather than on the first reporting call.
+     */
+    public static boolean isClientWarmupEnabled() {
+        return getBoolean(CLIENT_WARMUP_ENABLED, true);
+    }
+
+    /**
+     * File keeping the state of the test run between instrumentation processes, e.g. with the orchestrator.
+     * Must be located outside of the cleared app data. Not used if not set.
+     * <p>
+     * No process knows whether it is the last one of the run, so with the run context the test run is not finished
+     * by the agent. It is finished by the owner of the run key, e.g. a CI step run after all the processes.
+     */
+    public static File getRunContextFile() {
+        String file = getProperty(RUN_CONTEXT_FILE);
+        return file != null ? new File(file) : null;
+    }
+
+    /**
+     * Identifies the test run the run context belongs to, e.g. the id of the CI build. Defaults to the shard run key.
+     * The run context is used only if the key is set.
+     */
+    public static String getRunContextKey() {
+        String key = getProperty(RUN_CONTEXT_KEY);
+        return key != null ? key : getShardRunKey();
+    }
+
+    /**
+     * Id of a test run started beforehand, e.g. by the CI job, which all the processes report into.
+     * The test run is not finished by the agent, but by the one who started it.
+     */
+    public static Long getRunContextTestRunId() {
+        String testRunId = getProperty(RUN_CONTEXT_TEST_RUN_ID);
+        return testRunId != null ? Long.valueOf(testRunId) : null;
+    }
+
+    /**
+     * Whether labels, artifact references and test case results of a test are sent with a single request
+     * per endpoint when the test is finished, rather than one by one.
+     */
+    public static boolean isAttachmentCoalescingEnabled() {
+        return getBoolean(ATTACHMENT_COALESCING_ENABLED, true);
+    }
+
+    /**
+     * Whether durations of the tests are recorded, so the next runs can balance the shards.
+     */
+    public static boolean isDurationHistoryEnabled() {
+        return getBoolean(DURATION_HISTORY_ENABLED, true);
+    }
+
+    public static File getDurationHistoryFile() {
+        String file = getProperty(DURATION_HISTORY_FILE);
+        return file != null
+                ? new File(file)
+                : new File(System.getProperty("java.io.tmpdir"), "zebrunner-durations.tsv");
+    }
+
+    /**
+     * History file shared by all the shards, which the tests are balanced by. There is no default,
+     * since the history recorded on a device differs from the ones of the other devices.
+     */
+    public static File getShardDurationHistoryFile() {
+        String file = getProperty(SHARD_DURATION_HISTORY_FILE);
+        return file != null ? new File(file) : null;
+    }
+
+    /**
+     * Expected SHA-256 of the shared history file, as logged by {@code DurationHistoryMerger}.
+     */
+    public static String getShardDurationHistoryChecksum() {
+        return getProperty(SHARD_DURATION_HISTORY_CHECKSUM);
+    }
+
+    public static String getProperty(String key) {
+        String value = getInstrumentationArgument(key);
+        if (value == null) {
+            value = System.getProperty(key);
+        }
+        if (value == null) {
+            value = System.getenv(toEnvironmentVariableName(key));
+        }
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+
+    static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getProperty(key);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    static long getLong(String key, long defaultValue) {
+        String value = getProperty(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                log.warn("Value '{}' of property '{}' is not a number. Default value {} will be used.", value, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    static <E extends Enum<E>> E getEnum(String key, Class<E> enumClass, E defaultValue) {
+        String value = getProperty(key);
+        if (value != null) {
+            try {
+                return Enum.valueOf(enumClass, value.toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                log.warn("Value '{}' of property '{}' is not supported. Default value {} will be used.", value, key, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    private static String toEnvironmentVariableName(String key) {
+        return key.toUpperCase(Locale.ROOT)
+                  .replace('.', '_')
+                  .replace('-', '_');
+    }
+
+    /**
+     * Instrumentation arguments are obtained reflectively, so the agent keeps working
+     * (and falling back to system properties) outside of an instrumentation process.
+     */
+    private static String getInstrumentationArgument(String key) {
+        if (!instrumentationArgumentsResolved) {
+            resolveInstrumentationArguments();
+        }
+
+        if (instrumentationArguments != null) {
+            try {
+                return (String) argumentGetter.invoke(instrumentationArguments, key);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.debug("Could not read instrumentation argument '{}'.", key, e);
+            }
+        }
+        return null;
+    }
+
+    private static synchronized void resolveInstrumentationArguments() {
+        if (!instrumentationArgumentsResolved) {
+            try {
+                Object arguments = Class.forName(INSTRUMENTATION_REGISTRY_CLASS)
+                                        .getMethod("getArguments")
+                                        .invoke(null);
+                if (arguments != null) {
+                    argumentGetter = arguments.getClass().getMethod("getString", String.class);
+                    instrumentationArguments = arguments;
+                }
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                log.debug("Instrumentation arguments are not available.");
+            }
+            instrumentationArgumentsResolved = true;
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.zebrunner.agent.espresso.core.converter;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * Base of the hand-written adapters of the agent core DTOs. Values are written through the getters,
+ * while reading, which is off the hot path, is left to the reflective adapter.
+ * <p>
+ * Adapters of the nested values are resolved once, by the declared types of the fields.
+ * Null values are omitted, as the reflective adapter does.
+ */
+abstract class DtoTypeAdapter<T> extends TypeAdapter<T> {
+
+    private final Gson gson;
+    private final Map<String, Field> fields;
+    private final TypeAdapter<T> reflectiveAdapter;
+
+    /**
+     * @param fields serialized fields of the DTO by their names
+     */
+    DtoTypeAdapter(Gson gson, Map<String, Field> fields, TypeAdapter<T> reflectiveAdapter) {
+        this.gson = gson;
+        this.fields = fields;
+        this.reflectiveAdapter = reflectiveAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        this.writeFields(out, value);
+        out.endObject();
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        return reflectiveAdapter.read(in);
+    }
+
+    protected abstract void writeFields(JsonWriter out, T value) throws IOException;
+
+    @SuppressWarnings("unchecked")
+    protected TypeAdapter<Object> adapterOf(String field) {
+        return (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(fields.get(field).getGenericType()));
+    }
+
+    protected static void write(JsonWriter out, String name, TypeAdapter<Object> adapter, Object value) throws IOException {
+        if (value != null) {
+            out.name(name);
+            adapter.write(out, value);
+        }
+    }
+
+    protected static void write(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    protected static void write(JsonWriter out, String name, Number value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.zebrunner.agent.espresso.core.converter;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.zebrunner.agent.core.logging.Log;
+import com.zebrunner.agent.core.registrar.domain.TestDTO;
+import com.zebrunner.agent.core.registrar.domain.TestRunDTO;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Provides the hand-written adapters of the DTOs sent on every test: {@link TestDTO}, {@link TestRunDTO} and {@link Log}.
+ * <p>
+ * The DTOs come from the agent core, so the fields of the DTO are checked once against the fields the adapter writes.
+ * If they differ, e.g. with another version of the agent core, the reflective adapter is used, so no field is lost.
+ */
+@Slf4j
+public class DtoTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType != TestDTO.class && rawType != TestRunDTO.class && rawType != Log.class) {
+            return null;
+        }
+
+        TypeAdapter<T> reflectiveAdapter = gson.getDelegateAdapter(this, type);
+        Map<String, Field> fields = serializedFields(rawType);
+        if (rawType == TestDTO.class && matches(rawType, fields, TestDtoTypeAdapter.FIELDS)) {
+            return (TypeAdapter<T>) new TestDtoTypeAdapter(gson, fields, (TypeAdapter<TestDTO>) reflectiveAdapter);
+        }
+        if (rawType == TestRunDTO.class && matches(rawType, fields, TestRunDtoTypeAdapter.FIELDS)) {
+            return (TypeAdapter<T>) new TestRunDtoTypeAdapter(gson, fields, (TypeAdapter<TestRunDTO>) reflectiveAdapter);
+        }
+        if (rawType == Log.class && matches(rawType, fields, LogTypeAdapter.FIELDS)) {
+            return (TypeAdapter<T>) new LogTypeAdapter(gson, fields, (TypeAdapter<Log>) reflectiveAdapter);
+        }
+        return reflectiveAdapter;
+    }
+
+    private static boolean matches(Class<?> type, Map<String, Field> fields, Set<String> writtenFields) {
+        if (fields == null || !fields.keySet().equals(writtenFields)) {
+            log.debug("Fields of {} differ from the ones of its hand-written adapter. The reflective adapter is used.", type.getName());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return fields serialized by the reflective adapter by their names, or null if some of them is renamed
+     */
+    private static Map<String, Field> serializedFields(Class<?> type) {
+        Map<String, Field> fields = new HashMap<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                if (field.isAnnotationPresent(SerializedName.class)) {
+                    return null;
+                }
+                fields.put(field.getName(), field);
+            }
+        }
+        return fields;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.zebrunner.agent.espresso.core.converter;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import com.zebrunner.agent.core.logging.Log;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hand-written adapter of the test logs, which are sent in batches of hundreds.
+ */
+class LogTypeAdapter extends DtoTypeAdapter<Log> {
+
+    static final Set<String> FIELDS = Set.of("testId", "level", "timestamp", "message");
+
+    private final TypeAdapter<Object> testIdAdapter;
+    private final TypeAdapter<Object> timestampAdapter;
+
+    LogTypeAdapter(Gson gson, Map<String, Field> fields, TypeAdapter<Log> reflectiveAdapter) {
+        super(gson, fields, reflectiveAdapter);
+        this.testIdAdapter = this.adapterOf("testId");
+        this.timestampAdapter = this.adapterOf("timestamp");
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, Log value) throws IOException {
+        write(out, "testId", testIdAdapter, value.getTestId());
+        write(out, "level", value.getLevel());
+        write(out, "timestamp", timestampAdapter, value.getTimestamp());
+        write(out, "message", value.getMessage());
+    }
+
+}
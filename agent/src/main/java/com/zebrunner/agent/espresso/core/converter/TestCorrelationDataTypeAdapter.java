@@ -0,0 +1,144 @@
+package com.zebrunner.agent.espresso.core.converter;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.zebrunner.agent.espresso.core.TestCorrelationData;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written adapter producing the same json as the reflective one (same field names and order, nulls omitted).
+ */
+public class TestCorrelationDataTypeAdapter extends TypeAdapter<TestCorrelationData> {
+
+    @Override
+    public void write(JsonWriter out, TestCorrelationData value) throws IOException {
+        writeObject(out, value, null);
+    }
+
+    /**
+     * Renders the value with the parameter class names rendered beforehand by {@link #toJsonArray(List)},
+     * so the tests of the same method do not render them again. The json is the same as the one rendered by gson.
+     */
+    public static String toJson(TestCorrelationData value, String parameterClassNamesJson) {
+        StringWriter json = new StringWriter(128);
+        try {
+            writeObject(newJsonWriter(json), value, parameterClassNamesJson);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * @return json array of the given values, or null if the values are null
+     */
+    public static String toJsonArray(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+
+        StringWriter json = new StringWriter();
+        try {
+            writeStrings(newJsonWriter(json), values);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return json.toString();
+    }
+
+    private static void writeObject(JsonWriter out, TestCorrelationData value, String parameterClassNamesJson) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("thread").value(value.getThread());
+        out.name("className").value(value.getClassName());
+        out.name("methodName").value(value.getMethodName());
+        if (parameterClassNamesJson != null) {
+            out.name("parameterClassNames").jsonValue(parameterClassNamesJson);
+        } else if (value.getParameterClassNames() != null) {
+            out.name("parameterClassNames");
+            writeStrings(out, value.getParameterClassNames());
+        }
+        out.name("displayName").value(value.getDisplayName());
+        out.endObject();
+    }
+
+    private static void writeStrings(JsonWriter out, List<String> values) throws IOException {
+        out.beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writer configured as the one used by the default gson instance.
+     */
+    private static JsonWriter newJsonWriter(StringWriter json) {
+        JsonWriter writer = new JsonWriter(json);
+        writer.setHtmlSafe(true);
+        writer.setSerializeNulls(false);
+        return writer;
+    }
+
+    @Override
+    public TestCorrelationData read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        TestCorrelationData.TestCorrelationDataBuilder builder = TestCorrelationData.builder();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "thread":
+                    builder.thread(in.nextString());
+                    break;
+                case "className":
+                    builder.className(in.nextString());
+                    break;
+                case "methodName":
+                    builder.methodName(in.nextString());
+                    break;
+                case "parameterClassNames":
+                    builder.parameterClassNames(readStrings(in));
+                    break;
+                case "displayName":
+                    builder.displayName(in.nextString());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return builder.build();
+    }
+
+    private static List<String> readStrings(JsonReader in) throws IOException {
+        List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(in.nextString());
+        }
+        in.endArray();
+        return values;
+    }
+
+}
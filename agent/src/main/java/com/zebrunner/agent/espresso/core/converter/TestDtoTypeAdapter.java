@@ -0,0 +1,63 @@
+package com.zebrunner.agent.espresso.core.converter;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import com.zebrunner.agent.core.registrar.domain.TestDTO;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hand-written adapter of the test sent on every test start and finish.
+ */
+class TestDtoTypeAdapter extends DtoTypeAdapter<TestDTO> {
+
+    static final Set<String> FIELDS = Set.of(
+            "id", "uuid", "name", "correlationData", "className", "methodName", "argumentsIndex", "startedAt", "endedAt",
+            "maintainer", "labels", "result", "reason", "testGroups", "artifactReferences"
+    );
+
+    private final TypeAdapter<Object> uuidAdapter;
+    private final TypeAdapter<Object> argumentsIndexAdapter;
+    private final TypeAdapter<Object> startedAtAdapter;
+    private final TypeAdapter<Object> endedAtAdapter;
+    private final TypeAdapter<Object> labelsAdapter;
+    private final TypeAdapter<Object> resultAdapter;
+    private final TypeAdapter<Object> testGroupsAdapter;
+    private final TypeAdapter<Object> artifactReferencesAdapter;
+
+    TestDtoTypeAdapter(Gson gson, Map<String, Field> fields, TypeAdapter<TestDTO> reflectiveAdapter) {
+        super(gson, fields, reflectiveAdapter);
+        this.uuidAdapter = this.adapterOf("uuid");
+        this.argumentsIndexAdapter = this.adapterOf("argumentsIndex");
+        this.startedAtAdapter = this.adapterOf("startedAt");
+        this.endedAtAdapter = this.adapterOf("endedAt");
+        this.labelsAdapter = this.adapterOf("labels");
+        this.resultAdapter = this.adapterOf("result");
+        this.testGroupsAdapter = this.adapterOf("testGroups");
+        this.artifactReferencesAdapter = this.adapterOf("artifactReferences");
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, TestDTO value) throws IOException {
+        write(out, "id", value.getId());
+        write(out, "uuid", uuidAdapter, value.getUuid());
+        write(out, "name", value.getName());
+        write(out, "correlationData", value.getCorrelationData());
+        write(out, "className", value.getClassName());
+        write(out, "methodName", value.getMethodName());
+        write(out, "argumentsIndex", argumentsIndexAdapter, value.getArgumentsIndex());
+        write(out, "startedAt", startedAtAdapter, value.getStartedAt());
+        write(out, "endedAt", endedAtAdapter, value.getEndedAt());
+        write(out, "maintainer", value.getMaintainer());
+        write(out, "labels", labelsAdapter, value.getLabels());
+        write(out, "result", resultAdapter, value.getResult());
+        write(out, "reason", value.getReason());
+        write(out, "testGroups", testGroupsAdapter, value.getTestGroups());
+        write(out, "artifactReferences", artifactReferencesAdapter, value.getArtifactReferences());
+    }
+
+}
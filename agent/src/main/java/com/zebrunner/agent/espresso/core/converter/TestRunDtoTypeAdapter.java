@@ -0,0 +1,52 @@
+package com.zebrunner.agent.espresso.core.converter;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import com.zebrunner.agent.core.registrar.domain.TestRunDTO;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hand-written adapter of the test run sent on the run start and finish.
+ */
+class TestRunDtoTypeAdapter extends DtoTypeAdapter<TestRunDTO> {
+
+    static final Set<String> FIELDS = Set.of(
+            "id", "uuid", "name", "startedAt", "endedAt", "framework", "config", "milestone", "notifications"
+    );
+
+    private final TypeAdapter<Object> uuidAdapter;
+    private final TypeAdapter<Object> startedAtAdapter;
+    private final TypeAdapter<Object> endedAtAdapter;
+    private final TypeAdapter<Object> configAdapter;
+    private final TypeAdapter<Object> milestoneAdapter;
+    private final TypeAdapter<Object> notificationsAdapter;
+
+    TestRunDtoTypeAdapter(Gson gson, Map<String, Field> fields, TypeAdapter<TestRunDTO> reflectiveAdapter) {
+        super(gson, fields, reflectiveAdapter);
+        this.uuidAdapter = this.adapterOf("uuid");
+        this.startedAtAdapter = this.adapterOf("startedAt");
+        this.endedAtAdapter = this.adapterOf("endedAt");
+        this.configAdapter = this.adapterOf("config");
+        this.milestoneAdapter = this.adapterOf("milestone");
+        this.notificationsAdapter = this.adapterOf("notifications");
+    }
+
+    @Override
+    protected void writeFields(JsonWriter out, TestRunDTO value) throws IOException {
+        write(out, "id", value.getId());
+        write(out, "uuid", uuidAdapter, value.getUuid());
+        write(out, "name", value.getName());
+        write(out, "startedAt", startedAtAdapter, value.getStartedAt());
+        write(out, "endedAt", endedAtAdapter, value.getEndedAt());
+        write(out, "framework", value.getFramework());
+        write(out, "config", configAdapter, value.getConfig());
+        write(out, "milestone", milestoneAdapter, value.getMilestone());
+        write(out, "notifications", notificationsAdapter, value.getNotifications());
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.zebrunner.agent.espresso.core.dispatch;
+
+/**
+ * Defines how the {@link ReportingDispatcher} behaves when its queue is full.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * The calling (test) thread waits until there is free space in the queue.
+     */
+    BLOCK,
+
+    /**
+     * The event is dropped and a warning is logged. The calling thread never waits.
+     */
+    DISCARD
+
+}
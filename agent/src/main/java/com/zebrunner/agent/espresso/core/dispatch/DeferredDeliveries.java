@@ -0,0 +1,212 @@
+package com.zebrunner.agent.espresso.core.dispatch;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded buffer of reporting events which could not be delivered because the server is temporarily unavailable.
+ * <p>
+ * Buffered events are replayed in the original order once the server becomes available again.
+ * While there are buffered events, or some of them is being replayed, new events are buffered behind them
+ * instead of being sent right away, so they are never delivered ahead of the older ones.
+ * Events above the capacity are dropped, so an unavailable server can not exhaust the memory of the device.
+ */
+@Slf4j
+public class DeferredDeliveries {
+
+    private static final long RETRY_PAUSE_MILLIS = 1_000;
+
+    private final int capacity;
+    private final Predicate<Exception> unavailabilityCheck;
+    private final Supplier<Long> remainingUnavailabilityNanos;
+    // started by the first background replay, so the thread is not created while the server stays available
+    private volatile ExecutorService replayExecutor;
+    private final AtomicBoolean replayScheduled = new AtomicBoolean();
+    // a single replay at a time, so the events are not reordered by concurrent replays
+    private final Object replayLock = new Object();
+
+    // guarded by this
+    private final Deque<Delivery> deliveries = new ArrayDeque<>();
+    // guarded by this. true while a buffered event polled by the replay is being delivered
+    private boolean replaying;
+
+    private final AtomicInteger deferredCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+
+    /**
+     * @param unavailabilityCheck          tells whether the delivery failed because the server is unavailable
+     * @param remainingUnavailabilityNanos how long the server is expected to stay unavailable
+     */
+    public DeferredDeliveries(int capacity, Predicate<Exception> unavailabilityCheck, Supplier<Long> remainingUnavailabilityNanos) {
+        this.capacity = Math.max(0, capacity);
+        this.unavailabilityCheck = unavailabilityCheck;
+        this.remainingUnavailabilityNanos = remainingUnavailabilityNanos;
+    }
+
+    /**
+     * Delivers the event right away. If the server is unavailable, the event is buffered instead.
+     * If there are buffered events not delivered yet, the event is buffered behind them and a replay is scheduled.
+     * Failures not related to the server availability are propagated.
+     */
+    public void deliver(String description, Runnable delivery) {
+        boolean behindBuffered;
+        synchronized (this) {
+            behindBuffered = replaying || !deliveries.isEmpty();
+        }
+        if (behindBuffered) {
+            this.defer(description, delivery);
+            this.replayAsync();
+            return;
+        }
+
+        try {
+            delivery.run();
+        } catch (Exception e) {
+            if (!unavailabilityCheck.test(e)) {
+                throw e;
+            }
+            this.defer(description, delivery);
+        }
+    }
+
+    public void defer(String description, Runnable delivery) {
+        synchronized (this) {
+            if (deliveries.size() < capacity) {
+                deliveries.addLast(new Delivery(description, delivery));
+                deferredCount.incrementAndGet();
+                return;
+            }
+        }
+        droppedCount.incrementAndGet();
+        log.warn("Buffer of undelivered reporting events is full. Event '{}' is dropped.", description);
+    }
+
+    /**
+     * Replays the buffered events in background. Does nothing if a background replay is already scheduled.
+     */
+    public void replayAsync() {
+        if (this.hasDeliveries() && replayScheduled.compareAndSet(false, true)) {
+            this.replayExecutor().execute(() -> {
+                boolean replayed = false;
+                try {
+                    replayed = this.replay(Duration.ZERO);
+                } finally {
+                    replayScheduled.set(false);
+                }
+                // events buffered after the replay emptied the buffer, but before it was marked as not scheduled
+                if (replayed) {
+                    this.replayAsync();
+                }
+            });
+        }
+    }
+
+    /**
+     * Replays the buffered events on the calling thread. If the server is still unavailable,
+     * waits for it to become available, but no longer than the given timeout.
+     *
+     * @return true if all the events were replayed
+     */
+    public boolean replay(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (replayLock) {
+            while (true) {
+                Delivery delivery;
+                synchronized (this) {
+                    delivery = deliveries.pollFirst();
+                    replaying = delivery != null;
+                }
+                if (delivery == null) {
+                    return true;
+                }
+
+                try {
+                    delivery.getAction().run();
+                } catch (Exception e) {
+                    if (!unavailabilityCheck.test(e)) {
+                        log.error("Could not deliver buffered event '{}'.", delivery.getDescription(), e);
+                        continue;
+                    }
+
+                    synchronized (this) {
+                        deliveries.addFirst(delivery);
+                        replaying = false;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    if (!pause(Math.min(remaining, Math.max(remainingUnavailabilityNanos.get(), TimeUnit.MILLISECONDS.toNanos(RETRY_PAUSE_MILLIS))))) {
+                        return false;
+                    }
+                } catch (Error e) {
+                    synchronized (this) {
+                        replaying = false;
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private ExecutorService replayExecutor() {
+        // called only by the thread which scheduled the replay, so the executor is not created twice
+        if (replayExecutor == null) {
+            replayExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zebrunner-deferred-deliveries");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return replayExecutor;
+    }
+
+    public synchronized boolean hasDeliveries() {
+        return !deliveries.isEmpty();
+    }
+
+    public synchronized int size() {
+        return deliveries.size();
+    }
+
+    public String getSummary() {
+        int pending;
+        synchronized (this) {
+            pending = deliveries.size();
+        }
+        return String.format(
+                "%d event(s) buffered while the server was unavailable, %d dropped, %d left undelivered.",
+                deferredCount.get(), droppedCount.get(), pending
+        );
+    }
+
+    private static boolean pause(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Value
+    private static class Delivery {
+
+        String description;
+        Runnable action;
+
+    }
+
+}
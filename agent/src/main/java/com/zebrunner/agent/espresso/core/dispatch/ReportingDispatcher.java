@@ -0,0 +1,192 @@
+package com.zebrunner.agent.espresso.core.dispatch;
+
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves reporting calls off the instrumentation thread.
+ * <p>
+ * Events are grouped into lanes by a key (e.g. test id). Events of the same lane are executed strictly one after another
+ * in the order they were dispatched, so the start of a test is always registered (and its server id is resolved)
+ * before its finish is sent. Different lanes are processed in parallel by a fixed pool of worker threads.
+ * Run level events form a lane of their own which precedes every test lane.
+ * <p>
+ * The number of not yet executed events is bounded. What happens when the bound is reached
+ * is defined by the configured {@link BackpressurePolicy}.
+ * <p>
+ * If the dispatcher is created in synchronous mode, every event is executed right away on the calling thread
+ * and its failures are propagated to the caller.
+ */
+@Slf4j
+public class ReportingDispatcher {
+
+    private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+
+    private final ExecutorService executor;
+    private final Semaphore capacity;
+    private final BackpressurePolicy backpressurePolicy;
+
+    private final Map<Object, CompletableFuture<Void>> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger discardedEvents = new AtomicInteger();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+
+    private volatile CompletableFuture<Void> runLane = COMPLETED;
+
+    public static ReportingDispatcher fromConfiguration() {
+        if (!EspressoConfiguration.isAsyncReportingEnabled()) {
+            return synchronous();
+        }
+        return new ReportingDispatcher(
+                EspressoConfiguration.getDispatchThreads(),
+                EspressoConfiguration.getDispatchQueueCapacity(),
+                EspressoConfiguration.getDispatchBackpressurePolicy()
+        );
+    }
+
+    public static ReportingDispatcher synchronous() {
+        return new ReportingDispatcher(null, null, BackpressurePolicy.BLOCK);
+    }
+
+    public ReportingDispatcher(int threads, int queueCapacity, BackpressurePolicy backpressurePolicy) {
+        this(
+                Executors.newFixedThreadPool(Math.max(1, threads), new DispatcherThreadFactory()),
+                new Semaphore(Math.max(1, queueCapacity)),
+                backpressurePolicy
+        );
+    }
+
+    private ReportingDispatcher(ExecutorService executor, Semaphore capacity, BackpressurePolicy backpressurePolicy) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    public boolean isAsynchronous() {
+        return executor != null;
+    }
+
+    /**
+     * @return number of dispatched events which are not executed yet
+     */
+    public int getPendingEvents() {
+        return pendingEvents.get();
+    }
+
+    /**
+     * Dispatches a run level event. Test events dispatched afterwards are not executed before this one.
+     */
+    public synchronized void dispatchRunEvent(String name, Runnable event) {
+        if (!this.isAsynchronous()) {
+            event.run();
+        } else if (this.acquire(name)) {
+            runLane = runLane.thenRunAsync(() -> this.execute(name, event), executor);
+        }
+    }
+
+    /**
+     * Dispatches an event into the lane identified by the given key.
+     */
+    public void dispatch(Object laneKey, String name, Runnable event) {
+        if (!this.isAsynchronous()) {
+            event.run();
+        } else if (this.acquire(name)) {
+            CompletableFuture<Void> lane = lanes.compute(
+                    laneKey,
+                    (key, tail) -> (tail != null ? tail : runLane).thenRunAsync(() -> this.execute(name, event), executor)
+            );
+            lane.thenRun(() -> lanes.remove(laneKey, lane));
+        }
+    }
+
+    /**
+     * Waits until all the dispatched events are executed, but no longer than the given timeout.
+     *
+     * @return true if all the events were executed, false otherwise
+     */
+    public boolean drain(Duration timeout) {
+        if (!this.isAsynchronous()) {
+            return true;
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            runLane.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            CompletableFuture.allOf(lanes.values().toArray(new CompletableFuture[0]))
+                             .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            log.warn("Reporting events were not delivered within {} ms. {} test(s) still have pending events.",
+                    timeout.toMillis(), lanes.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Unexpected failure while waiting for reporting events delivery.", e);
+        } finally {
+            if (discardedEvents.get() > 0) {
+                log.warn("{} reporting event(s) were discarded because the dispatcher queue was full.", discardedEvents.get());
+            }
+        }
+        return false;
+    }
+
+    private boolean acquire(String name) {
+        if (backpressurePolicy == BackpressurePolicy.DISCARD) {
+            if (!capacity.tryAcquire()) {
+                discardedEvents.incrementAndGet();
+                log.warn("Reporting queue is full. Event '{}' is discarded.", name);
+                return false;
+            }
+            pendingEvents.incrementAndGet();
+            return true;
+        }
+
+        try {
+            capacity.acquire();
+            pendingEvents.incrementAndGet();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for free space in the reporting queue. Event '{}' is discarded.", name);
+            return false;
+        }
+    }
+
+    private void execute(String name, Runnable event) {
+        try {
+            event.run();
+        } catch (Throwable e) {
+            log.error("Could not process reporting event '{}'.", name, e);
+        } finally {
+            pendingEvents.decrementAndGet();
+            capacity.release();
+        }
+    }
+
+    private static class DispatcherThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "zebrunner-dispatcher-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
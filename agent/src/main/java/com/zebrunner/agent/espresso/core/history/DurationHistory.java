@@ -0,0 +1,153 @@
+package com.zebrunner.agent.espresso.core.history;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Durations of the tests observed in the previous runs, stored in a small tab separated file:
+ * {@code <duration millis> <updated at epoch millis> <class name>#<method name>}.
+ * <p>
+ * A recorded duration is smoothed with the previous one, so a single slow run does not move the test
+ * to another shard. Files written by several devices are merged by taking the latest entry of every test.
+ */
+@Slf4j
+public class DurationHistory {
+
+    private static final double SMOOTHING = 0.5;
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private DurationHistory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the history from the file. A missing or broken file results in an empty history.
+     */
+    public static DurationHistory load(File file) {
+        DurationHistory history = new DurationHistory(file);
+        if (file.isFile()) {
+            try {
+                history.read(file);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not read test duration history from {}. It will be rebuilt.", file, e);
+                history.entries.clear();
+            }
+        }
+        return history;
+    }
+
+    /**
+     * @return hex SHA-256 of the file, so the shards can check that they were given the same history
+     */
+    public static String checksum(File file) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte value : digest) {
+                hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String key(String className, String methodName) {
+        return className + '#' + methodName;
+    }
+
+    public Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    public void record(String key, long durationMillis) {
+        long updatedAt = System.currentTimeMillis();
+        entries.compute(key, (ignored, previous) -> new Entry(
+                previous != null
+                        ? Math.round(previous.durationMillis * (1 - SMOOTHING) + durationMillis * SMOOTHING)
+                        : durationMillis,
+                updatedAt
+        ));
+    }
+
+    /**
+     * Adds the entries of another history file, keeping the most recently updated entry of every test.
+     */
+    public void merge(File otherFile) throws IOException {
+        this.read(otherFile);
+    }
+
+    /**
+     * Writes the history atomically, so a process killed in the middle of the write does not break the file.
+     */
+    public void save() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.UTF_8))) {
+            // sorted, so files of different devices can be compared and merged by plain text tools too
+            for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+                writer.write(Long.toString(entry.getValue().durationMillis));
+                writer.write('\t');
+                writer.write(Long.toString(entry.getValue().updatedAt));
+                writer.write('\t');
+                writer.write(entry.getKey());
+                writer.write('\n');
+            }
+        }
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " with " + temporaryFile);
+        }
+    }
+
+    private void read(File source) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int durationEnd = line.indexOf('\t');
+                int updatedAtEnd = durationEnd > 0 ? line.indexOf('\t', durationEnd + 1) : -1;
+                if (updatedAtEnd < 0) {
+                    continue;
+                }
+
+                Entry entry = new Entry(
+                        Long.parseLong(line.substring(0, durationEnd)),
+                        Long.parseLong(line.substring(durationEnd + 1, updatedAtEnd))
+                );
+                entries.merge(line.substring(updatedAtEnd + 1), entry,
+                        (existing, read) -> read.updatedAt > existing.updatedAt ? read : existing);
+            }
+        }
+    }
+
+    @Value
+    public static class Entry {
+
+        long durationMillis;
+        long updatedAt;
+
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.zebrunner.agent.espresso.core.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assigns tests to shards with the longest processing time first heuristic: tests are taken from the slowest one,
+ * and every test goes to the shard with the least total duration so far.
+ * <p>
+ * Every shard computes the assignment on its own, so it depends on the history only and is deterministic.
+ * Tests without history (e.g. new ones) are assigned by the hash of their key, as the built-in sharding does.
+ * Tests which were not seen for a long time are ignored, since they were most likely removed.
+ */
+public class ShardAssignment {
+
+    private static final long STALE_AFTER_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private final int shardCount;
+    private final Map<String, Integer> shards;
+    private final long[] shardDurations;
+
+    private ShardAssignment(int shardCount, Map<String, Integer> shards, long[] shardDurations) {
+        this.shardCount = shardCount;
+        this.shards = shards;
+        this.shardDurations = shardDurations;
+    }
+
+    public static ShardAssignment of(DurationHistory history, int shardCount) {
+        Map<String, DurationHistory.Entry> entries = history.getEntries();
+
+        // relative to the latest entry rather than to now, so the shards agree regardless of their clocks
+        long latestUpdate = entries.values().stream().mapToLong(DurationHistory.Entry::getUpdatedAt).max().orElse(0);
+        List<Map.Entry<String, DurationHistory.Entry>> tests = new ArrayList<>();
+        for (Map.Entry<String, DurationHistory.Entry> entry : entries.entrySet()) {
+            if (latestUpdate - entry.getValue().getUpdatedAt() <= STALE_AFTER_MILLIS) {
+                tests.add(entry);
+            }
+        }
+        tests.sort((first, second) -> {
+            int comparison = Long.compare(second.getValue().getDurationMillis(), first.getValue().getDurationMillis());
+            return comparison != 0 ? comparison : first.getKey().compareTo(second.getKey());
+        });
+
+        long[] shardDurations = new long[shardCount];
+        PriorityQueue<Integer> leastLoadedShards = new PriorityQueue<>(shardCount, (first, second) -> {
+            int comparison = Long.compare(shardDurations[first], shardDurations[second]);
+            return comparison != 0 ? comparison : Integer.compare(first, second);
+        });
+        for (int shard = 0; shard < shardCount; shard++) {
+            leastLoadedShards.add(shard);
+        }
+
+        Map<String, Integer> shards = new HashMap<>(tests.size() * 2);
+        for (Map.Entry<String, DurationHistory.Entry> test : tests) {
+            int shard = leastLoadedShards.poll();
+            shards.put(test.getKey(), shard);
+            shardDurations[shard] += test.getValue().getDurationMillis();
+            leastLoadedShards.add(shard);
+        }
+        return new ShardAssignment(shardCount, shards, shardDurations);
+    }
+
+    /**
+     * @return assignment of all the tests by the hash of their key
+     */
+    public static ShardAssignment byHash(int shardCount) {
+        return new ShardAssignment(shardCount, Collections.emptyMap(), new long[shardCount]);
+    }
+
+    public int shardOf(String key) {
+        Integer shard = shards.get(key);
+        return shard != null
+                ? shard
+                : Math.floorMod(key.hashCode(), shardCount);
+    }
+
+    public int getKnownTests() {
+        return shards.size();
+    }
+
+    /**
+     * @return expected duration of the tests with history assigned to the shard
+     */
+    public long getExpectedDurationMillis(int shard) {
+        return shardDurations[shard];
+    }
+
+}
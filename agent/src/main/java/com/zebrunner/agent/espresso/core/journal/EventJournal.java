@@ -0,0 +1,322 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of reporting events stored in memory-mapped segment files.
+ * <p>
+ * Every record consists of the payload length, CRC32 of the payload and the payload itself (JSON of a {@link JournalEvent}).
+ * Every record is followed by a zero length marking the end of the journal, which the next record overwrites.
+ * The length is written last, so a record torn by a crash is either invisible or fails the checksum.
+ * On recovery, everything after the last intact record is zeroed, so stale bytes are never read as records.
+ * Mapped segments are flushed to the storage periodically rather than on every append.
+ * <p>
+ * The journal also stores the committed position: the position up to which the events are known to be delivered.
+ * Segments located entirely before the committed position are deleted.
+ */
+@Slf4j
+public class EventJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMMITTED_POSITION_FILE = "journal.offset";
+    private static final int HEADER_SIZE = 8;
+
+    private final File directory;
+    private final int segmentSize;
+    private final Gson gson;
+    private final ScheduledExecutorService syncScheduler;
+    private final Object commitLock = new Object();
+
+    // guarded by this
+    private long segmentIndex;
+    private MappedByteBuffer segment;
+
+    private volatile JournalPosition writePosition;
+    private volatile JournalPosition committedPosition;
+
+    public static EventJournal open(File directory, int segmentSize, Duration syncInterval, Gson gson) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory " + directory);
+        }
+        return new EventJournal(directory, segmentSize, syncInterval, gson);
+    }
+
+    private EventJournal(File directory, int segmentSize, Duration syncInterval, Gson gson) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.gson = gson;
+
+        this.committedPosition = this.readCommittedPosition();
+
+        long[] segments = this.listSegments();
+        this.segmentIndex = segments.length > 0
+                ? segments[segments.length - 1]
+                : committedPosition.getSegment();
+        this.segment = this.map(segmentIndex, segmentSize);
+        this.segment.position(this.recoverEndOffset(segment));
+        this.writePosition = new JournalPosition(segmentIndex, segment.position());
+
+        if (syncInterval != null) {
+            this.syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zebrunner-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.syncScheduler.scheduleWithFixedDelay(this::sync, syncInterval.toMillis(), syncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.syncScheduler = null;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public JournalPosition getWritePosition() {
+        return writePosition;
+    }
+
+    public JournalPosition getCommittedPosition() {
+        return committedPosition;
+    }
+
+    public boolean hasUncommittedEvents() {
+        return committedPosition.compareTo(writePosition) < 0;
+    }
+
+    public void append(JournalEvent event) throws IOException {
+        byte[] payload = gson.toJson(event).getBytes(StandardCharsets.UTF_8);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        synchronized (this) {
+            // 4 bytes are always kept free for the zero length which marks the end of the segment
+            if (segment.remaining() < HEADER_SIZE + payload.length + 4) {
+                this.rollSegment(HEADER_SIZE + payload.length + 4);
+            }
+
+            int start = segment.position();
+            segment.position(start + HEADER_SIZE);
+            segment.put(payload);
+            segment.putInt(segment.position(), 0);
+            segment.putInt(start + 4, (int) crc.getValue());
+            segment.putInt(start, payload.length);
+
+            writePosition = new JournalPosition(segmentIndex, segment.position());
+        }
+    }
+
+    /**
+     * Reads the event located at the position of the reader and moves the reader to the next event.
+     * Corrupted records are skipped.
+     *
+     * @return the event and the position of the next one, or null if there are no more events
+     */
+    public JournalRecord read(JournalReader reader) throws IOException {
+        JournalPosition position = reader.getPosition();
+        JournalPosition end = writePosition;
+        if (position.compareTo(end) >= 0) {
+            return null;
+        }
+
+        ByteBuffer buffer = reader.segmentBuffer(this);
+        if (this.isEndOfSegment(buffer, position.getOffset())) {
+            // the segment is completed, continue with the next one
+            if (position.getSegment() < end.getSegment()) {
+                reader.moveTo(new JournalPosition(this.nextSegment(position.getSegment()), 0));
+                return this.read(reader);
+            }
+            return null;
+        }
+
+        int length = buffer.getInt(position.getOffset());
+        int checksum = buffer.getInt(position.getOffset() + 4);
+
+        byte[] payload = new byte[length];
+        ByteBuffer payloadBuffer = buffer.duplicate();
+        payloadBuffer.position(position.getOffset() + HEADER_SIZE);
+        payloadBuffer.get(payload);
+
+        JournalPosition next = new JournalPosition(position.getSegment(), position.getOffset() + HEADER_SIZE + length);
+        reader.moveTo(next);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        JournalEvent event = null;
+        if ((int) crc.getValue() == checksum) {
+            try {
+                event = gson.fromJson(new String(payload, StandardCharsets.UTF_8), JournalEvent.class);
+            } catch (JsonParseException e) {
+                log.debug("Could not parse journal record at {}.", position, e);
+            }
+        }
+        if (event == null) {
+            log.error("Journal record at {} is corrupted. The record is skipped.", position);
+            return this.read(reader);
+        }
+        return new JournalRecord(event, next);
+    }
+
+    /**
+     * Stores the position up to which the events are delivered and removes the segments which are not needed anymore.
+     */
+    public void commit(JournalPosition position) throws IOException {
+        synchronized (commitLock) {
+            this.writeCommittedPosition(position);
+        }
+
+        for (long index : this.listSegments()) {
+            if (index < position.getSegment() && !this.segmentFile(index).delete()) {
+                log.debug("Could not delete journal segment {}.", index);
+            }
+        }
+    }
+
+    public void sync() {
+        MappedByteBuffer currentSegment;
+        synchronized (this) {
+            currentSegment = segment;
+        }
+        currentSegment.force();
+    }
+
+    @Override
+    public void close() {
+        if (syncScheduler != null) {
+            syncScheduler.shutdown();
+        }
+        this.sync();
+    }
+
+    MappedByteBuffer mapForRead(long index) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(this.segmentFile(index), "r")) {
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+    }
+
+    private void writeCommittedPosition(JournalPosition position) throws IOException {
+        File temporaryFile = new File(directory, COMMITTED_POSITION_FILE + ".tmp");
+        Files.write(temporaryFile.toPath(), (position.getSegment() + ":" + position.getOffset()).getBytes(StandardCharsets.UTF_8));
+        Files.move(
+                temporaryFile.toPath(),
+                new File(directory, COMMITTED_POSITION_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+        );
+        committedPosition = position;
+    }
+
+    private void rollSegment(int minSize) throws IOException {
+        segment.force();
+        segmentIndex++;
+        segment = this.map(segmentIndex, Math.max(segmentSize, minSize));
+    }
+
+    private MappedByteBuffer map(long index, int size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(this.segmentFile(index), "rw")) {
+            long length = Math.max(size, file.length());
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    /**
+     * @return true if there is no complete record at the offset, i.e. the offset is the end of the written records
+     */
+    private boolean isEndOfSegment(ByteBuffer buffer, int offset) {
+        if (offset + HEADER_SIZE > buffer.limit()) {
+            return true;
+        }
+        int length = buffer.getInt(offset);
+        return length <= 0 || offset + HEADER_SIZE + length > buffer.limit();
+    }
+
+    /**
+     * Finds the end of the intact records and zeroes everything after it,
+     * so neither a torn record nor the records of a previous use of the segment are read later.
+     */
+    private int recoverEndOffset(ByteBuffer buffer) {
+        int offset = 0;
+        while (!this.isEndOfSegment(buffer, offset)) {
+            int length = buffer.getInt(offset);
+
+            byte[] payload = new byte[length];
+            ByteBuffer payloadBuffer = buffer.duplicate();
+            payloadBuffer.position(offset + HEADER_SIZE);
+            payloadBuffer.get(payload);
+
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, payload.length);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                log.warn("Journal record at offset {} of segment {} is torn. It will be overwritten.", offset, segmentIndex);
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+
+        int tail = offset;
+        while (tail + Long.BYTES <= buffer.limit()) {
+            buffer.putLong(tail, 0L);
+            tail += Long.BYTES;
+        }
+        while (tail < buffer.limit()) {
+            buffer.put(tail, (byte) 0);
+            tail++;
+        }
+        return offset;
+    }
+
+    private JournalPosition readCommittedPosition() throws IOException {
+        File file = new File(directory, COMMITTED_POSITION_FILE);
+        if (!file.exists()) {
+            return JournalPosition.START;
+        }
+
+        String[] value = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim().split(":");
+        return new JournalPosition(Long.parseLong(value[0]), Integer.parseInt(value[1]));
+    }
+
+    private long nextSegment(long index) {
+        return Arrays.stream(this.listSegments())
+                     .filter(segmentIndex -> segmentIndex > index)
+                     .findFirst()
+                     .orElse(index + 1);
+    }
+
+    private long[] listSegments() {
+        String[] names = directory.list((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (names == null) {
+            return new long[0];
+        }
+        return Arrays.stream(names)
+                     .map(name -> name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))
+                     .mapToLong(Long::parseLong)
+                     .sorted()
+                     .toArray();
+    }
+
+    private File segmentFile(long index) {
+        return new File(directory, SEGMENT_PREFIX + index + SEGMENT_SUFFIX);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import com.google.gson.JsonElement;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalEvent {
+
+    private JournalEventType type;
+    private Long testRunId;
+    private Long testId;
+    private JsonElement payload;
+
+}
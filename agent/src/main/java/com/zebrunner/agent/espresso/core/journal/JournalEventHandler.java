@@ -0,0 +1,11 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+@FunctionalInterface
+public interface JournalEventHandler {
+
+    /**
+     * Delivers the event. An exception signals that the event should be delivered again later.
+     */
+    void handle(JournalEvent event) throws Exception;
+
+}
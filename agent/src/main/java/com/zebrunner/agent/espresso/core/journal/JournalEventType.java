@@ -0,0 +1,14 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+public enum JournalEventType {
+
+    TEST_FINISH,
+    TEST_RUN_FINISH,
+    LOGS,
+    TEST_CASE_RESULTS,
+    TEST_LABELS,
+    TEST_RUN_LABELS,
+    TEST_ARTIFACT_REFERENCE,
+    TEST_RUN_ARTIFACT_REFERENCE
+
+}
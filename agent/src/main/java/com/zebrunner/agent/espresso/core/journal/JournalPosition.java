@@ -0,0 +1,22 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import lombok.Value;
+
+/**
+ * Position in the journal: index of a segment file and offset within the segment.
+ */
+@Value
+public class JournalPosition implements Comparable<JournalPosition> {
+
+    public static final JournalPosition START = new JournalPosition(0, 0);
+
+    long segment;
+    int offset;
+
+    @Override
+    public int compareTo(JournalPosition other) {
+        int result = Long.compare(segment, other.segment);
+        return result != 0 ? result : Integer.compare(offset, other.offset);
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor over the journal. Keeps the currently read segment mapped between reads.
+ */
+public class JournalReader {
+
+    private JournalPosition position;
+
+    private long mappedSegment = -1;
+    private ByteBuffer mappedBuffer;
+
+    public JournalReader(JournalPosition position) {
+        this.position = position;
+    }
+
+    public JournalPosition getPosition() {
+        return position;
+    }
+
+    void moveTo(JournalPosition position) {
+        this.position = position;
+    }
+
+    ByteBuffer segmentBuffer(EventJournal journal) throws IOException {
+        if (mappedSegment != position.getSegment()) {
+            mappedBuffer = journal.mapForRead(position.getSegment());
+            mappedSegment = position.getSegment();
+        }
+        return mappedBuffer;
+    }
+
+}
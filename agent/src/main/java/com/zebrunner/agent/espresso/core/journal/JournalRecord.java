@@ -0,0 +1,11 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import lombok.Value;
+
+@Value
+public class JournalRecord {
+
+    JournalEvent event;
+    JournalPosition nextPosition;
+
+}
@@ -0,0 +1,252 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Replays the journal events to the server in background and advances the committed position of the journal.
+ * <p>
+ * The shipper starts from the committed position, so the events left undelivered by a previous (e.g. crashed) process
+ * are delivered first. An event which can not be delivered is retried with capped exponential backoff for as long
+ * as the shipper runs, so no event is lost while the server is unavailable. The committed position never moves past
+ * an undelivered event, so the next process resumes from it. Only the events which can never be delivered are skipped:
+ * the ones which can not be converted to a request and the ones rejected by the server.
+ * Failures to read the journal are retried, so the shipping never stops.
+ */
+@Slf4j
+public class JournalShipper {
+
+    private enum Delivery {
+
+        DELIVERED,
+        SKIPPED,
+        ABANDONED
+
+    }
+
+    private static final long IDLE_WAIT_MILLIS = 200;
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final int COMMIT_EVERY_EVENTS = 32;
+
+    private final EventJournal journal;
+    private final JournalEventHandler handler;
+    private final Predicate<Exception> rejectionCheck;
+    private final Object monitor = new Object();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param rejectionCheck tells whether the server rejected the event itself, so retrying it can not succeed
+     */
+    public JournalShipper(EventJournal journal, JournalEventHandler handler, Predicate<Exception> rejectionCheck) {
+        this.journal = journal;
+        this.handler = handler;
+        this.rejectionCheck = rejectionCheck;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this::ship, "zebrunner-journal-shipper");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Notifies the shipper about new events in the journal.
+     */
+    public void wakeUp() {
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all the journal events are delivered, but no longer than the given timeout.
+     * Undelivered events are kept in the journal and delivered later, or on the next launch.
+     *
+     * @return true if all the events were delivered, false otherwise
+     */
+    public boolean drain(Duration timeout) {
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        synchronized (monitor) {
+            monitor.notifyAll();
+            while (journal.hasUncommittedEvents()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.warn("Not all the journaled events were delivered within {} ms. They will be delivered on the next launch.", timeout.toMillis());
+                    return false;
+                }
+                try {
+                    monitor.wait(Math.min(remaining, IDLE_WAIT_MILLIS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the shipper. An event being retried is abandoned without being committed, so it is delivered on the next launch.
+     */
+    public void stop() {
+        Thread stopped;
+        synchronized (this) {
+            running = false;
+            stopped = thread;
+            thread = null;
+        }
+        this.wakeUp();
+        if (stopped != null) {
+            try {
+                stopped.join(MAX_BACKOFF_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Delivers the events from the committed position to the end of the journal on the calling thread.
+     * Stops at the first event which could not be delivered within the timeout, leaving it uncommitted.
+     *
+     * @return number of delivered events
+     */
+    public int replayAll(Duration timeout) throws IOException {
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        JournalReader reader = new JournalReader(journal.getCommittedPosition());
+        int delivered = 0;
+        JournalRecord record;
+        while ((record = journal.read(reader)) != null) {
+            Delivery delivery = this.deliver(record.getEvent(), () -> System.currentTimeMillis() < deadline);
+            if (delivery == Delivery.ABANDONED) {
+                log.warn("Journaled events were not delivered within {} ms. They are left in the journal from {}.", timeout.toMillis(), journal.getCommittedPosition());
+                break;
+            }
+            if (delivery == Delivery.DELIVERED) {
+                delivered++;
+            }
+            journal.commit(record.getNextPosition());
+        }
+        return delivered;
+    }
+
+    private void ship() {
+        JournalReader reader = new JournalReader(journal.getCommittedPosition());
+        // position after the last delivered or skipped event, which is not committed yet
+        JournalPosition processed = null;
+        int uncommittedEvents = 0;
+
+        try {
+            while (running) {
+                try {
+                    JournalRecord record = journal.read(reader);
+                    if (record == null) {
+                        if (processed != null) {
+                            journal.commit(processed);
+                            processed = null;
+                            uncommittedEvents = 0;
+                        }
+                        synchronized (monitor) {
+                            monitor.notifyAll();
+                            monitor.wait(IDLE_WAIT_MILLIS);
+                        }
+                        continue;
+                    }
+
+                    if (this.deliver(record.getEvent(), () -> running) == Delivery.ABANDONED) {
+                        return;
+                    }
+                    processed = record.getNextPosition();
+
+                    if (++uncommittedEvents >= COMMIT_EVERY_EVENTS) {
+                        journal.commit(processed);
+                        processed = null;
+                        uncommittedEvents = 0;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.error("Could not read the reporting journal at {}. Retrying in {} ms.", reader.getPosition(), MAX_BACKOFF_MILLIS, e);
+                    Thread.sleep(MAX_BACKOFF_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.commitOnStop(processed);
+        }
+    }
+
+    private void commitOnStop(JournalPosition processed) {
+        if (processed != null) {
+            try {
+                journal.commit(processed);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not commit the reporting journal at {}. The events after the committed position will be delivered again.", processed, e);
+            }
+        }
+    }
+
+    /**
+     * @param keepTrying tells whether an event failing to be delivered should still be retried
+     */
+    private Delivery deliver(JournalEvent event, BooleanSupplier keepTrying) {
+        long backoff = MIN_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                handler.handle(event);
+                return Delivery.DELIVERED;
+            } catch (JsonParseException e) {
+                log.error("Journaled {} event is malformed. The event is skipped.", event.getType(), e);
+                return Delivery.SKIPPED;
+            } catch (Exception e) {
+                if (rejectionCheck.test(e)) {
+                    log.error("Journaled {} event was rejected by the server. The event is skipped.", event.getType(), e);
+                    return Delivery.SKIPPED;
+                }
+                if (attempt == 1 || attempt % 10 == 0) {
+                    log.warn("Could not deliver journaled {} event (attempt {}). Retrying in {} ms.", event.getType(), attempt, backoff, e);
+                }
+            }
+
+            if (!this.pause(backoff, keepTrying)) {
+                return Delivery.ABANDONED;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    /**
+     * Waits for the backoff. Checks whether to keep trying at least every idle wait, so a stopped shipper
+     * or an expired replay does not wait for the whole backoff.
+     *
+     * @return false if the event should not be retried anymore
+     */
+    private boolean pause(long millis, BooleanSupplier keepTrying) {
+        long until = System.currentTimeMillis() + millis;
+        synchronized (monitor) {
+            long remaining;
+            while (keepTrying.getAsBoolean() && (remaining = until - System.currentTimeMillis()) > 0) {
+                try {
+                    monitor.wait(Math.min(remaining, IDLE_WAIT_MILLIS));
+                } catch (InterruptedException e) {
+                    // the delivery is interrupted, so the event must stay uncommitted
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return keepTrying.getAsBoolean();
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.zebrunner.agent.espresso.core.knownissue;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import lombok.SneakyThrows;
+
+/**
+ * Run scoped cache of the known issue confirmations, keyed by the test identity and the fingerprint
+ * of the failure stack trace.
+ * <p>
+ * Concurrent lookups of the same key are collapsed into a single request. Failed lookups are not cached.
+ */
+public class KnownIssueCache {
+
+    private final Map<String, CompletableFuture<Boolean>> confirmations = new ConcurrentHashMap<>();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * @param testIdentity identity of the test which is stable across its invocations, e.g. class and method name
+     * @param lookup       asks the server whether a known issue is attached to the failure
+     */
+    public boolean isKnownIssue(String testIdentity, String stackTrace, BooleanSupplier lookup) {
+        lookups.incrementAndGet();
+        String key = testIdentity + '\n' + StackTraceFingerprint.of(stackTrace);
+
+        CompletableFuture<Boolean> confirmation = new CompletableFuture<>();
+        CompletableFuture<Boolean> existingConfirmation = confirmations.putIfAbsent(key, confirmation);
+        if (existingConfirmation != null) {
+            return awaitConfirmation(existingConfirmation);
+        }
+
+        requests.incrementAndGet();
+        try {
+            boolean knownIssue = lookup.getAsBoolean();
+            confirmation.complete(knownIssue);
+            return knownIssue;
+        } catch (Throwable e) {
+            // the lookup may throw checked exceptions sneakily, waiters must be released anyway
+            confirmations.remove(key, confirmation);
+            confirmation.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public String getSummary() {
+        return lookups.get() + " known issue lookup(s) answered with " + requests.get() + " request(s).";
+    }
+
+    @SneakyThrows
+    private static boolean awaitConfirmation(CompletableFuture<Boolean> confirmation) {
+        try {
+            return confirmation.join();
+        } catch (CompletionException e) {
+            throw e.getCause() != null ? e.getCause() : e;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.zebrunner.agent.espresso.core.knownissue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * Computes a fingerprint of a failure stack trace, which is the same for failures caused by the same problem.
+ * <p>
+ * Before hashing, the trace is normalized: line numbers, lambda and synthetic frames and the "... n more" lines
+ * are dropped, and volatile parts of the messages (numbers, hashes, ids) are replaced with placeholders.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class StackTraceFingerprint {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final Pattern LINE_NUMBER = Pattern.compile(":\\d+\\)$");
+    private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final Pattern HEX_NUMBER = Pattern.compile("(0x|@)[0-9a-fA-F]+");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    public static String of(String stackTrace) {
+        StringBuilder normalized = new StringBuilder(stackTrace.length());
+        int lineStart = 0;
+        while (lineStart < stackTrace.length()) {
+            int lineEnd = stackTrace.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = stackTrace.length();
+            }
+
+            String line = stackTrace.substring(lineStart, lineEnd).trim();
+            lineStart = lineEnd + 1;
+
+            if (line.startsWith("at ")) {
+                if (!isSyntheticFrame(line)) {
+                    normalized.append(LINE_NUMBER.matcher(line).replaceFirst(")")).append('\n');
+                }
+            } else if (!line.isEmpty() && !(line.startsWith("...") && line.endsWith("more"))) {
+                normalized.append(normalizeMessage(line)).append('\n');
+            }
+        }
+        return sha256(normalized.toString());
+    }
+
+    private static boolean isSyntheticFrame(String frame) {
+        return frame.contains("lambda$")
+                || frame.contains("$$Lambda")
+                || frame.contains("$$ExternalSynthetic")
+                || frame.contains("access$")
+                || frame.contains("(Unknown Source)")
+                || frame.contains("(Native Method)")
+                || frame.startsWith("at java.lang.reflect.")
+                || frame.startsWith("at jdk.internal.reflect.")
+                || frame.startsWith("at sun.reflect.");
+    }
+
+    private static String normalizeMessage(String line) {
+        String normalized = UUID.matcher(line).replaceAll("<uuid>");
+        normalized = HEX_NUMBER.matcher(normalized).replaceAll("$1<hex>");
+        return NUMBER.matcher(normalized).replaceAll("<n>");
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+}
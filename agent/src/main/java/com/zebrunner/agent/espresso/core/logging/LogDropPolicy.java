@@ -0,0 +1,24 @@
+package com.zebrunner.agent.espresso.core.logging;
+
+/**
+ * Defines how the {@link LogShipper} behaves when its buffer is full.
+ */
+public enum LogDropPolicy {
+
+    /**
+     * The oldest buffered log is dropped to make room for the new one. The logging thread never waits.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Once the buffer is half full, only every n-th log of a test is kept. When the buffer is full,
+     * new logs are dropped. The logging thread never waits.
+     */
+    SAMPLE,
+
+    /**
+     * The logging thread waits for free space in the buffer, but no longer than the configured timeout.
+     */
+    BLOCK
+
+}
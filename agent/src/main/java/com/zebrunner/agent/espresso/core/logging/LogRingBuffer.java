@@ -0,0 +1,116 @@
+package com.zebrunner.agent.espresso.core.logging;
+
+import com.zebrunner.agent.core.logging.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer queue of logs backed by preallocated slots.
+ * <p>
+ * Every slot has a sequence number which tells whether the slot is free for the producer of the given position
+ * or holds a log for the consumer of the given position. Producers and consumers claim positions with CAS,
+ * so neither of them takes a lock. Any thread may consume, which allows producers to drop the oldest log.
+ */
+class LogRingBuffer {
+
+    @FunctionalInterface
+    interface EntryConsumer {
+
+        void accept(Long testRunId, Log log, int size);
+
+    }
+
+    private final int mask;
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.slots = new Slot[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    int size() {
+        return (int) Math.max(0, enqueuePosition.get() - dequeuePosition.get());
+    }
+
+    /**
+     * @return false if the buffer is full
+     */
+    boolean offer(Long testRunId, Log log, int size) {
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    Slot slot = slots[index];
+                    slot.testRunId = testRunId;
+                    slot.log = log;
+                    slot.size = size;
+                    // publishes the slot to consumers
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Passes the oldest log to the consumer and frees its slot.
+     *
+     * @return false if the buffer is empty
+     */
+    boolean poll(EntryConsumer consumer) {
+        long position = dequeuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    Slot slot = slots[index];
+                    Long testRunId = slot.testRunId;
+                    Log log = slot.log;
+                    int size = slot.size;
+                    slot.testRunId = null;
+                    slot.log = null;
+                    // frees the slot for the producer of the next lap
+                    sequences.set(index, position + slots.length);
+                    consumer.accept(testRunId, log, size);
+                    return true;
+                }
+                position = dequeuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        private Long testRunId;
+        private Log log;
+        private int size;
+
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.zebrunner.agent.espresso.core.logging;
+
+import com.zebrunner.agent.core.logging.Log;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ships test logs to the server in background.
+ * <p>
+ * Logging threads append logs to a preallocated lock-free ring buffer. The buffer is bounded both by the number
+ * of logs and by their approximate size, so a test stuck in a logging loop can not exhaust the memory.
+ * When the buffer is full, the configured {@link LogDropPolicy} is applied.
+ * <p>
+ * The shipper thread sends a batch once it reaches the max batch size or once the oldest log of the batch
+ * is older than the flush interval. Batches are compressed by the transport if request compression is enabled.
+ */
+@Slf4j
+public class LogShipper {
+
+    // approximate size of the log fields other than the message in the request body
+    private static final int LOG_OVERHEAD_BYTES = 64;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long DRAIN_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int REPORTED_TESTS = 10;
+
+    private final LogRingBuffer ring;
+    private final long maxBufferedBytes;
+    private final long maxBatchBytes;
+    private final long flushIntervalNanos;
+    private final LogDropPolicy dropPolicy;
+    private final int sampleRate;
+    private final long blockTimeoutNanos;
+    private final BiConsumer<Long, List<Log>> sender;
+
+    private final LogVolumeStats stats = new LogVolumeStats();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong appendedLogs = new AtomicLong();
+    private final AtomicLong processedLogs = new AtomicLong();
+    private final AtomicBoolean dropReported = new AtomicBoolean();
+    private final Thread thread;
+
+    private volatile boolean flushRequested;
+
+    // accessed by the shipper thread only
+    private final List<Log> batch = new ArrayList<>();
+    private Long batchTestRunId;
+    private long batchBytes;
+    private long batchStartedAt;
+
+    public static LogShipper fromConfiguration(BiConsumer<Long, List<Log>> sender) {
+        return new LogShipper(
+                EspressoConfiguration.getLogBufferCapacity(),
+                EspressoConfiguration.getLogBufferMaxBytes(),
+                EspressoConfiguration.getLogBatchMaxBytes(),
+                EspressoConfiguration.getLogFlushInterval(),
+                EspressoConfiguration.getLogDropPolicy(),
+                EspressoConfiguration.getLogSampleRate(),
+                EspressoConfiguration.getLogBlockTimeout(),
+                sender
+        );
+    }
+
+    public LogShipper(int capacity,
+                      long maxBufferedBytes,
+                      long maxBatchBytes,
+                      Duration flushInterval,
+                      LogDropPolicy dropPolicy,
+                      int sampleRate,
+                      Duration blockTimeout,
+                      BiConsumer<Long, List<Log>> sender) {
+        this.ring = new LogRingBuffer(capacity);
+        this.maxBufferedBytes = Math.max(1, maxBufferedBytes);
+        this.maxBatchBytes = Math.max(1, maxBatchBytes);
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.dropPolicy = dropPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.sender = sender;
+
+        this.thread = new Thread(this::ship, "zebrunner-log-shipper");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public void append(Long testRunId, Log log) {
+        LogVolumeStats.Volume volume = stats.of(log.getTestId());
+        int size = this.estimateSize(log);
+        volume.lines.incrementAndGet();
+        volume.bytes.addAndGet(size);
+
+        if (dropPolicy == LogDropPolicy.SAMPLE && this.isHalfFull() && volume.sampleCounter.incrementAndGet() % sampleRate != 0) {
+            this.onDropped(volume);
+            return;
+        }
+
+        long blockDeadline = 0;
+        while (!this.tryOffer(testRunId, log, size)) {
+            if (dropPolicy == LogDropPolicy.DROP_OLDEST) {
+                ring.poll(this::dropEntry);
+            } else if (dropPolicy == LogDropPolicy.SAMPLE) {
+                this.onDropped(volume);
+                return;
+            } else {
+                long now = System.nanoTime();
+                if (blockDeadline == 0) {
+                    blockDeadline = now + blockTimeoutNanos;
+                } else if (now - blockDeadline >= 0) {
+                    this.onDropped(volume);
+                    return;
+                }
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            }
+        }
+
+        if (bufferedBytes.get() >= maxBatchBytes) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Sends all the logs appended so far, waiting no longer than the given timeout.
+     *
+     * @return true if all the logs were processed
+     */
+    public boolean drain(Duration timeout) {
+        long target = appendedLogs.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (processedLogs.get() < target) {
+            if (System.nanoTime() - deadline >= 0) {
+                log.warn("Not all the test logs were sent within {} ms.", timeout.toMillis());
+                return false;
+            }
+            flushRequested = true;
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(this, DRAIN_PARK_NANOS);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getBufferedLogs() {
+        return ring.size();
+    }
+
+    public String getSummary() {
+        return String.format(
+                "%d log line(s) dropped. Tests with the largest log volume: %s.",
+                stats.totalDropped(), stats.describeTopTests(REPORTED_TESTS)
+        );
+    }
+
+    private boolean tryOffer(Long testRunId, Log log, int size) {
+        // the check and the increment are not atomic, so concurrent producers may exceed the limit by a few logs
+        if (bufferedBytes.get() + size > maxBufferedBytes || !ring.offer(testRunId, log, size)) {
+            return false;
+        }
+        bufferedBytes.addAndGet(size);
+        appendedLogs.incrementAndGet();
+        return true;
+    }
+
+    private boolean isHalfFull() {
+        return ring.size() * 2 >= ring.capacity() || bufferedBytes.get() * 2 >= maxBufferedBytes;
+    }
+
+    private int estimateSize(Log log) {
+        String message = log.getMessage();
+        long size = LOG_OVERHEAD_BYTES + (message != null ? message.length() : 0);
+        return (int) Math.min(size, maxBufferedBytes);
+    }
+
+    private void dropEntry(Long testRunId, Log log, int size) {
+        bufferedBytes.addAndGet(-size);
+        processedLogs.incrementAndGet();
+        this.onDropped(stats.of(log.getTestId()));
+    }
+
+    private void onDropped(LogVolumeStats.Volume volume) {
+        volume.dropped.incrementAndGet();
+        if (dropReported.compareAndSet(false, true)) {
+            log.warn("Test log buffer is full. Logs are dropped according to the {} policy.", dropPolicy);
+        }
+    }
+
+    private void ship() {
+        while (true) {
+            if (ring.poll(this::addToBatch)) {
+                if (batchBytes >= maxBatchBytes) {
+                    this.flush();
+                }
+                continue;
+            }
+
+            if (!batch.isEmpty() && (flushRequested || System.nanoTime() - batchStartedAt >= flushIntervalNanos)) {
+                this.flush();
+            }
+            flushRequested = false;
+
+            long parkNanos = batch.isEmpty()
+                    ? IDLE_PARK_NANOS
+                    : Math.min(IDLE_PARK_NANOS, flushIntervalNanos - (System.nanoTime() - batchStartedAt));
+            if (parkNanos > 0) {
+                LockSupport.parkNanos(this, parkNanos);
+            }
+        }
+    }
+
+    private void addToBatch(Long testRunId, Log log, int size) {
+        bufferedBytes.addAndGet(-size);
+        if (!batch.isEmpty() && !Objects.equals(testRunId, batchTestRunId)) {
+            this.flush();
+        }
+        if (batch.isEmpty()) {
+            batchTestRunId = testRunId;
+            batchStartedAt = System.nanoTime();
+        }
+        batch.add(log);
+        batchBytes += size;
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Log> logs = new ArrayList<>(batch);
+        batch.clear();
+        batchBytes = 0;
+        try {
+            sender.accept(batchTestRunId, logs);
+        } catch (Exception e) {
+            log.error("Could not send a batch of {} test log(s).", logs.size(), e);
+        } finally {
+            processedLogs.addAndGet(logs.size());
+        }
+    }
+
+}
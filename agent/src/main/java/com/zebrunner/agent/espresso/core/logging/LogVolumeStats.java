@@ -0,0 +1,53 @@
+package com.zebrunner.agent.espresso.core.logging;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Number of logged lines, logged bytes and dropped lines of every test.
+ */
+class LogVolumeStats {
+
+    static final String NO_TEST = "<test run>";
+
+    private final Map<String, Volume> volumes = new ConcurrentHashMap<>();
+
+    Volume of(Object testId) {
+        return volumes.computeIfAbsent(testId != null ? testId.toString() : NO_TEST, id -> new Volume());
+    }
+
+    long totalDropped() {
+        return volumes.values().stream().mapToLong(volume -> volume.dropped.get()).sum();
+    }
+
+    /**
+     * @return description of the tests which logged the most, including the number of their dropped lines
+     */
+    String describeTopTests(int limit) {
+        return volumes.entrySet()
+                      .stream()
+                      .sorted(Comparator.comparingLong((Map.Entry<String, Volume> entry) -> entry.getValue().bytes.get()).reversed())
+                      .limit(limit)
+                      .map(entry -> String.format(
+                              "%s: %d line(s), %d KiB, %d dropped",
+                              entry.getKey(),
+                              entry.getValue().lines.get(),
+                              entry.getValue().bytes.get() / 1024,
+                              entry.getValue().dropped.get()
+                      ))
+                      .collect(Collectors.joining("; "));
+    }
+
+    static final class Volume {
+
+        final AtomicLong lines = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong sampleCounter = new AtomicLong();
+
+    }
+
+}
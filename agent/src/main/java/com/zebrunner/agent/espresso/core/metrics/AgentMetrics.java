@@ -0,0 +1,295 @@
+package com.zebrunner.agent.espresso.core.metrics;
+
+import com.google.gson.stream.JsonWriter;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Measures the overhead the agent adds to a test run: latency, volume, errors and retries of every API endpoint,
+ * depth of the internal queues, time requests spent waiting in them and time spent inside the test run listener callbacks.
+ * <p>
+ * Recording a measurement does not allocate once the endpoint has been seen, and does not take any lock.
+ * Queue depths are sampled in background and only their max value is kept.
+ */
+@Slf4j
+public final class AgentMetrics {
+
+    private static final AgentMetrics INSTANCE = new AgentMetrics(EspressoConfiguration.isMetricsEnabled());
+
+    private static final long GAUGE_SAMPLING_INTERVAL_MILLIS = 250;
+    private static final double[] PERCENTILES = {50, 95, 99};
+
+    private final boolean enabled;
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    private final Map<ListenerCallback, LatencyHistogram> callbacks = new EnumMap<>(ListenerCallback.class);
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> queueTimes = new ConcurrentHashMap<>();
+    // guarded by itself, kept in the order of recording
+    private final Map<String, Long> startupPhases = new LinkedHashMap<>();
+    private final AtomicLong runStartedAt = new AtomicLong();
+
+    private ScheduledExecutorService gaugeSampler;
+
+    public static AgentMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private AgentMetrics(boolean enabled) {
+        this.enabled = enabled;
+        // filled once, so concurrent reads of the enum map are safe
+        for (ListenerCallback callback : ListenerCallback.values()) {
+            callbacks.put(callback, new LatencyHistogram());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public EndpointMetrics endpoint(String name) {
+        EndpointMetrics metrics = endpoints.get(name);
+        return metrics != null
+                ? metrics
+                : endpoints.computeIfAbsent(name, key -> new EndpointMetrics());
+    }
+
+    /**
+     * @return histogram of the time spent by requests waiting in the given queue, e.g. in a priority lane
+     */
+    public LatencyHistogram queueTime(String name) {
+        LatencyHistogram histogram = queueTimes.get(name);
+        return histogram != null
+                ? histogram
+                : queueTimes.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Records the duration of a startup phase, e.g. authentication. Only the first duration of a phase is kept.
+     */
+    public void recordStartupPhase(String phase, long durationNanos) {
+        if (enabled) {
+            synchronized (startupPhases) {
+                startupPhases.putIfAbsent(phase, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+            }
+        }
+    }
+
+    /**
+     * @return start time of a listener callback to be passed to {@link #recordCallback(ListenerCallback, long)}
+     */
+    public long startCallback() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void recordCallback(ListenerCallback callback, long startedAt) {
+        if (enabled) {
+            callbacks.get(callback).record(System.nanoTime() - startedAt);
+            if (callback == ListenerCallback.TEST_RUN_STARTED) {
+                runStartedAt.compareAndSet(0, startedAt);
+            }
+        }
+    }
+
+    /**
+     * Registers a queue whose depth is sampled periodically.
+     */
+    public void registerGauge(String name, LongSupplier depth) {
+        if (enabled) {
+            gauges.put(name, new Gauge(depth));
+            this.startGaugeSampler();
+        }
+    }
+
+    private synchronized void startGaugeSampler() {
+        if (gaugeSampler == null) {
+            gaugeSampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zebrunner-metrics-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            gaugeSampler.scheduleAtFixedRate(
+                    () -> gauges.values().forEach(Gauge::sample),
+                    GAUGE_SAMPLING_INTERVAL_MILLIS, GAUGE_SAMPLING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * @return human readable summary of the collected metrics
+     */
+    public String getSummary() {
+        long runWallMicros = this.getRunWallMicros();
+        long callbackMicros = callbacks.values().stream().mapToLong(LatencyHistogram::getTotalMicros).sum();
+
+        StringBuilder summary = new StringBuilder("Zebrunner agent overhead: listener callbacks took ")
+                .append(callbackMicros / 1000).append(" ms of ").append(runWallMicros / 1000).append(" ms of the run");
+        if (runWallMicros > 0) {
+            summary.append(String.format(" (%.2f%%)", callbackMicros * 100.0 / runWallMicros));
+        }
+        summary.append('.');
+
+        callbacks.forEach((callback, histogram) -> {
+            if (histogram.getCount() > 0) {
+                summary.append("\n  ").append(callback).append(": ").append(histogram.getCount()).append(" call(s), ")
+                       .append(histogram.getTotalMicros() / 1000).append(" ms total, ");
+                appendPercentiles(summary, histogram);
+            }
+        });
+
+        new TreeMap<>(endpoints).forEach((name, metrics) -> {
+            summary.append("\n  ").append(name).append(": ")
+                   .append(metrics.getCalls().get()).append(" call(s), ")
+                   .append(metrics.getErrors().get()).append(" error(s), ")
+                   .append(metrics.getRetries()).append(" retry(ies), ")
+                   .append(metrics.getRequestBytes().get() / 1024).append(" KiB sent, ")
+                   .append(metrics.getResponseBytes().get() / 1024).append(" KiB received, ");
+            appendPercentiles(summary, metrics.getLatency());
+        });
+
+        Map<String, Long> startup = this.getStartupPhases();
+        if (!startup.isEmpty()) {
+            summary.append("\n  startup:");
+            startup.forEach((phase, micros) -> summary.append(' ').append(phase).append('=').append(formatMicros(micros)));
+        }
+
+        new TreeMap<>(queueTimes).forEach((name, histogram) -> {
+            if (histogram.getCount() > 0) {
+                summary.append("\n  queue time of ").append(name).append(": ").append(histogram.getCount()).append(" request(s), ");
+                appendPercentiles(summary, histogram);
+            }
+        });
+
+        if (!gauges.isEmpty()) {
+            summary.append("\n  max queue depth:");
+            new TreeMap<>(gauges).forEach((name, gauge) -> summary.append(' ').append(name).append('=').append(gauge.max.get()));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * @return the collected metrics as a JSON document
+     */
+    public String toJson() {
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("runWallMicros").value(this.getRunWallMicros());
+
+            writer.name("listenerCallbacks").beginObject();
+            for (Map.Entry<ListenerCallback, LatencyHistogram> callback : callbacks.entrySet()) {
+                writer.name(callback.getKey().name());
+                writeHistogram(writer, callback.getValue());
+            }
+            writer.endObject();
+
+            writer.name("endpoints").beginObject();
+            for (Map.Entry<String, EndpointMetrics> endpoint : new TreeMap<>(endpoints).entrySet()) {
+                EndpointMetrics metrics = endpoint.getValue();
+                writer.name(endpoint.getKey()).beginObject();
+                writer.name("calls").value(metrics.getCalls().get());
+                writer.name("attempts").value(metrics.getAttempts().get());
+                writer.name("errors").value(metrics.getErrors().get());
+                writer.name("requestBytes").value(metrics.getRequestBytes().get());
+                writer.name("responseBytes").value(metrics.getResponseBytes().get());
+                writer.name("latency");
+                writeHistogram(writer, metrics.getLatency());
+                writer.endObject();
+            }
+            writer.endObject();
+
+            writer.name("startupMicros").beginObject();
+            for (Map.Entry<String, Long> phase : this.getStartupPhases().entrySet()) {
+                writer.name(phase.getKey()).value(phase.getValue());
+            }
+            writer.endObject();
+
+            writer.name("queueTimes").beginObject();
+            for (Map.Entry<String, LatencyHistogram> queueTime : new TreeMap<>(queueTimes).entrySet()) {
+                writer.name(queueTime.getKey());
+                writeHistogram(writer, queueTime.getValue());
+            }
+            writer.endObject();
+
+            writer.name("maxQueueDepth").beginObject();
+            for (Map.Entry<String, Gauge> gauge : new TreeMap<>(gauges).entrySet()) {
+                writer.name(gauge.getKey()).value(gauge.getValue().max.get());
+            }
+            writer.endObject();
+
+            writer.endObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
+    }
+
+    private Map<String, Long> getStartupPhases() {
+        synchronized (startupPhases) {
+            return new LinkedHashMap<>(startupPhases);
+        }
+    }
+
+    private long getRunWallMicros() {
+        long startedAt = runStartedAt.get();
+        return startedAt != 0 ? TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startedAt) : 0;
+    }
+
+    private static void appendPercentiles(StringBuilder summary, LatencyHistogram histogram) {
+        for (double percentile : PERCENTILES) {
+            summary.append('p').append((int) percentile).append(' ')
+                   .append(formatMicros(histogram.getPercentileMicros(percentile))).append(", ");
+        }
+        summary.append("max ").append(formatMicros(histogram.getMaxMicros()));
+    }
+
+    private static String formatMicros(long micros) {
+        return micros >= 10_000 ? micros / 1000 + " ms" : micros + " µs";
+    }
+
+    private static void writeHistogram(JsonWriter writer, LatencyHistogram histogram) throws IOException {
+        writer.beginObject();
+        writer.name("count").value(histogram.getCount());
+        writer.name("totalMicros").value(histogram.getTotalMicros());
+        for (double percentile : PERCENTILES) {
+            writer.name("p" + (int) percentile + "Micros").value(histogram.getPercentileMicros(percentile));
+        }
+        writer.name("maxMicros").value(histogram.getMaxMicros());
+        writer.endObject();
+    }
+
+    private static final class Gauge {
+
+        private final LongSupplier depth;
+        private final AtomicLong max = new AtomicLong();
+
+        private Gauge(LongSupplier depth) {
+            this.depth = depth;
+        }
+
+        private void sample() {
+            long current = depth.getAsLong();
+            long previous = max.get();
+            while (current > previous && !max.compareAndSet(previous, current)) {
+                previous = max.get();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.zebrunner.agent.espresso.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * Metrics of a single API endpoint.
+ * A call is a logical request made by the agent, an attempt is every request sent over the network for the call.
+ */
+@Getter
+public class EndpointMetrics {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    /**
+     * @return number of attempts above the number of calls: retries, authentication challenges and redirects
+     */
+    public long getRetries() {
+        return Math.max(0, attempts.get() - calls.get());
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.zebrunner.agent.espresso.core.metrics;
+
+/**
+ * Callbacks of the {@code TestRunListener} which are timed by {@link AgentMetrics}.
+ */
+public enum ListenerCallback {
+
+    TEST_RUN_STARTED,
+    TEST_RUN_FINISHED,
+    TEST_STARTED,
+    TEST_FINISHED,
+    TEST_FAILURE,
+    TEST_ASSUMPTION_FAILURE,
+    TEST_IGNORED
+
+}
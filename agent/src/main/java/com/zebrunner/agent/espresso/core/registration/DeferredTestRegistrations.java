@@ -0,0 +1,373 @@
+package com.zebrunner.agent.espresso.core.registration;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.zebrunner.agent.core.logging.Log;
+import com.zebrunner.agent.core.registrar.domain.TestDTO;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registers fast tests with a single request, which creates the test in its final state.
+ * <p>
+ * The start of a test is kept locally and the test gets a provisional (negative) id. Calls made for the test
+ * before it is registered on the server (screenshots, labels, logs, etc.) are held and replayed with the real id.
+ * Tests running longer than the live start threshold are registered as started in background,
+ * so they are shown in progress, and are finished as usual.
+ * <p>
+ * Requests to the server are sent outside of the lock of the test, so calls made for the test are not blocked by them.
+ * A finished test is forgotten after a short retention, which lets late calls, e.g. buffered logs, still be resolved.
+ */
+@Slf4j
+public class DeferredTestRegistrations {
+
+    private static final long FINISHED_TEST_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Duration liveStartThreshold;
+    private final Gson gson;
+    private final BiFunction<Long, TestDTO, TestDTO> starter;
+    private final BiConsumer<Long, TestDTO> finisher;
+    private final ScheduledExecutorService scheduler;
+
+    // finished tests are kept for the retention, so late calls with a provisional id can still be resolved
+    private final Map<Long, PendingTest> tests = new ConcurrentHashMap<>();
+    private final AtomicLong lastProvisionalId = new AtomicLong();
+
+    private final AtomicInteger combinedRegistrations = new AtomicInteger();
+    private final AtomicInteger liveStarts = new AtomicInteger();
+
+    /**
+     * @param starter  registers start of the test on the server and returns the registered test
+     * @param finisher registers finish of a test which was started on the server
+     */
+    public DeferredTestRegistrations(Duration liveStartThreshold,
+                                     Gson gson,
+                                     BiFunction<Long, TestDTO, TestDTO> starter,
+                                     BiConsumer<Long, TestDTO> finisher) {
+        this.liveStartThreshold = liveStartThreshold;
+        this.gson = gson;
+        this.starter = starter;
+        this.finisher = finisher;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "zebrunner-live-test-start");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records the start of the test locally.
+     *
+     * @return the test with a provisional id
+     */
+    public TestDTO start(Long testRunId, TestDTO test) {
+        long provisionalId = lastProvisionalId.decrementAndGet();
+        JsonObject start = gson.toJsonTree(test).getAsJsonObject();
+
+        PendingTest pendingTest = new PendingTest(testRunId, start);
+        tests.put(provisionalId, pendingTest);
+        pendingTest.liveStart = scheduler.schedule(
+                () -> this.startLive(provisionalId, pendingTest),
+                liveStartThreshold.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+
+        return this.withId(start, provisionalId);
+    }
+
+    public boolean isProvisional(Long testId) {
+        return testId != null && testId < 0;
+    }
+
+    /**
+     * Invokes the call with the real id of the test, right away if the test is registered already,
+     * or once it gets registered otherwise. Ids which are not provisional are passed through as is.
+     */
+    public void whenRegistered(Long testId, LongConsumer call) {
+        PendingTest pendingTest = this.isProvisional(testId) ? tests.get(testId) : null;
+        Long registeredId = pendingTest != null ? pendingTest.registeredIdOrHold(call) : testId;
+        if (registeredId != null) {
+            call.accept(registeredId);
+        }
+    }
+
+    /**
+     * Registers the test on the server right away, for calls which need the real id to be answered.
+     *
+     * @return real id of the test
+     */
+    public Long resolve(Long testId) {
+        PendingTest pendingTest = this.isProvisional(testId) ? tests.get(testId) : null;
+        if (pendingTest == null) {
+            return testId;
+        }
+
+        pendingTest.liveStart.cancel(false);
+        this.register(pendingTest, null);
+        return pendingTest.registeredId;
+    }
+
+    /**
+     * @return the test with its real id, registering the test on the server right away if needed
+     */
+    public TestDTO resolve(TestDTO test) {
+        Long testId = this.resolve(test.getId());
+        return Objects.equals(testId, test.getId())
+                ? test
+                : this.withId(gson.toJsonTree(test).getAsJsonObject(), testId);
+    }
+
+    /**
+     * Logs of tests which are not registered yet are held and passed to the sender once the tests are registered.
+     *
+     * @return logs which can be sent right away, with provisional test ids replaced by the real ones
+     */
+    public Collection<Log> resolveLogs(Collection<Log> logs, Consumer<Collection<Log>> sender) {
+        boolean hasProvisionalTestIds = false;
+        for (Log testLog : logs) {
+            if (this.isProvisional(testIdOf(testLog))) {
+                hasProvisionalTestIds = true;
+                break;
+            }
+        }
+        if (!hasProvisionalTestIds) {
+            return logs;
+        }
+
+        List<Log> resolvedLogs = new ArrayList<>(logs.size());
+        for (Log testLog : logs) {
+            long testId = testIdOf(testLog);
+            PendingTest pendingTest = this.isProvisional(testId) ? tests.get(testId) : null;
+            if (pendingTest == null) {
+                resolvedLogs.add(testLog);
+                continue;
+            }
+
+            Long registeredId = pendingTest.registeredIdOrHold(id -> sender.accept(List.of(this.withTestId(testLog, id))));
+            if (registeredId != null) {
+                resolvedLogs.add(this.withTestId(testLog, registeredId));
+            }
+        }
+        return resolvedLogs;
+    }
+
+    /**
+     * Registers the finish of the test. A test which was not registered on the server yet is created in its
+     * final state with a single request. If the server does not accept the final state on creation,
+     * the finish is registered with a second request.
+     *
+     * @return real id of the test
+     */
+    public Long finish(Long testRunId, TestDTO test) {
+        PendingTest pendingTest = this.isProvisional(test.getId()) ? tests.get(test.getId()) : null;
+        if (pendingTest == null) {
+            finisher.accept(testRunId, test);
+            return test.getId();
+        }
+
+        pendingTest.liveStart.cancel(false);
+        JsonObject finish = gson.toJsonTree(test).getAsJsonObject();
+        boolean finishedOnCreation = this.register(pendingTest, finish);
+
+        Long registeredId = pendingTest.registeredId;
+        if (registeredId != null && !finishedOnCreation) {
+            finisher.accept(testRunId, this.withId(finish, registeredId));
+        }
+        if (registeredId != null) {
+            this.forgetLater(test.getId());
+        }
+        return registeredId;
+    }
+
+    /**
+     * Forgets the test.
+     *
+     * @return id of the test to be reverted on the server, or null if the test was never sent to the server
+     */
+    public Long revert(Long testId) {
+        PendingTest pendingTest = this.isProvisional(testId) ? tests.remove(testId) : null;
+        if (pendingTest == null) {
+            return testId;
+        }
+
+        pendingTest.liveStart.cancel(false);
+        CompletableFuture<Void> registration;
+        synchronized (pendingTest) {
+            pendingTest.reverted = true;
+            pendingTest.heldCalls.clear();
+            registration = pendingTest.registration;
+        }
+        // a registration in flight may still create the test on the server
+        if (registration != null) {
+            registration.join();
+        }
+        return pendingTest.registeredId;
+    }
+
+    public String getSummary() {
+        return combinedRegistrations.get() + " test(s) registered with a single request, "
+                + liveStarts.get() + " test(s) started live.";
+    }
+
+    private void startLive(Long provisionalId, PendingTest pendingTest) {
+        try {
+            this.register(pendingTest, null);
+        } catch (Exception e) {
+            // the test will be registered on finish
+            log.warn("Could not register start of the long running test with provisional id {}.", provisionalId, e);
+        }
+    }
+
+    /**
+     * @param finish final state of the test, or null to register the start of the test only
+     * @return true if the test was created in its final state
+     */
+    private boolean register(PendingTest pendingTest, JsonObject finish) {
+        CompletableFuture<Void> registration;
+        JsonObject start;
+        synchronized (pendingTest) {
+            if (pendingTest.registeredId != null || pendingTest.reverted) {
+                return false;
+            }
+            registration = pendingTest.registration;
+            start = pendingTest.start;
+            if (registration == null) {
+                pendingTest.registration = new CompletableFuture<>();
+            }
+        }
+
+        if (registration != null) {
+            // registered by another thread, e.g. the live start racing with the finish. If it fails, this thread tries again
+            registration.join();
+            return this.register(pendingTest, finish);
+        }
+
+        TestDTO registeredTest;
+        try {
+            JsonObject request = start.deepCopy();
+            if (finish != null) {
+                for (Map.Entry<String, JsonElement> field : finish.entrySet()) {
+                    if (!"id".equals(field.getKey()) && !field.getValue().isJsonNull()) {
+                        request.add(field.getKey(), field.getValue());
+                    }
+                }
+            }
+            registeredTest = starter.apply(pendingTest.testRunId, gson.fromJson(request, TestDTO.class));
+        } catch (RuntimeException | Error e) {
+            this.completeRegistration(pendingTest);
+            throw e;
+        }
+
+        JsonElement result = gson.toJsonTree(registeredTest).getAsJsonObject().get("result");
+        boolean finishedOnCreation = finish != null && result != null && !result.isJsonNull();
+        (finish != null ? combinedRegistrations : liveStarts).incrementAndGet();
+
+        List<LongConsumer> heldCalls;
+        synchronized (pendingTest) {
+            pendingTest.registeredId = registeredTest.getId();
+            pendingTest.start = null;
+            heldCalls = new ArrayList<>(pendingTest.heldCalls);
+            pendingTest.heldCalls.clear();
+        }
+        this.completeRegistration(pendingTest);
+
+        for (LongConsumer heldCall : heldCalls) {
+            try {
+                heldCall.accept(pendingTest.registeredId);
+            } catch (Exception e) {
+                log.error("Could not deliver a call held until registration of the test with id {}.", pendingTest.registeredId, e);
+            }
+        }
+        return finishedOnCreation;
+    }
+
+    private void completeRegistration(PendingTest pendingTest) {
+        CompletableFuture<Void> registration;
+        synchronized (pendingTest) {
+            registration = pendingTest.registration;
+            pendingTest.registration = null;
+        }
+        registration.complete(null);
+    }
+
+    private void forgetLater(Long provisionalId) {
+        scheduler.schedule(() -> tests.remove(provisionalId), FINISHED_TEST_RETENTION_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private TestDTO withId(JsonObject test, Long id) {
+        JsonObject copy = test.deepCopy();
+        copy.addProperty("id", id);
+        return gson.fromJson(copy, TestDTO.class);
+    }
+
+    private Log withTestId(Log testLog, long testId) {
+        JsonObject copy = gson.toJsonTree(testLog).getAsJsonObject();
+        copy.addProperty("testId", testId);
+        return gson.fromJson(copy, Log.class);
+    }
+
+    private static long testIdOf(Log testLog) {
+        Object testId = testLog.getTestId();
+        if (testId instanceof Number) {
+            return ((Number) testId).longValue();
+        }
+        if (testId instanceof String && ((String) testId).startsWith("-")) {
+            try {
+                return Long.parseLong((String) testId);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    private static final class PendingTest {
+
+        private final Long testRunId;
+        private final List<LongConsumer> heldCalls = new ArrayList<>();
+
+        private JsonObject start;
+        private volatile Long registeredId;
+        private boolean reverted;
+        private ScheduledFuture<?> liveStart;
+        // completes once the registration in flight ends, successfully or not
+        private CompletableFuture<Void> registration;
+
+        private PendingTest(Long testRunId, JsonObject start) {
+            this.testRunId = testRunId;
+            this.start = start;
+        }
+
+        /**
+         * @return real id of the test or null if the call is held until the test is registered
+         */
+        private synchronized Long registeredIdOrHold(LongConsumer call) {
+            if (registeredId == null && !reverted) {
+                heldCalls.add(call);
+            }
+            return registeredId;
+        }
+
+    }
+
+}
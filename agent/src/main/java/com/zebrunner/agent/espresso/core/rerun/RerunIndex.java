@@ -0,0 +1,97 @@
+package com.zebrunner.agent.espresso.core.rerun;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.zebrunner.agent.espresso.core.TestCorrelationData;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Set of tests to be rerun, indexed by the correlation data reported when the tests were run originally.
+ * <p>
+ * A test matches by its display name, which includes the parameters of a parameterized test,
+ * or by its class, method and method parameter types.
+ */
+@Slf4j
+public class RerunIndex {
+
+    private static final Gson GSON = new Gson();
+
+    private final Set<String> displayNames;
+    private final Set<String> methodKeys;
+    private final Set<String> classNames;
+
+    private RerunIndex(Set<String> displayNames, Set<String> methodKeys, Set<String> classNames) {
+        this.displayNames = displayNames;
+        this.methodKeys = methodKeys;
+        this.classNames = classNames;
+    }
+
+    /**
+     * @param correlationDataJsons correlation data of the tests to be rerun, as reported on the test start
+     */
+    public static RerunIndex of(Collection<String> correlationDataJsons) {
+        Set<String> displayNames = new HashSet<>();
+        Set<String> methodKeys = new HashSet<>();
+        Set<String> classNames = new HashSet<>();
+
+        for (String correlationDataJson : correlationDataJsons) {
+            TestCorrelationData correlationData;
+            try {
+                correlationData = correlationDataJson != null
+                        ? GSON.fromJson(correlationDataJson, TestCorrelationData.class)
+                        : null;
+            } catch (JsonParseException e) {
+                log.debug("Correlation data '{}' of a test to be rerun could not be parsed.", correlationDataJson, e);
+                correlationData = null;
+            }
+            if (correlationData == null || correlationData.getClassName() == null) {
+                continue;
+            }
+
+            classNames.add(correlationData.getClassName());
+            if (correlationData.getDisplayName() != null) {
+                displayNames.add(correlationData.getDisplayName());
+            }
+            if (correlationData.getMethodName() != null) {
+                methodKeys.add(methodKey(
+                        correlationData.getClassName(), correlationData.getMethodName(), correlationData.getParameterClassNames()
+                ));
+            }
+        }
+        return new RerunIndex(displayNames, methodKeys, classNames);
+    }
+
+    public int size() {
+        return Math.max(displayNames.size(), methodKeys.size());
+    }
+
+    /**
+     * Cheap check which allows skipping the whole test class without looking at its methods.
+     */
+    public boolean containsClass(String className) {
+        return classNames.contains(className);
+    }
+
+    public boolean containsDisplayName(String displayName) {
+        return displayNames.contains(displayName);
+    }
+
+    public boolean containsMethod(String className, String methodName, List<String> parameterClassNames) {
+        return methodKeys.contains(methodKey(className, methodName, parameterClassNames));
+    }
+
+    private static String methodKey(String className, String methodName, List<String> parameterClassNames) {
+        StringBuilder key = new StringBuilder(className).append('#').append(methodName).append('(');
+        if (parameterClassNames != null) {
+            key.append(String.join(",", parameterClassNames));
+        }
+        return key.append(')').toString();
+    }
+
+}
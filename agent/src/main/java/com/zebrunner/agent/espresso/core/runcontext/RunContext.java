@@ -0,0 +1,29 @@
+package com.zebrunner.agent.espresso.core.runcontext;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * State of a test run shared by the instrumentation processes reporting into it, e.g. one process per test
+ * with the Android Test Orchestrator.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class RunContext {
+
+    private String key;
+    private String host;
+    private String projectKey;
+    private Long testRunId;
+
+    private String authorizationHeader;
+    /**
+     * Expiration time of the token in epoch millis, or null if it is unknown.
+     */
+    private Long authTokenExpiresAt;
+
+    private long updatedAt;
+
+}
@@ -0,0 +1,105 @@
+package com.zebrunner.agent.espresso.core.runcontext;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the {@link RunContext} in a file, so the next instrumentation process of the same test run starts
+ * from a warm state. The file must be located outside of the app data cleared between the processes
+ * (e.g. on the shared storage when the orchestrator runs with {@code clearPackageData}).
+ * <p>
+ * A context belongs to the current run only if it has the same key, e.g. the id of the CI build passed
+ * to every process, so consecutive runs on the same device are never merged. Without a key the run context is not used.
+ * A context of another server or project is never used.
+ * The file contains a short-lived access token, so it should not be kept after the run.
+ */
+@Slf4j
+public class RunContextStore {
+
+    private final File file;
+    private final String key;
+    private final Gson gson = new Gson();
+
+    public RunContextStore(File file, String key) {
+        this.file = Objects.requireNonNull(file);
+        this.key = Objects.requireNonNull(key);
+    }
+
+    /**
+     * @return null if the run context is not configured
+     */
+    public static RunContextStore fromConfiguration() {
+        File file = EspressoConfiguration.getRunContextFile();
+        if (file == null) {
+            return null;
+        }
+
+        String key = EspressoConfiguration.getRunContextKey();
+        if (key == null) {
+            log.warn("Run context file is set, but the run context key is not. Every process will start its own test run.");
+            return null;
+        }
+        return new RunContextStore(file, key);
+    }
+
+    /**
+     * @return context of the current run left by a previous process, or null if there is none
+     */
+    public RunContext load(String host, String projectKey) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        RunContext context;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            context = gson.fromJson(reader, RunContext.class);
+        } catch (IOException | JsonParseException e) {
+            log.warn("Could not read run context from {}. A new test run will be started.", file, e);
+            return null;
+        }
+
+        if (context == null || context.getTestRunId() == null
+                || !key.equals(context.getKey())
+                || !Objects.equals(host, context.getHost())
+                || !Objects.equals(projectKey, context.getProjectKey())) {
+            return null;
+        }
+        return context;
+    }
+
+    public void save(RunContext context) {
+        context.setKey(key);
+        context.setUpdatedAt(System.currentTimeMillis());
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.UTF_8)) {
+                gson.toJson(context, writer);
+            }
+            if (!temporaryFile.renameTo(file)) {
+                throw new IOException("Could not replace " + file + " with " + temporaryFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not save run context to {}. The next process will start a new test run.", file, e);
+        }
+    }
+
+}
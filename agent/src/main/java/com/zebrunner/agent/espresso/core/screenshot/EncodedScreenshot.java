@@ -0,0 +1,14 @@
+package com.zebrunner.agent.espresso.core.screenshot;
+
+import lombok.Value;
+
+@Value
+public class EncodedScreenshot {
+
+    Long testRunId;
+    Long testId;
+    Long capturedAt;
+    byte[] png;
+    byte[] hash;
+
+}
@@ -0,0 +1,266 @@
+package com.zebrunner.agent.espresso.core.screenshot;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Processes screenshots off the test thread.
+ * <p>
+ * A submitted screenshot goes through the following stages:
+ * <ol>
+ *     <li>encoding (and optional downscaling) on a small pool of encoder threads;</li>
+ *     <li>hashing and comparison with the previous screenshot of the same test. This stage is executed
+ *     in the capture order of every test, so a screenshot identical to the previous one is always skipped;</li>
+ *     <li>upload on a separate pool with bounded concurrency.</li>
+ * </ol>
+ * Capture timestamps are kept as is, so the server orders screenshots correctly regardless of the upload order.
+ * <p>
+ * The number of screenshots being processed is bounded. A test thread submitting a screenshot above the bound
+ * waits for room in the queue, but no longer than the queue timeout. Then the screenshot is dropped and the drop is logged.
+ */
+@Slf4j
+public class ScreenshotPipeline {
+
+    private static final CompletableFuture<byte[]> NO_PREVIOUS_HASH = CompletableFuture.completedFuture(null);
+
+    private final ExecutorService encoders;
+    private final ExecutorService uploaders;
+    private final int queueCapacity;
+    private final Semaphore capacity;
+    private final long queueTimeoutMillis;
+    private final int maxDimension;
+    private final boolean dedupe;
+    private final Consumer<EncodedScreenshot> uploader;
+
+    // tail of the dedupe stage of every test. completes with the hash of the last accepted screenshot
+    private final Map<Long, CompletableFuture<byte[]>> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger droppedScreenshots = new AtomicInteger();
+    private final AtomicInteger skippedScreenshots = new AtomicInteger();
+
+    public static ScreenshotPipeline fromConfiguration(Consumer<EncodedScreenshot> uploader) {
+        return new ScreenshotPipeline(
+                EspressoConfiguration.getScreenshotEncoderThreads(),
+                EspressoConfiguration.getScreenshotUploadConcurrency(),
+                EspressoConfiguration.getScreenshotQueueCapacity(),
+                EspressoConfiguration.getScreenshotQueueTimeout(),
+                EspressoConfiguration.getScreenshotMaxDimension(),
+                EspressoConfiguration.isScreenshotDedupeEnabled(),
+                uploader
+        );
+    }
+
+    public ScreenshotPipeline(int encoderThreads,
+                              int uploadConcurrency,
+                              int queueCapacity,
+                              Duration queueTimeout,
+                              int maxDimension,
+                              boolean dedupe,
+                              Consumer<EncodedScreenshot> uploader) {
+        this.encoders = Executors.newFixedThreadPool(Math.max(1, encoderThreads), daemonThreadFactory("zebrunner-screenshot-encoder-"));
+        this.uploaders = Executors.newFixedThreadPool(Math.max(1, uploadConcurrency), daemonThreadFactory("zebrunner-screenshot-uploader-"));
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.capacity = new Semaphore(this.queueCapacity);
+        this.queueTimeoutMillis = Math.max(0, queueTimeout.toMillis());
+        this.maxDimension = maxDimension;
+        this.dedupe = dedupe;
+        this.uploader = uploader;
+    }
+
+    /**
+     * Submits a captured bitmap. The bitmap must not be recycled or modified by the caller after submission.
+     */
+    public void submit(Bitmap bitmap, Long testRunId, Long testId, Long capturedAt) {
+        this.submit(testRunId, testId, capturedAt, () -> {
+            Bitmap scaled = this.downscale(bitmap);
+            try {
+                return this.encode(scaled);
+            } finally {
+                if (scaled != bitmap) {
+                    scaled.recycle();
+                }
+            }
+        });
+    }
+
+    /**
+     * Submits an already encoded PNG screenshot.
+     */
+    public void submit(byte[] png, Long testRunId, Long testId, Long capturedAt) {
+        this.submit(testRunId, testId, capturedAt, () -> maxDimension > 0 ? this.downscale(png) : png);
+    }
+
+    private void submit(Long testRunId, Long testId, Long capturedAt, Supplier<byte[]> encoder) {
+        if (!this.acquireCapacity()) {
+            int dropped = droppedScreenshots.incrementAndGet();
+            log.warn("Screenshot queue is full for {} ms. Screenshot of test with id {} captured at {} is dropped ({} dropped so far).",
+                    queueTimeoutMillis, testId, capturedAt, dropped);
+            return;
+        }
+
+        CompletableFuture<EncodedScreenshot> encoded = CompletableFuture.supplyAsync(
+                () -> {
+                    byte[] png = encoder.get();
+                    return new EncodedScreenshot(testRunId, testId, capturedAt, png, dedupe ? hash(png) : null);
+                },
+                encoders
+        );
+
+        lanes.compute(
+                testId,
+                (id, tail) -> (tail != null ? tail : NO_PREVIOUS_HASH).thenCombine(encoded, this::dedupeAndUpload)
+                                                                     .exceptionally(e -> {
+                                                                         log.error("Could not process screenshot of test with id {}.", id, e);
+                                                                         capacity.release();
+                                                                         return null;
+                                                                     })
+        );
+    }
+
+    private boolean acquireCapacity() {
+        if (capacity.tryAcquire()) {
+            return true;
+        }
+
+        try {
+            return capacity.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return number of screenshots which are being encoded or uploaded
+     */
+    public int getPendingScreenshots() {
+        return queueCapacity - capacity.availablePermits();
+    }
+
+    /**
+     * Forgets the last screenshot of the test. Should be invoked once the test is finished.
+     */
+    public void release(Long testId) {
+        lanes.remove(testId);
+    }
+
+    /**
+     * @return hash of the screenshot which became the last accepted one for the test
+     */
+    private byte[] dedupeAndUpload(byte[] previousHash, EncodedScreenshot screenshot) {
+        if (dedupe && previousHash != null && Arrays.equals(previousHash, screenshot.getHash())) {
+            skippedScreenshots.incrementAndGet();
+            capacity.release();
+            return previousHash;
+        }
+
+        uploaders.execute(() -> {
+            try {
+                uploader.accept(screenshot);
+            } catch (Exception e) {
+                log.error("Could not upload screenshot of test with id {}.", screenshot.getTestId(), e);
+            } finally {
+                capacity.release();
+            }
+        });
+        return screenshot.getHash();
+    }
+
+    /**
+     * Waits until all the submitted screenshots are processed, but no longer than the given timeout.
+     */
+    public boolean drain(Duration timeout) {
+        try {
+            if (capacity.tryAcquire(queueCapacity, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                capacity.release(queueCapacity);
+                return true;
+            }
+            log.warn("Screenshots were not uploaded within {} ms.", timeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            log.info("Screenshot pipeline: {} screenshot(s) dropped, {} identical screenshot(s) skipped.",
+                    droppedScreenshots.get(), skippedScreenshots.get());
+        }
+        return false;
+    }
+
+    private byte[] downscale(byte[] png) {
+        Bitmap bitmap = BitmapFactory.decodeByteArray(png, 0, png.length);
+        if (bitmap == null) {
+            return png;
+        }
+
+        Bitmap scaled = this.downscale(bitmap);
+        if (scaled == bitmap) {
+            bitmap.recycle();
+            return png;
+        }
+
+        try {
+            return this.encode(scaled);
+        } finally {
+            bitmap.recycle();
+            scaled.recycle();
+        }
+    }
+
+    private Bitmap downscale(Bitmap bitmap) {
+        int largestDimension = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (maxDimension <= 0 || largestDimension <= maxDimension) {
+            return bitmap;
+        }
+
+        float scale = (float) maxDimension / largestDimension;
+        return Bitmap.createScaledBitmap(
+                bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)),
+                true
+        );
+    }
+
+    private byte[] encode(Bitmap bitmap) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bitmap.getByteCount() / 4);
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
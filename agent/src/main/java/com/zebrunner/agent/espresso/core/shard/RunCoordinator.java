@@ -0,0 +1,29 @@
+package com.zebrunner.agent.espresso.core.shard;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Lets the shards of a run report into a single test run.
+ * <p>
+ * The test run is started by exactly one shard, the others wait for its id. Finishes of the shards are
+ * reference counted against the expected number of shards, so the test run is finished once, by the last shard,
+ * even if some shards finish before the others have started.
+ * Both operations must be idempotent for the same shard, so they can be safely retried.
+ */
+public interface RunCoordinator {
+
+    /**
+     * Joins the test run of the shard, starting it if no other shard did so yet.
+     *
+     * @param runStarter starts the test run on the server and returns its id. It is called by one shard only,
+     *                   unless that shard fails to start the run.
+     */
+    RunMembership join(ShardContext shard, Callable<Long> runStarter) throws Exception;
+
+    /**
+     * @return number of shards which have not left the run yet. Zero means the caller should finish the test run.
+     */
+    int leave(ShardContext shard) throws IOException;
+
+}
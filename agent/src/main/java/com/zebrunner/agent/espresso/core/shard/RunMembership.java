@@ -0,0 +1,18 @@
+package com.zebrunner.agent.espresso.core.shard;
+
+import lombok.Value;
+
+/**
+ * Result of joining a coordinated test run.
+ */
+@Value
+public class RunMembership {
+
+    Long testRunId;
+
+    /**
+     * Whether the current shard started the test run and is therefore responsible for the run-level calls.
+     */
+    boolean leader;
+
+}
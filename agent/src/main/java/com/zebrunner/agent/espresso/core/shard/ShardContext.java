@@ -0,0 +1,42 @@
+package com.zebrunner.agent.espresso.core.shard;
+
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Position of the current instrumentation process in a sharded test run.
+ * All the shards of a run share the same run key, e.g. the id of the CI build.
+ */
+@Slf4j
+@Value
+public class ShardContext {
+
+    String runKey;
+    int shardIndex;
+    int shardCount;
+
+    /**
+     * @return context of the current shard or null if the run is not coordinated
+     */
+    public static ShardContext fromConfiguration() {
+        String runKey = EspressoConfiguration.getShardRunKey();
+        if (runKey == null) {
+            return null;
+        }
+        if (EspressoConfiguration.getShardCoordinatorUrl() == null) {
+            log.warn("Run key '{}' is set, but the run coordinator url is not. Every shard will report its own test run.", runKey);
+            return null;
+        }
+
+        int shardCount = Math.max(1, EspressoConfiguration.getShardCount());
+        int shardIndex = EspressoConfiguration.getShardIndex();
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            log.warn("Shard index {} is out of range of {} shard(s). Every shard will report its own test run.", shardIndex, shardCount);
+            return null;
+        }
+        return new ShardContext(runKey, shardIndex, shardCount);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.zebrunner.agent.espresso.core.shard;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Membership of the current shard in a coordinated test run.
+ */
+@Slf4j
+public class ShardedRun {
+
+    private final ShardContext shard;
+    private final RunCoordinator coordinator;
+
+    private volatile RunMembership membership;
+
+    public ShardedRun(ShardContext shard, RunCoordinator coordinator) {
+        this.shard = shard;
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * @return id of the shared test run
+     */
+    public Long join(Callable<Long> runStarter) throws Exception {
+        RunMembership membership = coordinator.join(shard, runStarter);
+        this.membership = membership;
+
+        log.info("Shard {} of {} joined test run {} with key '{}'{}.",
+                shard.getShardIndex() + 1, shard.getShardCount(), membership.getTestRunId(), shard.getRunKey(),
+                membership.isLeader() ? " as the leader" : "");
+        return membership.getTestRunId();
+    }
+
+    /**
+     * Run-level calls (build, platform) are made by the shard which started the test run only.
+     * The shard which has not joined a run yet is treated as the leader, so nothing is lost.
+     */
+    public boolean isLeader() {
+        RunMembership membership = this.membership;
+        return membership == null || membership.isLeader();
+    }
+
+    /**
+     * @return true if the current shard is the last one or did not join the run, and should finish the test run
+     */
+    public boolean leave() {
+        if (membership == null) {
+            return true;
+        }
+
+        try {
+            int remainingShards = coordinator.leave(shard);
+            if (remainingShards > 0) {
+                log.info("Shard {} of {} left the test run. {} shard(s) are still running.",
+                        shard.getShardIndex() + 1, shard.getShardCount(), remainingShards);
+                return false;
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // it is better to finish the run too early than to leave it running forever
+            log.error("Could not leave the coordinated test run. The test run will be finished by the current shard.", e);
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.zebrunner.agent.espresso.core.trace;
+
+import lombok.Value;
+
+/**
+ * Failure trace prepared for reporting.
+ */
+@Value
+public class EncodedTrace {
+
+    String trace;
+
+    /**
+     * Gzip compressed view hierarchy dump extracted from the exception messages, or null if there was none.
+     */
+    byte[] hierarchyDump;
+
+    /**
+     * Human readable description of what was trimmed, or null if the trace is complete.
+     */
+    String summary;
+
+}
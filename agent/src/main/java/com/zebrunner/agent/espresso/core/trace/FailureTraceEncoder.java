@@ -0,0 +1,285 @@
+package com.zebrunner.agent.espresso.core.trace;
+
+import com.zebrunner.agent.espresso.core.config.EspressoConfiguration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Renders a failure into a bounded stack trace.
+ * <p>
+ * Compared to {@link Throwable#printStackTrace()}, the trace is written straight into a single buffer of limited size,
+ * Espresso view hierarchy dumps are moved from the exception messages into a separate compressed artifact,
+ * causes repeating an already written failure are skipped and runs of test framework frames are collapsed.
+ * Suppressed exceptions are written with their causes, indented as in {@link Throwable#printStackTrace()}.
+ */
+public class FailureTraceEncoder {
+
+    private static final String VIEW_HIERARCHY_MARKER = "View Hierarchy:";
+    private static final String[] FRAMEWORK_CLASS_PREFIXES = {
+            "org.junit.",
+            "junit.",
+            "androidx.test.",
+            "android.app.Instrumentation",
+            "android.os.",
+            "com.android.internal.",
+            "dalvik.",
+            "java.lang.reflect.",
+            "jdk.internal.",
+            "sun.reflect.",
+            "java.util.concurrent.",
+            "kotlin.coroutines.",
+            "kotlinx.coroutines."
+    };
+    // frame runs shorter than this are kept as is
+    private static final int MIN_COLLAPSED_FRAMES = 3;
+    // room kept for the truncation marker and the summary
+    private static final int RESERVED_LENGTH = 256;
+
+    private final int maxLength;
+    private final boolean extractHierarchy;
+    private final boolean collapseFrameworkFrames;
+
+    public FailureTraceEncoder(int maxLength, boolean extractHierarchy, boolean collapseFrameworkFrames) {
+        this.maxLength = Math.max(RESERVED_LENGTH * 2, maxLength);
+        this.extractHierarchy = extractHierarchy;
+        this.collapseFrameworkFrames = collapseFrameworkFrames;
+    }
+
+    public static FailureTraceEncoder fromConfiguration() {
+        return new FailureTraceEncoder(
+                EspressoConfiguration.getTraceMaxLength(),
+                EspressoConfiguration.isTraceHierarchyArtifactEnabled(),
+                EspressoConfiguration.isTraceFrameworkFramesCollapsed()
+        );
+    }
+
+    public EncodedTrace encode(Throwable throwable) {
+        Encoding encoding = new Encoding();
+        this.encode(encoding, throwable, null, "", "", Collections.newSetFromMap(new IdentityHashMap<>()), new HashSet<>());
+        return encoding.finish();
+    }
+
+    /**
+     * Writes the failure and its cause chain. Suppressed exceptions of every failure in the chain are written
+     * recursively, with one more level of indentation.
+     *
+     * @param caption written before the failure, e.g. {@code Suppressed: }
+     * @param prefix  indentation of the failure and its frames
+     */
+    private void encode(Encoding encoding,
+                        Throwable throwable,
+                        StackTraceElement[] enclosingFrames,
+                        String caption,
+                        String prefix,
+                        Set<Throwable> visited,
+                        Set<String> writtenFailures) {
+        String currentCaption = caption;
+        for (Throwable current = throwable; current != null && visited.add(current); current = current.getCause()) {
+            StackTraceElement[] frames = current.getStackTrace();
+            String message = current.getLocalizedMessage();
+
+            if (!writtenFailures.add(current.getClass().getName() + '\n' + message)) {
+                encoding.skippedCauses++;
+            } else if (!encoding.isFull()) {
+                encoding.append(prefix);
+                encoding.append(currentCaption);
+                encoding.append(current.getClass().getName());
+                if (message != null) {
+                    encoding.append(": ");
+                    encoding.appendMessage(message);
+                }
+                encoding.append("\n");
+                encoding.appendFrames(frames, enclosingFrames, prefix);
+            }
+
+            for (Throwable suppressed : current.getSuppressed()) {
+                this.encode(encoding, suppressed, frames, "Suppressed: ", prefix + "\t", visited, writtenFailures);
+            }
+            enclosingFrames = frames;
+            currentCaption = "Caused by: ";
+        }
+    }
+
+    private boolean isFrameworkFrame(StackTraceElement frame) {
+        String className = frame.getClassName();
+        for (String prefix : FRAMEWORK_CLASS_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class Encoding {
+
+        private final StringBuilder trace = new StringBuilder(256);
+        private final int limit = maxLength - RESERVED_LENGTH;
+
+        private ByteArrayOutputStream hierarchyBytes;
+        private Writer hierarchyWriter;
+        private int hierarchyLength;
+
+        private boolean truncated;
+        private int skippedCauses;
+        private int collapsedFrames;
+
+        private boolean isFull() {
+            return truncated;
+        }
+
+        private void append(String value) {
+            this.append(value, 0, value.length());
+        }
+
+        private void append(String value, int start, int end) {
+            if (truncated) {
+                return;
+            }
+
+            int available = limit - trace.length();
+            if (end - start > available) {
+                trace.append(value, start, start + Math.max(0, available));
+                truncated = true;
+            } else {
+                trace.append(value, start, end);
+            }
+        }
+
+        private void appendMessage(String message) {
+            int hierarchyStart = extractHierarchy ? message.indexOf(VIEW_HIERARCHY_MARKER) : -1;
+            if (hierarchyStart < 0) {
+                this.append(message);
+                return;
+            }
+
+            this.append(message, 0, hierarchyStart);
+            this.append("[view hierarchy is attached to the test as an artifact]");
+            this.writeHierarchy(message, hierarchyStart, message.length());
+        }
+
+        private void appendFrames(StackTraceElement[] frames, StackTraceElement[] enclosingFrames, String prefix) {
+            int commonFrames = countCommonFrames(frames, enclosingFrames);
+            int end = frames.length - commonFrames;
+
+            int i = 0;
+            while (i < end && !truncated) {
+                int runEnd = i;
+                if (collapseFrameworkFrames) {
+                    while (runEnd < end && isFrameworkFrame(frames[runEnd])) {
+                        runEnd++;
+                    }
+                }
+
+                int runLength = runEnd - i;
+                if (runLength >= MIN_COLLAPSED_FRAMES) {
+                    // the first frame tells where the test code was entered from
+                    this.appendFrame(frames[i], prefix);
+                    this.append(prefix + "\t... " + (runLength - 1) + " framework frames\n");
+                    collapsedFrames += runLength - 1;
+                    i = runEnd;
+                } else {
+                    this.appendFrame(frames[i], prefix);
+                    i++;
+                }
+            }
+
+            if (commonFrames > 0) {
+                this.append(prefix + "\t... " + commonFrames + " more\n");
+            }
+        }
+
+        private void appendFrame(StackTraceElement frame, String prefix) {
+            this.append(prefix);
+            this.append("\tat ");
+            this.append(frame.toString());
+            this.append("\n");
+        }
+
+        private void writeHierarchy(String message, int start, int end) {
+            try {
+                if (hierarchyWriter == null) {
+                    hierarchyBytes = new ByteArrayOutputStream();
+                    hierarchyWriter = new OutputStreamWriter(new GZIPOutputStream(hierarchyBytes), StandardCharsets.UTF_8);
+                } else {
+                    hierarchyWriter.write("\n\n");
+                }
+                hierarchyWriter.write(message, start, end - start);
+                hierarchyLength += end - start;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private EncodedTrace finish() {
+            byte[] hierarchyDump = null;
+            if (hierarchyWriter != null) {
+                try {
+                    hierarchyWriter.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                hierarchyDump = hierarchyBytes.toByteArray();
+            }
+
+            if (truncated) {
+                trace.append("\n\t... trace is truncated to ").append(limit).append(" characters\n");
+            }
+
+            String summary = this.summarize(hierarchyDump);
+            if (summary != null) {
+                trace.append("[").append(summary).append("]");
+            }
+            return new EncodedTrace(trace.toString(), hierarchyDump, summary);
+        }
+
+        private String summarize(byte[] hierarchyDump) {
+            StringBuilder summary = new StringBuilder();
+            if (hierarchyDump != null) {
+                summary.append(hierarchyLength).append(" characters of view hierarchy compressed to ")
+                       .append(hierarchyDump.length).append(" bytes, ");
+            }
+            if (skippedCauses > 0) {
+                summary.append(skippedCauses).append(" repeated cause(s) skipped, ");
+            }
+            if (collapsedFrames > 0) {
+                summary.append(collapsedFrames).append(" framework frame(s) collapsed, ");
+            }
+            if (truncated) {
+                summary.append("truncated, ");
+            }
+            return summary.length() > 0
+                    ? "trace trimmed: " + summary.substring(0, summary.length() - 2)
+                    : null;
+        }
+
+    }
+
+    /**
+     * Same as in {@link Throwable#printStackTrace()}: frames at the bottom of the cause, which are shared
+     * with the enclosing trace, are not repeated.
+     */
+    private static int countCommonFrames(StackTraceElement[] frames, StackTraceElement[] enclosingFrames) {
+        if (enclosingFrames == null) {
+            return 0;
+        }
+
+        int i = frames.length - 1;
+        int j = enclosingFrames.length - 1;
+        while (i >= 0 && j >= 0 && frames[i].equals(enclosingFrames[j])) {
+            i--;
+            j--;
+        }
+        return frames.length - 1 - i;
+    }
+
+}
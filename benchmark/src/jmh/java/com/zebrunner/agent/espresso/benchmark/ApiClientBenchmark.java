@@ -0,0 +1,117 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.zebrunner.agent.core.logging.Log;
+import com.zebrunner.agent.core.registrar.domain.LabelDTO;
+import com.zebrunner.agent.core.registrar.domain.TestDTO;
+import com.zebrunner.agent.espresso.client.RetrofitZebrunnerApiClient;
+import com.zebrunner.agent.espresso.client.impl.ZebrunnerApiClientImpl;
+import com.zebrunner.agent.espresso.core.converter.DtoTypeAdapterFactory;
+import com.zebrunner.agent.espresso.core.converter.OffsetDateTimeTypeAdapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Measures the API client calls made on the test thread against a local mock server,
+ * so the numbers include serialization, interceptors and the loopback round trip, but not the server time.
+ * Calls delivered in background (test finishes, logs, labels) measure the cost of handing the event over.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ApiClientBenchmark {
+
+    private static final long TEST_RUN_ID = 1;
+
+    private MockWebServer server;
+    private ZebrunnerApiClientImpl client;
+
+    private TestDTO test;
+    private List<Log> logs;
+    private List<LabelDTO> labels;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Gson gson = new GsonBuilder().registerTypeAdapter(OffsetDateTime.class, new OffsetDateTimeTypeAdapter())
+                                     .registerTypeAdapterFactory(new DtoTypeAdapterFactory())
+                                     .create();
+        String testJson = SerializationBenchmark.Payloads.testJson();
+        test = gson.fromJson(testJson, TestDTO.class);
+        logs = gson.fromJson(SerializationBenchmark.Payloads.logsJson(100), new TypeToken<List<Log>>() {}.getType());
+        labels = gson.fromJson(
+                "[{\"key\":\"priority\",\"value\":\"high\"},{\"key\":\"feature\",\"value\":\"login\"}]",
+                new TypeToken<List<LabelDTO>>() {}.getType()
+        );
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath() != null ? request.getPath() : "";
+                if (path.startsWith(RetrofitZebrunnerApiClient.REFRESH_TOKEN_PATH)) {
+                    return new MockResponse().setBody("{\"authTokenType\":\"Bearer\",\"authToken\":\"token\"}");
+                }
+                if ("POST".equals(request.getMethod()) && path.matches("/api/reporting/v1/test-runs/\\d+/tests\\?.*")) {
+                    return new MockResponse().setBody(testJson);
+                }
+                return new MockResponse().setBody("{}");
+            }
+        });
+        server.start();
+
+        System.setProperty("reporting.enabled", "true");
+        System.setProperty("reporting.server.hostname", server.url("/").toString());
+        System.setProperty("reporting.server.accessToken", "benchmark");
+        System.setProperty("reporting.projectKey", "BENCH");
+        // every appended log should be visible in the numbers, not only the ones which trigger a flush
+        System.setProperty("reporting.espresso.logs.buffer.enabled", "false");
+
+        client = ZebrunnerApiClientImpl.getInstance();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public TestDTO registerTestStart() {
+        return client.registerTestStart(TEST_RUN_ID, test, false);
+    }
+
+    @Benchmark
+    public void registerTestFinish() {
+        client.registerTestFinish(TEST_RUN_ID, test);
+    }
+
+    @Benchmark
+    public void sendLogs() {
+        client.sendLogs(logs, TEST_RUN_ID);
+    }
+
+    @Benchmark
+    public void attachLabelsToTest() {
+        client.attachLabelsToTest(TEST_RUN_ID, test.getId(), labels);
+    }
+
+}
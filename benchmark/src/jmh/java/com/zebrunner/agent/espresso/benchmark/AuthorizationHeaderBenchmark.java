@@ -0,0 +1,123 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import com.zebrunner.agent.espresso.client.AuthorizationHeaderInterceptor;
+import com.zebrunner.agent.espresso.client.RetrofitZebrunnerApiClient;
+import com.zebrunner.agent.espresso.client.auth.AuthToken;
+import com.zebrunner.agent.espresso.client.auth.AuthTokenHolder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Measures {@link AuthorizationHeaderInterceptor#intercept} with the lock-free token holder.
+ * Run with several threads to see whether the requests contend on authentication.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AuthorizationHeaderBenchmark {
+
+    private AuthorizationHeaderInterceptor interceptor;
+    private Interceptor.Chain chain;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AuthTokenHolder tokenHolder = new AuthTokenHolder(() -> AuthToken.of("Bearer", "token"), Duration.ofMinutes(1));
+        interceptor = new AuthorizationHeaderInterceptor(
+                Set.of(RetrofitZebrunnerApiClient.REFRESH_TOKEN_PATH),
+                tokenHolder::getAuthorizationHeader
+        );
+        chain = new StubChain(new Request.Builder().url("http://localhost/api/reporting/v1/test-runs/1/tests/1").build());
+    }
+
+    @Benchmark
+    public Response intercept() {
+        return interceptor.intercept(chain);
+    }
+
+    /**
+     * Chain which answers every request with an empty 200 response without any I/O.
+     */
+    private static final class StubChain implements Interceptor.Chain {
+
+        private final Request request;
+
+        private StubChain(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            return new Response.Builder().request(request)
+                                         .protocol(Protocol.HTTP_1_1)
+                                         .code(200)
+                                         .message("OK")
+                                         .build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+
+        @Override
+        public Call call() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int connectTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withConnectTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int readTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withReadTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+        @Override
+        public int writeTimeoutMillis() {
+            return 0;
+        }
+
+        @Override
+        public Interceptor.Chain withWriteTimeout(int timeout, TimeUnit unit) {
+            return this;
+        }
+
+    }
+
+}
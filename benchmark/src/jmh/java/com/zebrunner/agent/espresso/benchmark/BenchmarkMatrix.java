@@ -0,0 +1,47 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks once per thread count. Every run writes its results to {@code results-threads-<n>.json},
+ * so the reports of different releases can be compared by a script.
+ * <p>
+ * Arguments: comma separated thread counts, benchmark include regex, report directory.
+ */
+public final class BenchmarkMatrix {
+
+    private BenchmarkMatrix() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String[] threadCounts = args.length > 0 ? args[0].split(",") : new String[]{"1", "4", "8"};
+        String includes = args.length > 1 ? args[1] : ".*";
+        File reportDirectory = new File(args.length > 2 ? args[2] : "build/reports/jmh");
+        if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+            throw new IllegalStateException("Could not create report directory " + reportDirectory);
+        }
+
+        for (String threadCount : threadCounts) {
+            int threads = Integer.parseInt(threadCount.trim());
+            Options options = new OptionsBuilder()
+                    .include(includes)
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(3)
+                    .measurementIterations(5)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(reportDirectory, "results-threads-" + threads + ".json").getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+}
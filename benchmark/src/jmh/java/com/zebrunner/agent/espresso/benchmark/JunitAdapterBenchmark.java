@@ -0,0 +1,92 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import com.zebrunner.agent.espresso.JunitAdapter;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the listener callbacks on the test thread.
+ * Reporting is disabled, so the agent-core registrar does not talk to a server and only the agent overhead is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JunitAdapterBenchmark {
+
+    private static final int DESCRIPTIONS_PER_THREAD = 256;
+
+    @State(Scope.Benchmark)
+    public static class Run {
+
+        JunitAdapter adapter;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            System.setProperty("reporting.enabled", "false");
+
+            adapter = new JunitAdapter();
+            adapter.registerRunStart(Description.createSuiteDescription("benchmark"));
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Tests {
+
+        Description[] descriptions;
+        Failure[] failures;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threadParams) {
+            descriptions = new Description[DESCRIPTIONS_PER_THREAD];
+            failures = new Failure[DESCRIPTIONS_PER_THREAD];
+            AssertionError error = new AssertionError("expected:<true> but was:<false>");
+            for (int i = 0; i < DESCRIPTIONS_PER_THREAD; i++) {
+                // parameterized names keep the tests of different threads apart
+                String methodName = "shouldLoginWithValidCredentials[" + threadParams.getThreadIndex() + "-" + i + "]";
+                descriptions[i] = Description.createTestDescription(SampleTest.class, methodName);
+                failures[i] = new Failure(descriptions[i], error);
+            }
+        }
+
+        int nextIndex() {
+            next = (next + 1) % DESCRIPTIONS_PER_THREAD;
+            return next;
+        }
+
+    }
+
+    @Benchmark
+    public void startAndFinish(Run run, Tests tests) {
+        Description description = tests.descriptions[tests.nextIndex()];
+        run.adapter.registerTestStart(description);
+        run.adapter.registerTestFinish(description);
+    }
+
+    @Benchmark
+    public void startAndFail(Run run, Tests tests) {
+        int index = tests.nextIndex();
+        run.adapter.registerTestStart(tests.descriptions[index]);
+        run.adapter.registerTestFailure(tests.failures[index]);
+    }
+
+    public static class SampleTest {
+
+        public void shouldLoginWithValidCredentials() {
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import com.zebrunner.agent.espresso.TestRunListener;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test of {@code JunitAdapter} with tests running in parallel: every worker thread starts the run at once,
+ * then runs its share of tests, passing, failing, skipped by an assumption, and finished twice.
+ * The requests received by {@link ZebrunnerStandInServer} must add up to a single test run and exactly one start
+ * and one finish per test, otherwise the process exits with a non-zero code.
+ * <p>
+ * Configured with system properties, e.g. {@code ./gradlew :benchmark:stressTest -Pstress.threads=16 -Pstress.tests=50000}:
+ * <ul>
+ *     <li>{@code stress.tests}, {@code stress.threads} - number of tests and of threads running them.</li>
+ * </ul>
+ * Reports the callbacks handled per second on the worker threads, which should grow with the number of threads.
+ */
+public final class JunitAdapterStressTest {
+
+    private static final String TEST_RUN_STARTS = "POST /api/reporting/v1/test-runs 200";
+    private static final String TEST_STARTS = "POST /api/reporting/v1/test-runs/{id}/tests 200";
+    private static final String TEST_FINISHES = "PUT /api/reporting/v1/test-runs/{id}/tests/{id} 200";
+
+    private static final String[] METHODS = {"shouldLoginWithValidCredentials", "shouldShowErrorOnInvalidPassword", "shouldOpenProfile"};
+
+    private JunitAdapterStressTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tests = intProperty("stress.tests", 20_000);
+        int threads = intProperty("stress.threads", Runtime.getRuntime().availableProcessors());
+
+        List<String> violations = new ArrayList<>();
+        try (ZebrunnerStandInServer server = new ZebrunnerStandInServer(0, 64)) {
+            server.latency(0, 0)
+                  .faults(0, 0, 0, 0)
+                  .start();
+
+            System.setProperty("reporting.enabled", "true");
+            System.setProperty("reporting.server.hostname", server.getUrl());
+            System.setProperty("reporting.server.accessToken", "stress-test");
+            System.setProperty("reporting.projectKey", "STRESS");
+            // one request per event, so the requests can be matched against the tests
+            System.setProperty("reporting.espresso.batch.enabled", "false");
+            System.setProperty("reporting.espresso.registration.deferred.enabled", "false");
+            // a run left by a previous process must not be resumed
+            File runContext = File.createTempFile("zebrunner-stress-run-context", ".json");
+            runContext.deleteOnExit();
+            System.setProperty("reporting.espresso.run-context.file", runContext.getAbsolutePath());
+            System.setProperty("reporting.espresso.duration-history.enabled", "false");
+
+            Description[] descriptions = new Description[tests];
+            for (int i = 0; i < tests; i++) {
+                descriptions[i] = Description.createTestDescription(ReportingLoadTest.SampleTest.class, METHODS[i % METHODS.length] + "[" + i + "]");
+            }
+            Throwable failure = new AssertionError("expected:<true> but was:<false>");
+
+            TestRunListener listener = new TestRunListener();
+            Description suite = Description.createSuiteDescription("stress test");
+            CyclicBarrier barrier = new CyclicBarrier(threads);
+            AtomicInteger nextTest = new AtomicInteger();
+            AtomicInteger callbacks = new AtomicInteger();
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<Long>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    barrier.await();
+                    long startedAt = System.nanoTime();
+                    // every worker races for the run start, only one of them may start the run
+                    listener.testRunStarted(suite);
+
+                    int test;
+                    while ((test = nextTest.getAndIncrement()) < tests) {
+                        Description description = descriptions[test];
+                        listener.testStarted(description);
+                        if (test % 10 == 1) {
+                            listener.testFailure(new Failure(description, failure));
+                        } else if (test % 10 == 2) {
+                            listener.testAssumptionFailure(new Failure(description, failure));
+                        }
+                        listener.testFinished(description);
+                        if (test % 10 == 3) {
+                            // a finish reported twice must not be reported to the server twice
+                            listener.testFinished(description);
+                        }
+                        callbacks.addAndGet(test % 10 == 1 || test % 10 == 2 || test % 10 == 3 ? 3 : 2);
+                    }
+                    return System.nanoTime() - startedAt;
+                }));
+            }
+            long workerNanos = 0;
+            for (Future<Long> worker : workers) {
+                workerNanos = Math.max(workerNanos, worker.get());
+            }
+            executor.shutdown();
+
+            long finishStartedAt = System.nanoTime();
+            listener.testRunFinished(new Result());
+            long drainNanos = System.nanoTime() - finishStartedAt;
+
+            Map<String, Long> requests = server.getRequestCounts();
+            System.out.println("Threads: " + threads + ", tests: " + tests);
+            System.out.printf("Callbacks: %d in %d ms (%.0f/s), run finish with drain: %d ms%n",
+                    callbacks.get(), TimeUnit.NANOSECONDS.toMillis(workerNanos),
+                    callbacks.get() / (workerNanos / 1e9), TimeUnit.NANOSECONDS.toMillis(drainNanos));
+            requests.forEach((route, count) -> System.out.println("  " + route + ": " + count));
+
+            expect(violations, requests, TEST_RUN_STARTS, 1);
+            expect(violations, requests, TEST_STARTS, tests);
+            expect(violations, requests, TEST_FINISHES, tests);
+            requests.forEach((route, count) -> {
+                if (!route.endsWith(" 200")) {
+                    violations.add(count + " request(s) " + route);
+                }
+            });
+        }
+
+        if (!violations.isEmpty()) {
+            violations.forEach(System.err::println);
+            System.exit(1);
+        }
+        // the agent keeps non-daemon threads, e.g. the ones of the http client
+        System.exit(0);
+    }
+
+    private static void expect(List<String> violations, Map<String, Long> requests, String route, long expected) {
+        long actual = requests.getOrDefault(route, 0L);
+        if (actual != expected) {
+            violations.add("Expected " + expected + " request(s) " + route + ", but got " + actual);
+        }
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+}
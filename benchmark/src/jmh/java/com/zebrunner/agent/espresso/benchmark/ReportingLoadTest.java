@@ -0,0 +1,430 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import com.zebrunner.agent.core.logging.Log;
+import com.zebrunner.agent.espresso.TestRunListener;
+import com.zebrunner.agent.espresso.client.impl.ZebrunnerApiClientImpl;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * End-to-end load test of the agent on a plain JVM: drives {@link TestRunListener} with synthetic tests
+ * against {@link ZebrunnerStandInServer} and reports the throughput of the whole run (including the final drain),
+ * the time the agent takes on the test threads per test and the heap high-water mark.
+ * <p>
+ * Configured with system properties, e.g. {@code ./gradlew :benchmark:loadTest -Pload.tests=20000 -Pload.threads=8}:
+ * <ul>
+ *     <li>{@code load.tests}, {@code load.threads} - number of tests and of threads running them;</li>
+ *     <li>{@code load.failure-rate}, {@code load.trace-frames} - share of failed tests and stack depth of their failures;</li>
+ *     <li>{@code load.logs-per-test}, {@code load.log-burst-size}, {@code load.log-burst-every} - logs sent by every test,
+ *     and a burst sent by every n-th test;</li>
+ *     <li>{@code load.latency-millis}, {@code load.latency-jitter-millis}, {@code load.error-rate},
+ *     {@code load.unauthorized-rate}, {@code load.throttle-rate}, {@code load.retry-after-seconds} - server behavior;</li>
+ *     <li>{@code load.gate.min-throughput}, {@code load.gate.max-overhead-p99-micros}, {@code load.gate.max-heap-mb} -
+ *     thresholds failing the run with a non-zero exit code, if set;</li>
+ *     <li>{@code load.shards} - number of shard processes reporting into a single coordinated test run.
+ *     The tests are split between the shards, which join the run through {@link RunCoordinatorServer};</li>
+ *     <li>{@code load.report} - JSON report file.</li>
+ * </ul>
+ * The agent configuration ({@code reporting.espresso.*}) is passed as system properties as well.
+ * <p>
+ * With more than one shard, every shard runs in its own JVM, since the agent is a singleton, and reports to the stand-in
+ * server of the main process. The main process fails the run if the shards did not share a single test run.
+ */
+public final class ReportingLoadTest {
+
+    private static final double[] PERCENTILES = {50, 95, 99};
+
+    private static final String TEST_RUN_STARTS = "POST /api/reporting/v1/test-runs 200";
+
+    // set for the shard processes started by the main one
+    private static final String SERVER_URL = "load.server-url";
+
+    private ReportingLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tests = intProperty("load.tests", 10_000);
+        int threads = intProperty("load.threads", 4);
+        int shards = Math.max(1, intProperty("load.shards", 1));
+
+        String serverUrl = System.getProperty(SERVER_URL);
+        if (serverUrl != null) {
+            String runKey = System.getProperty("reporting.espresso.shard.run-key");
+            String coordinatorUrl = System.getProperty("reporting.espresso.shard.coordinator-url");
+            JsonObject report = run(tests, threads, serverUrl, () -> fetchTestRunId(coordinatorUrl, runKey));
+            writeReport(report);
+            // the agent keeps non-daemon threads, e.g. the ones of the http client
+            System.exit(0);
+        }
+
+        try (ZebrunnerStandInServer server = new ZebrunnerStandInServer(0, 64)) {
+            server.latency(longProperty("load.latency-millis", 5), longProperty("load.latency-jitter-millis", 5))
+                  .faults(
+                          doubleProperty("load.error-rate", 0.01),
+                          doubleProperty("load.unauthorized-rate", 0.002),
+                          doubleProperty("load.throttle-rate", 0.01),
+                          intProperty("load.retry-after-seconds", 0)
+                  )
+                  .start();
+
+            JsonObject report = shards > 1
+                    ? runShards(tests, shards, server)
+                    : run(tests, threads, server.getUrl(), server::getLastTestRunId);
+
+            JsonObject requests = new JsonObject();
+            server.getRequestCounts().forEach(requests::addProperty);
+            report.add("requests", requests);
+            writeReport(report);
+
+            List<String> violations = checkGates(report);
+            if (shards > 1 && server.getRequestCounts().getOrDefault(TEST_RUN_STARTS, 0L) != 1) {
+                violations.add("Shards reported " + server.getRequestCounts().getOrDefault(TEST_RUN_STARTS, 0L) + " test run(s) instead of one");
+            }
+            if (!violations.isEmpty()) {
+                violations.forEach(System.err::println);
+                System.exit(1);
+            }
+        }
+        // the agent keeps non-daemon threads, e.g. the ones of the http client
+        System.exit(0);
+    }
+
+    /**
+     * Reports the tests from the current process.
+     *
+     * @param testRunId id of the run the logs are sent to, known once the run is started
+     */
+    private static JsonObject run(int tests, int threads, String serverUrl, LongSupplier testRunId) throws Exception {
+        System.setProperty("reporting.enabled", "true");
+        System.setProperty("reporting.server.hostname", serverUrl);
+        System.setProperty("reporting.server.accessToken", "load-test");
+        System.setProperty("reporting.projectKey", "LOAD");
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        Generator generator = new Generator(tests);
+        long[] overheads = new long[tests];
+
+        long startedAt = System.nanoTime();
+        TestRunListener listener = new TestRunListener();
+        listener.testRunStarted(Description.createSuiteDescription("load test"));
+        long runId = testRunId.getAsLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger nextTest = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                int test;
+                while ((test = nextTest.getAndIncrement()) < tests) {
+                    overheads[test] = generator.run(listener, runId, test);
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        listener.testRunFinished(new Result());
+        long elapsedNanos = System.nanoTime() - startedAt;
+
+        long heapPeakBytes = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            heapPeakBytes += pool.getPeakUsage().getUsed();
+        }
+        return report(tests, threads, elapsedNanos, overheads, heapPeakBytes);
+    }
+
+    /**
+     * Splits the tests between shard processes joining a single run through a local {@link RunCoordinatorServer}.
+     * The overhead and heap of the report are the ones of the worst shard.
+     */
+    private static JsonObject runShards(int tests, int shards, ZebrunnerStandInServer server) throws Exception {
+        File reportFile = new File(System.getProperty("load.report", "build/reports/load/report.json"));
+        String runKey = "load-test-" + System.currentTimeMillis();
+
+        try (RunCoordinatorServer coordinator = new RunCoordinatorServer(0)) {
+            coordinator.start();
+
+            long startedAt = System.nanoTime();
+            List<Process> processes = new ArrayList<>();
+            List<File> shardReports = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                File shardReport = new File(reportFile.getAbsoluteFile().getParentFile(), "shard-" + shard + ".json");
+                shardReports.add(shardReport);
+
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                for (String key : System.getProperties().stringPropertyNames()) {
+                    if ((key.startsWith("load.") || key.startsWith("reporting.")) && !key.equals("load.tests") && !key.equals("load.report")) {
+                        command.add("-D" + key + "=" + System.getProperty(key));
+                    }
+                }
+                command.add("-D" + SERVER_URL + "=" + server.getUrl());
+                command.add("-Dload.tests=" + (tests / shards + (shard < tests % shards ? 1 : 0)));
+                command.add("-Dload.report=" + shardReport.getAbsolutePath());
+                command.add("-Dreporting.espresso.shard.run-key=" + runKey);
+                command.add("-Dreporting.espresso.shard.coordinator-url=" + coordinator.getUrl());
+                command.add("-Dreporting.espresso.shard.index=" + shard);
+                command.add("-Dreporting.espresso.shard.count=" + shards);
+                command.add(ReportingLoadTest.class.getName());
+
+                processes.add(new ProcessBuilder(command).inheritIO().start());
+            }
+
+            for (int shard = 0; shard < shards; shard++) {
+                int exitCode = processes.get(shard).waitFor();
+                if (exitCode != 0) {
+                    throw new IllegalStateException("Shard " + shard + " exited with code " + exitCode);
+                }
+            }
+            long elapsedNanos = System.nanoTime() - startedAt;
+
+            JsonObject report = new JsonObject();
+            report.addProperty("tests", tests);
+            report.addProperty("shards", shards);
+            report.addProperty("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            report.addProperty("throughputTestsPerSecond", tests / (elapsedNanos / 1e9));
+
+            JsonArray shardResults = new JsonArray();
+            JsonObject worstShard = null;
+            double heapPeakMb = 0;
+            for (File shardReport : shardReports) {
+                JsonObject shardResult;
+                try (Reader reader = Files.newBufferedReader(shardReport.toPath(), StandardCharsets.UTF_8)) {
+                    shardResult = new Gson().fromJson(reader, JsonObject.class);
+                }
+                shardResults.add(shardResult);
+                if (worstShard == null || p99(shardResult) > p99(worstShard)) {
+                    worstShard = shardResult;
+                }
+                heapPeakMb = Math.max(heapPeakMb, shardResult.get("heapPeakMb").getAsDouble());
+            }
+            report.add("perTestOverhead", worstShard.getAsJsonObject("perTestOverhead"));
+            report.addProperty("heapPeakMb", heapPeakMb);
+            report.add("shardReports", shardResults);
+            return report;
+        }
+    }
+
+    /**
+     * @return id of the run published by the leading shard, or 0 if it is not known
+     */
+    private static long fetchTestRunId(String coordinatorUrl, String runKey) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(coordinatorUrl + "/runs/" + runKey).openConnection();
+            try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                JsonObject run = new Gson().fromJson(reader, JsonObject.class);
+                // gson omits the id while the run is not published
+                return run.has("testRunId") && !run.get("testRunId").isJsonNull() ? run.get("testRunId").getAsLong() : 0;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not fetch id of the test run with key '" + runKey + "': " + e);
+            return 0;
+        }
+    }
+
+    private static double p99(JsonObject report) {
+        return report.getAsJsonObject("perTestOverhead").get("p99Micros").getAsDouble();
+    }
+
+    private static void writeReport(JsonObject report) throws IOException {
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+        System.out.println(json);
+
+        File reportFile = new File(System.getProperty("load.report", "build/reports/load/report.json"));
+        File reportDirectory = reportFile.getAbsoluteFile().getParentFile();
+        if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+            throw new IOException("Could not create report directory " + reportDirectory);
+        }
+        Files.write(reportFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonObject report(int tests, int threads, long elapsedNanos, long[] overheads, long heapPeakBytes) {
+        JsonObject report = new JsonObject();
+        report.addProperty("tests", tests);
+        report.addProperty("threads", threads);
+        report.addProperty("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        report.addProperty("throughputTestsPerSecond", tests / (elapsedNanos / 1e9));
+
+        long[] sortedOverheads = overheads.clone();
+        Arrays.sort(sortedOverheads);
+        JsonObject overhead = new JsonObject();
+        overhead.addProperty("meanMicros", Arrays.stream(sortedOverheads).average().orElse(0) / 1_000);
+        for (double percentile : PERCENTILES) {
+            int index = (int) Math.ceil(percentile / 100 * sortedOverheads.length) - 1;
+            overhead.addProperty("p" + (int) percentile + "Micros", sortedOverheads[Math.max(0, index)] / 1_000.0);
+        }
+        overhead.addProperty("maxMicros", sortedOverheads[sortedOverheads.length - 1] / 1_000.0);
+        report.add("perTestOverhead", overhead);
+
+        // sum of the peaks of the heap pools, so an upper bound of the real high-water mark
+        report.addProperty("heapPeakMb", heapPeakBytes / (1024.0 * 1024));
+        return report;
+    }
+
+    private static List<String> checkGates(JsonObject report) {
+        List<String> violations = new ArrayList<>();
+        double throughput = report.get("throughputTestsPerSecond").getAsDouble();
+        double overheadP99 = report.getAsJsonObject("perTestOverhead").get("p99Micros").getAsDouble();
+        double heapPeak = report.get("heapPeakMb").getAsDouble();
+
+        double minThroughput = doubleProperty("load.gate.min-throughput", 0);
+        if (minThroughput > 0 && throughput < minThroughput) {
+            violations.add("Throughput " + throughput + " tests/s is below " + minThroughput);
+        }
+        double maxOverhead = doubleProperty("load.gate.max-overhead-p99-micros", 0);
+        if (maxOverhead > 0 && overheadP99 > maxOverhead) {
+            violations.add("p99 of per-test overhead " + overheadP99 + " us is above " + maxOverhead);
+        }
+        double maxHeap = doubleProperty("load.gate.max-heap-mb", 0);
+        if (maxHeap > 0 && heapPeak > maxHeap) {
+            violations.add("Heap peak " + heapPeak + " MB is above " + maxHeap);
+        }
+        return violations;
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        String value = System.getProperty(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static long longProperty(String key, long defaultValue) {
+        String value = System.getProperty(key);
+        return value != null ? Long.parseLong(value.trim()) : defaultValue;
+    }
+
+    private static double doubleProperty(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+
+    /**
+     * Produces the tests. Descriptions, failures and logs are created up front,
+     * so the measured time is spent in the agent rather than in the generator.
+     */
+    private static final class Generator {
+
+        private static final String[] METHODS = {"shouldLoginWithValidCredentials", "shouldShowErrorOnInvalidPassword", "shouldOpenProfile"};
+
+        private final Description[] descriptions;
+        private final boolean[] failing;
+        private final Throwable failure;
+        private final List<Log> logs;
+        private final List<Log> logBurst;
+        private final int logBurstEvery;
+
+        private Generator(int tests) {
+            double failureRate = doubleProperty("load.failure-rate", 0.1);
+            this.descriptions = new Description[tests];
+            this.failing = new boolean[tests];
+            for (int i = 0; i < tests; i++) {
+                // parameterized names keep every test distinct while resolving to the same methods
+                descriptions[i] = Description.createTestDescription(SampleTest.class, METHODS[i % METHODS.length] + "[" + i + "]");
+                // spread evenly rather than randomly, so the runs are comparable
+                failing[i] = (int) (i * failureRate) != (int) ((i + 1) * failureRate);
+            }
+
+            this.failure = largeFailure(intProperty("load.trace-frames", 200));
+
+            Gson gson = new Gson();
+            this.logs = gson.fromJson(SerializationBenchmark.Payloads.logsJson(intProperty("load.logs-per-test", 20)), new TypeToken<List<Log>>() {}.getType());
+            this.logBurst = gson.fromJson(SerializationBenchmark.Payloads.logsJson(intProperty("load.log-burst-size", 2_000)), new TypeToken<List<Log>>() {}.getType());
+            this.logBurstEvery = intProperty("load.log-burst-every", 100);
+        }
+
+        /**
+         * @return time spent in the agent for the test in nanos
+         */
+        private long run(TestRunListener listener, long testRunId, int test) {
+            Description description = descriptions[test];
+
+            long startedAt = System.nanoTime();
+            listener.testStarted(description);
+            // the agent core ships logs with the id of the run, which the agent got from the stand-in
+            ZebrunnerApiClientImpl.getInstance().sendLogs(test % logBurstEvery == 0 ? logBurst : logs, testRunId);
+            if (failing[test]) {
+                listener.testFailure(new Failure(description, failure));
+            }
+            listener.testFinished(description);
+            return System.nanoTime() - startedAt;
+        }
+
+        private static Throwable largeFailure(int frames) {
+            StringBuilder message = new StringBuilder("No views in hierarchy found matching: with id: com.example.app:id/login_button\n\nView Hierarchy:\n");
+            for (int i = 0; i < frames; i++) {
+                message.append("+").append("-".repeat(i % 20)).append(">TextView{id=").append(i)
+                       .append(", visibility=VISIBLE, width=1080, height=63, text=Item ").append(i).append("}\n");
+            }
+
+            StackTraceElement[] stackTrace = new StackTraceElement[frames];
+            for (int i = 0; i < frames; i++) {
+                stackTrace[i] = i % 4 == 0
+                        ? new StackTraceElement("com.example.app.LoginTest", "step" + i, "LoginTest.java", i + 10)
+                        : new StackTraceElement("androidx.test.espresso.ViewInteraction", "doPerform", "ViewInteraction.java", i);
+            }
+
+            AssertionError cause = new AssertionError("expected:<true> but was:<false>");
+            cause.setStackTrace(stackTrace);
+            RuntimeException failure = new RuntimeException(message.toString(), cause);
+            failure.setStackTrace(stackTrace);
+            return failure;
+        }
+
+    }
+
+    public static class SampleTest {
+
+        public void shouldLoginWithValidCredentials() {
+        }
+
+        public void shouldShowErrorOnInvalidPassword() {
+        }
+
+        public void shouldOpenProfile() {
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for the service behind {@code HttpRunCoordinator}. Keeps the runs in memory.
+ * <p>
+ * Start it with {@code java -cp benchmark-jmh.jar com.zebrunner.agent.espresso.benchmark.RunCoordinatorServer 8090}
+ * and pass {@code -e reporting.espresso.shard.coordinator-url http://10.0.2.2:8090} to the instrumentation of every shard.
+ * {@link ReportingLoadTest} starts one in process when it runs more than one shard.
+ * <p>
+ * Besides the endpoints used by the agent, {@code GET /runs/{key}} answers with the published {@code testRunId}.
+ */
+public final class RunCoordinatorServer implements AutoCloseable {
+
+    private static final long LEASE_TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Gson gson = new Gson();
+    private final Map<String, Run> runs = new HashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final HttpServer server;
+
+    public RunCoordinatorServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/runs/", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        RunCoordinatorServer server = new RunCoordinatorServer(args.length > 0 ? Integer.parseInt(args[0]) : 8090);
+        server.start();
+        System.out.println("Run coordinator is listening on " + server.getUrl());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            URI uri = exchange.getRequestURI();
+            // /runs/{key}, /runs/{key}/leader, /runs/{key}/shards/{index}
+            String[] segments = uri.getPath().substring("/runs/".length()).split("/");
+            Map<String, String> query = parseQuery(uri.getRawQuery());
+            String method = exchange.getRequestMethod();
+            String runKey = segments[0];
+
+            JsonObject response;
+            synchronized (runs) {
+                if (segments.length == 3 && "shards".equals(segments[1])) {
+                    int shardIndex = Integer.parseInt(segments[2]);
+                    int shardCount = Integer.parseInt(query.getOrDefault("count", "1"));
+                    Run run = runs.computeIfAbsent(runKey, key -> new Run(shardCount));
+                    response = "DELETE".equals(method) ? run.leave(shardIndex) : run.join(shardIndex);
+                } else if (segments.length == 2 && "leader".equals(segments[1]) && "DELETE".equals(method)) {
+                    Run run = runs.get(runKey);
+                    if (run != null) {
+                        run.release(Integer.parseInt(query.get("shardIndex")));
+                    }
+                    response = new JsonObject();
+                } else if (segments.length == 1 && "GET".equals(method)) {
+                    Run run = runs.get(runKey);
+                    if (run == null) {
+                        this.respond(exchange, 404, new JsonObject());
+                        return;
+                    }
+                    response = new JsonObject();
+                    response.addProperty("testRunId", run.testRunId);
+                } else if (segments.length == 1 && "PUT".equals(method)) {
+                    JsonObject body = gson.fromJson(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), JsonObject.class);
+                    Run run = runs.get(runKey);
+                    if (run == null) {
+                        this.respond(exchange, 404, new JsonObject());
+                        return;
+                    }
+                    run.testRunId = body.get("testRunId").getAsLong();
+                    response = new JsonObject();
+                } else {
+                    this.respond(exchange, 404, new JsonObject());
+                    return;
+                }
+            }
+            this.respond(exchange, 200, response);
+        } catch (RuntimeException e) {
+            this.respond(exchange, 400, new JsonObject());
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonObject body) throws IOException {
+        byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static final class Run {
+
+        private final int shardCount;
+        private final Set<Integer> leftShards = new HashSet<>();
+
+        private Long testRunId;
+        private Integer leaderIndex;
+        private long leaseExpiresAt;
+
+        private Run(int shardCount) {
+            this.shardCount = shardCount;
+        }
+
+        private JsonObject join(int shardIndex) {
+            if (testRunId == null && (leaderIndex == null || System.nanoTime() - leaseExpiresAt > 0)) {
+                leaderIndex = shardIndex;
+                leaseExpiresAt = System.nanoTime() + LEASE_TTL_NANOS;
+            }
+
+            JsonObject response = new JsonObject();
+            response.addProperty("testRunId", testRunId);
+            response.addProperty("leader", leaderIndex != null && leaderIndex == shardIndex);
+            return response;
+        }
+
+        private void release(int shardIndex) {
+            if (testRunId == null && leaderIndex != null && leaderIndex == shardIndex) {
+                leaderIndex = null;
+            }
+        }
+
+        private JsonObject leave(int shardIndex) {
+            leftShards.add(shardIndex);
+
+            JsonObject response = new JsonObject();
+            response.addProperty("remaining", Math.max(0, shardCount - leftShards.size()));
+            return response;
+        }
+
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.google.gson.reflect.TypeToken;
+import com.zebrunner.agent.core.logging.Log;
+import com.zebrunner.agent.core.registrar.domain.TestDTO;
+import com.zebrunner.agent.espresso.client.converter.StreamingGsonConverterFactory;
+import com.zebrunner.agent.espresso.core.TestCorrelationData;
+import com.zebrunner.agent.espresso.core.converter.DtoTypeAdapterFactory;
+import com.zebrunner.agent.espresso.core.converter.OffsetDateTimeTypeAdapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * Compares the legacy Gson request body path ({@code JsonSerializer} based date converter, reflective DTO adapters)
+ * with the streaming one (hand-written type adapters, body written by a {@code JsonWriter} straight into an okio buffer).
+ * Run with {@code ./gradlew :benchmark:jmh}; the gc profiler reports allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SerializationBenchmark {
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+    private static final Type LOGS_TYPE = new TypeToken<List<Log>>() {}.getType();
+
+    @Param({"1", "100", "1000"})
+    public int logBatchSize;
+
+    private Converter<Object, RequestBody> legacyTestConverter;
+    private Converter<Object, RequestBody> streamingTestConverter;
+    private Converter<Object, RequestBody> legacyLogsConverter;
+    private Converter<Object, RequestBody> streamingLogsConverter;
+
+    private Gson legacyGson;
+    private TestDTO test;
+    private List<Log> logs;
+    private TestCorrelationData correlationData;
+    private ReflectiveCorrelationData reflectiveCorrelationData;
+    private BufferedSink sink;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        legacyGson = new GsonBuilder().registerTypeAdapter(OffsetDateTime.class, new LegacyOffsetDateTimeConverter())
+                                      .create();
+        Gson streamingGson = new GsonBuilder().registerTypeAdapter(OffsetDateTime.class, new OffsetDateTimeTypeAdapter())
+                                              .registerTypeAdapterFactory(new DtoTypeAdapterFactory())
+                                              .create();
+
+        Retrofit retrofit = new Retrofit.Builder().baseUrl("http://localhost/").build();
+        Converter.Factory legacyFactory = GsonConverterFactory.create(legacyGson);
+        Converter.Factory streamingFactory = StreamingGsonConverterFactory.create(streamingGson);
+
+        legacyTestConverter = (Converter<Object, RequestBody>) legacyFactory.requestBodyConverter(TestDTO.class, NO_ANNOTATIONS, NO_ANNOTATIONS, retrofit);
+        streamingTestConverter = (Converter<Object, RequestBody>) streamingFactory.requestBodyConverter(TestDTO.class, NO_ANNOTATIONS, NO_ANNOTATIONS, retrofit);
+        legacyLogsConverter = (Converter<Object, RequestBody>) legacyFactory.requestBodyConverter(LOGS_TYPE, NO_ANNOTATIONS, NO_ANNOTATIONS, retrofit);
+        streamingLogsConverter = (Converter<Object, RequestBody>) streamingFactory.requestBodyConverter(LOGS_TYPE, NO_ANNOTATIONS, NO_ANNOTATIONS, retrofit);
+
+        test = legacyGson.fromJson(Payloads.testJson(), TestDTO.class);
+        logs = legacyGson.fromJson(Payloads.logsJson(logBatchSize), LOGS_TYPE);
+        correlationData = Payloads.correlationData();
+        reflectiveCorrelationData = new ReflectiveCorrelationData(correlationData);
+
+        sink = Okio.buffer(Okio.blackhole());
+    }
+
+    @Benchmark
+    public BufferedSink legacyTestDto() throws IOException {
+        return this.write(legacyTestConverter, test);
+    }
+
+    @Benchmark
+    public BufferedSink streamingTestDto() throws IOException {
+        return this.write(streamingTestConverter, test);
+    }
+
+    @Benchmark
+    public BufferedSink legacyLogBatch() throws IOException {
+        return this.write(legacyLogsConverter, logs);
+    }
+
+    @Benchmark
+    public BufferedSink streamingLogBatch() throws IOException {
+        return this.write(streamingLogsConverter, logs);
+    }
+
+    @Benchmark
+    public String legacyCorrelationData() {
+        return legacyGson.toJson(reflectiveCorrelationData);
+    }
+
+    @Benchmark
+    public String streamingCorrelationData() {
+        return correlationData.asJsonString();
+    }
+
+    private BufferedSink write(Converter<Object, RequestBody> converter, Object value) throws IOException {
+        converter.convert(value).writeTo(sink);
+        sink.flush();
+        return sink;
+    }
+
+    /**
+     * Date converter the agent used before the streaming adapter, building a {@link JsonElement} for every value.
+     */
+    static final class LegacyOffsetDateTimeConverter implements JsonSerializer<OffsetDateTime>, JsonDeserializer<OffsetDateTime> {
+
+        @Override
+        public JsonElement serialize(OffsetDateTime src, Type typeOfSrc, JsonSerializationContext context) {
+            return new JsonPrimitive(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(src));
+        }
+
+        @Override
+        public OffsetDateTime deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(json.getAsString(), OffsetDateTime::from);
+        }
+
+    }
+
+    /**
+     * Same shape as {@link TestCorrelationData}, but without the hand-written adapter, so it is serialized reflectively.
+     */
+    static final class ReflectiveCorrelationData {
+
+        final String thread;
+        final String className;
+        final String methodName;
+        final List<String> parameterClassNames;
+        final String displayName;
+
+        ReflectiveCorrelationData(TestCorrelationData correlationData) {
+            this.thread = correlationData.getThread();
+            this.className = correlationData.getClassName();
+            this.methodName = correlationData.getMethodName();
+            this.parameterClassNames = correlationData.getParameterClassNames();
+            this.displayName = correlationData.getDisplayName();
+        }
+
+    }
+
+    static final class Payloads {
+
+        static String testJson() {
+            return "{\"id\":1024,\"uuid\":\"5b3b7c1e-3c7e-4bb1-9b0c-6a1c2f2b9b0e\",\"name\":\"shouldLoginWithValidCredentials\","
+                    + "\"className\":\"com.example.app.LoginTest\",\"methodName\":\"shouldLoginWithValidCredentials\","
+                    + "\"startedAt\":\"2026-10-18T10:15:30.123+03:00\",\"endedAt\":\"2026-10-18T10:15:31.456+03:00\","
+                    + "\"maintainer\":\"anonymous\",\"result\":\"FAILED\",\"reason\":\"" + trace() + "\"}";
+        }
+
+        static String logsJson(int size) {
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"testId\":\"1024\",\"level\":\"INFO\",\"timestamp\":")
+                    .append(1_760_000_000_000L + i)
+                    .append(",\"message\":\"Clicking on view with id com.example.app:id/login_button, attempt ")
+                    .append(i)
+                    .append("\"}");
+            }
+            return json.append(']').toString();
+        }
+
+        static TestCorrelationData correlationData() {
+            return TestCorrelationData.builder()
+                                      .thread("main")
+                                      .className("com.example.app.LoginTest")
+                                      .methodName("shouldLoginWithValidCredentials")
+                                      .parameterClassNames(Collections.emptyList())
+                                      .displayName("shouldLoginWithValidCredentials(com.example.app.LoginTest)")
+                                      .build();
+        }
+
+        private static String trace() {
+            StringBuilder trace = new StringBuilder("androidx.test.espresso.NoMatchingViewException: No views in hierarchy found matching");
+            for (int i = 0; i < 40; i++) {
+                trace.append("\\n\\tat com.example.app.LoginTest.step").append(i).append("(LoginTest.java:").append(i + 10).append(')');
+            }
+            return trace.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.zebrunner.agent.espresso.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.zebrunner.agent.espresso.client.RetrofitZebrunnerApiClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for the Zebrunner reporting API, implementing the endpoints of {@link RetrofitZebrunnerApiClient}
+ * well enough for the agent to report a whole run. Nothing is stored: created entities get a new id
+ * and requests are answered with their own body.
+ * <p>
+ * Every request is delayed by the configured latency and may be failed on purpose with {@code 500},
+ * {@code 401} (so the agent refreshes its token) or {@code 429} with {@code Retry-After}, each with its own rate.
+ * The number of requests per route and status code is kept for the report.
+ */
+public final class ZebrunnerStandInServer implements AutoCloseable {
+
+    private static final String API_PREFIX = "/api/";
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$|:)");
+
+    private final Gson gson = new Gson();
+    private final ExecutorService executor;
+    private final HttpServer server;
+
+    private final AtomicLong lastTestRunId = new AtomicLong();
+    private final AtomicLong lastId = new AtomicLong();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile double unauthorizedRate;
+    private volatile double throttleRate;
+    private volatile int retryAfterSeconds;
+
+    public ZebrunnerStandInServer(int port, int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext(API_PREFIX, this::handle);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        ZebrunnerStandInServer server = new ZebrunnerStandInServer(args.length > 0 ? Integer.parseInt(args[0]) : 8091, 64);
+        server.latency(args.length > 1 ? Long.parseLong(args[1]) : 0, 0);
+        server.start();
+        System.out.println("Zebrunner stand-in is listening on " + server.getUrl());
+    }
+
+    /**
+     * Every request is delayed by {@code latencyMillis} plus a random value up to {@code jitterMillis}.
+     */
+    public ZebrunnerStandInServer latency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * Rates are fractions of the requests, from 0 to 1. The token refresh endpoint always succeeds.
+     */
+    public ZebrunnerStandInServer faults(double errorRate, double unauthorizedRate, double throttleRate, int retryAfterSeconds) {
+        this.errorRate = errorRate;
+        this.unauthorizedRate = unauthorizedRate;
+        this.throttleRate = throttleRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getLastTestRunId() {
+        return lastTestRunId.get();
+    }
+
+    public long getLastId() {
+        return lastId.get();
+    }
+
+    /**
+     * @return number of requests by {@code <method> <route> <status>}, with ids in the route replaced by {@code {id}}
+     */
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((route, count) -> counts.put(route, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        byte[] body;
+        boolean compressed = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        try (InputStream input = compressed ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+            body = input.readAllBytes();
+        }
+
+        this.delay();
+
+        int status;
+        String response;
+        try {
+            status = this.injectedFailure(path);
+            response = status == 200 ? this.respond(method, path, body) : "{}";
+        } catch (RuntimeException e) {
+            status = 400;
+            response = "{}";
+        }
+
+        requests.computeIfAbsent(method + ' ' + ID_SEGMENT.matcher(path).replaceAll("/{id}") + ' ' + status, key -> new LongAdder())
+                .increment();
+        this.send(exchange, status, response);
+    }
+
+    private void delay() {
+        long delay = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private int injectedFailure(String path) {
+        if (path.startsWith(RetrofitZebrunnerApiClient.REFRESH_TOKEN_PATH)) {
+            return 200;
+        }
+
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random < errorRate) {
+            return 500;
+        }
+        if (random < errorRate + unauthorizedRate) {
+            return 401;
+        }
+        if (random < errorRate + unauthorizedRate + throttleRate) {
+            return 429;
+        }
+        return 200;
+    }
+
+    private String respond(String method, String path, byte[] body) {
+        if (path.startsWith(RetrofitZebrunnerApiClient.REFRESH_TOKEN_PATH)) {
+            return "{\"authTokenType\":\"Bearer\",\"authToken\":\"token\",\"refreshToken\":\"refresh\"}";
+        }
+
+        // /api/reporting/v1/test-runs/{testRunId}/...
+        String[] segments = path.split("/");
+        if ("POST".equals(method) && path.equals("/api/reporting/v1/test-runs")) {
+            long testRunId = lastId.incrementAndGet();
+            lastTestRunId.set(testRunId);
+            return this.withId(body, testRunId);
+        }
+        if (path.endsWith("/tests:batch-update")) {
+            return this.batchUpdateResult(body);
+        }
+        if (segments.length == 7 && "tests".equals(segments[6]) && "POST".equals(method)
+                || segments.length == 7 && "test-sessions".equals(segments[6]) && "POST".equals(method)) {
+            return this.withId(body, lastId.incrementAndGet());
+        }
+        if (segments.length == 8 && "tests".equals(segments[6])) {
+            // test update and rerun answer with the test
+            return this.withId(body, Long.parseLong(segments[7]));
+        }
+        if (path.endsWith("/known-issue-confirmations")) {
+            return "{\"knownIssue\":false}";
+        }
+        if (path.endsWith("/run-context-exchanges")) {
+            return "{\"runOnlySpecificTests\":false}";
+        }
+        return "{}";
+    }
+
+    private String withId(byte[] body, long id) {
+        JsonElement json = body.length > 0 ? JsonParser.parseString(new String(body, StandardCharsets.UTF_8)) : null;
+        JsonObject response = json != null && json.isJsonObject() ? json.getAsJsonObject() : new JsonObject();
+        response.addProperty("id", id);
+        return gson.toJson(response);
+    }
+
+    private String batchUpdateResult(byte[] body) {
+        JsonArray items = new JsonArray();
+        JsonObject request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        for (Map.Entry<String, JsonElement> tests : request.entrySet()) {
+            for (JsonElement test : tests.getValue().getAsJsonArray()) {
+                JsonObject item = new JsonObject();
+                item.add("testId", test.getAsJsonObject().get("id"));
+                item.addProperty("success", true);
+                items.add(item);
+            }
+        }
+
+        JsonObject response = new JsonObject();
+        response.add("items", items);
+        return gson.toJson(response);
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (status == 429) {
+            exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+}
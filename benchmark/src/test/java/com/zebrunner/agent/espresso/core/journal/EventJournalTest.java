@@ -0,0 +1,201 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    // fits two or three test events, so a few events span several segments
+    private static final int SMALL_SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsAppendedEventsInOrder() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3);
+
+            assertEquals(Arrays.asList(1L, 2L, 3L), readIds(journal, JournalPosition.START));
+            assertTrue(journal.hasUncommittedEvents());
+        }
+    }
+
+    @Test
+    public void truncatesRecordTornMidPayloadOnReopen() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        JournalPosition tornRecordStart;
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            append(journal, 1, 2);
+            tornRecordStart = journal.getWritePosition();
+            append(journal, 3);
+        }
+        // the process crashed while the payload of the third record was being written
+        truncate(segmentFile(directory, 0), tornRecordStart.getOffset() + 8 + 10);
+
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            assertEquals(tornRecordStart, journal.getWritePosition());
+            assertEquals(Arrays.asList(1L, 2L), readIds(journal, JournalPosition.START));
+
+            append(journal, 4);
+            assertEquals(Arrays.asList(1L, 2L, 4L), readIds(journal, JournalPosition.START));
+        }
+    }
+
+    @Test
+    public void zeroesTailAfterLastIntactRecordOnReopen() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        JournalPosition tornRecordStart;
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            append(journal, 1);
+            tornRecordStart = journal.getWritePosition();
+            append(journal, 2, 3);
+        }
+        // the checksum of the second record does not match, so the intact third record after it is stale
+        corrupt(segmentFile(directory, 0), tornRecordStart.getOffset() + 4);
+
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            assertEquals(tornRecordStart, journal.getWritePosition());
+            byte[] segment = Files.readAllBytes(segmentFile(directory, 0).toPath());
+            for (int i = tornRecordStart.getOffset(); i < segment.length; i++) {
+                assertEquals("byte " + i + " of the tail", 0, segment[i]);
+            }
+
+            append(journal, 4);
+            assertEquals(Arrays.asList(1L, 4L), readIds(journal, JournalPosition.START));
+        }
+    }
+
+    @Test
+    public void skipsRecordWithChecksumMismatch() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        try (EventJournal journal = open(directory, SMALL_SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3, 4, 5, 6, 7, 8);
+            assertTrue(journal.getWritePosition().getSegment() > 0);
+        }
+        // only the last segment is recovered on reopen, so the corrupted record of the first one is left in place
+        corrupt(segmentFile(directory, 0), 8 + 5);
+
+        try (EventJournal journal = open(directory, SMALL_SEGMENT_SIZE)) {
+            assertEquals(Arrays.asList(2L, 3L, 4L, 5L, 6L, 7L, 8L), readIds(journal, JournalPosition.START));
+        }
+    }
+
+    @Test
+    public void restartsFromCommittedPosition() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3);
+            journal.commit(readRecords(journal, JournalPosition.START).get(1).getNextPosition());
+        }
+
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            assertEquals(Collections.singletonList(3L), readIds(journal, journal.getCommittedPosition()));
+            assertTrue(journal.hasUncommittedEvents());
+
+            journal.commit(journal.getWritePosition());
+            assertFalse(journal.hasUncommittedEvents());
+        }
+
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            assertFalse(journal.hasUncommittedEvents());
+            assertEquals(Collections.emptyList(), readIds(journal, journal.getCommittedPosition()));
+        }
+    }
+
+    @Test
+    public void deletesSegmentsBeforeCommittedPosition() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        long committedId;
+        try (EventJournal journal = open(directory, SMALL_SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+            assertTrue(journal.getWritePosition().getSegment() >= 2);
+
+            JournalRecord firstOfThirdSegment = readRecords(journal, JournalPosition.START).stream()
+                                                                                         .filter(record -> record.getNextPosition().getSegment() == 2)
+                                                                                         .findFirst()
+                                                                                         .get();
+            committedId = firstOfThirdSegment.getEvent().getTestId();
+            journal.commit(firstOfThirdSegment.getNextPosition());
+
+            assertFalse(segmentFile(directory, 0).exists());
+            assertFalse(segmentFile(directory, 1).exists());
+            assertTrue(segmentFile(directory, 2).exists());
+        }
+
+        try (EventJournal journal = open(directory, SMALL_SEGMENT_SIZE)) {
+            List<Long> expectedIds = new ArrayList<>();
+            for (long id = committedId + 1; id <= 10; id++) {
+                expectedIds.add(id);
+            }
+            assertEquals(expectedIds, readIds(journal, journal.getCommittedPosition()));
+        }
+    }
+
+    static EventJournal open(File directory, int segmentSize) throws IOException {
+        return EventJournal.open(directory, segmentSize, null, new Gson());
+    }
+
+    static void append(EventJournal journal, long... ids) throws IOException {
+        for (long id : ids) {
+            journal.append(new JournalEvent(JournalEventType.LOGS, 1L, id, new JsonPrimitive("event " + id)));
+        }
+    }
+
+    static List<Long> readIds(EventJournal journal, JournalPosition from) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (JournalRecord record : readRecords(journal, from)) {
+            ids.add(record.getEvent().getTestId());
+        }
+        return ids;
+    }
+
+    static List<JournalRecord> readRecords(EventJournal journal, JournalPosition from) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        JournalReader reader = new JournalReader(from);
+        JournalRecord record;
+        while ((record = journal.read(reader)) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    static File segmentFile(File directory, long index) {
+        return new File(directory, "journal-" + index + ".log");
+    }
+
+    private static void truncate(File file, int length) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(length);
+        }
+    }
+
+    private static void corrupt(File file, int offset) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(offset);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(offset);
+            randomAccessFile.write(value ^ 0xFF);
+        }
+    }
+
+}
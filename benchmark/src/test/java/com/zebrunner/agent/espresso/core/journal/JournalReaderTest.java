@@ -0,0 +1,59 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.zebrunner.agent.espresso.core.journal.EventJournalTest.append;
+import static com.zebrunner.agent.espresso.core.journal.EventJournalTest.open;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JournalReaderTest {
+
+    // fits two or three test events, so the reader crosses segments
+    private static final int SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void continuesWithEventsAppendedAfterReachingTheEnd() throws IOException {
+        try (EventJournal journal = open(temporaryFolder.newFolder(), SEGMENT_SIZE)) {
+            JournalReader reader = new JournalReader(JournalPosition.START);
+            append(journal, 1, 2);
+            assertEquals(Arrays.asList(1L, 2L), readAvailable(journal, reader));
+            assertNull(journal.read(reader));
+
+            // the next events roll the journal over to the following segments
+            append(journal, 3, 4, 5, 6, 7);
+            assertEquals(Arrays.asList(3L, 4L, 5L, 6L, 7L), readAvailable(journal, reader));
+            assertEquals(journal.getWritePosition(), reader.getPosition());
+        }
+    }
+
+    @Test
+    public void startsFromGivenPosition() throws IOException {
+        try (EventJournal journal = open(temporaryFolder.newFolder(), SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3, 4, 5);
+            JournalPosition afterThirdEvent = EventJournalTest.readRecords(journal, JournalPosition.START).get(2).getNextPosition();
+
+            assertEquals(Arrays.asList(4L, 5L), readAvailable(journal, new JournalReader(afterThirdEvent)));
+        }
+    }
+
+    private static List<Long> readAvailable(EventJournal journal, JournalReader reader) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        JournalRecord record;
+        while ((record = journal.read(reader)) != null) {
+            ids.add(record.getEvent().getTestId());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.zebrunner.agent.espresso.core.journal;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.zebrunner.agent.espresso.core.journal.EventJournalTest.append;
+import static com.zebrunner.agent.espresso.core.journal.EventJournalTest.open;
+import static com.zebrunner.agent.espresso.core.journal.EventJournalTest.readRecords;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JournalShipperTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<Long> deliveredIds = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void deliversAndCommitsEvents() throws IOException {
+        try (EventJournal journal = open(temporaryFolder.newFolder(), SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3);
+
+            JournalShipper shipper = new JournalShipper(journal, this::deliver, e -> false);
+            shipper.start();
+            try {
+                assertTrue(shipper.drain(TIMEOUT));
+            } finally {
+                shipper.stop();
+            }
+
+            assertEquals(Arrays.asList(1L, 2L, 3L), deliveredIds);
+            assertFalse(journal.hasUncommittedEvents());
+        }
+    }
+
+    @Test
+    public void keepsUndeliveredEventUncommittedAndRestartsFromIt() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        CountDownLatch failedDelivery = new CountDownLatch(1);
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3);
+            JournalPosition afterFirstEvent = readRecords(journal, JournalPosition.START).get(0).getNextPosition();
+
+            // the server is unavailable once the first event is delivered
+            JournalShipper shipper = new JournalShipper(journal, event -> {
+                if (event.getTestId() > 1) {
+                    failedDelivery.countDown();
+                    throw new IOException("Server is unavailable");
+                }
+                this.deliver(event);
+            }, e -> false);
+            shipper.start();
+            assertTrue(failedDelivery.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+            shipper.stop();
+
+            assertEquals(Arrays.asList(1L), deliveredIds);
+            assertEquals(afterFirstEvent, journal.getCommittedPosition());
+            assertTrue(journal.hasUncommittedEvents());
+        }
+
+        // the next process resumes from the committed position
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            JournalShipper shipper = new JournalShipper(journal, this::deliver, e -> false);
+            shipper.start();
+            try {
+                assertTrue(shipper.drain(TIMEOUT));
+            } finally {
+                shipper.stop();
+            }
+
+            assertEquals(Arrays.asList(1L, 2L, 3L), deliveredIds);
+            assertFalse(journal.hasUncommittedEvents());
+        }
+    }
+
+    @Test
+    public void skipsRejectedAndMalformedEvents() throws IOException {
+        try (EventJournal journal = open(temporaryFolder.newFolder(), SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3, 4);
+
+            JournalShipper shipper = new JournalShipper(journal, event -> {
+                if (event.getTestId() == 2) {
+                    throw new IllegalStateException("Rejected by the server");
+                }
+                if (event.getTestId() == 3) {
+                    throw new JsonParseException("Malformed payload");
+                }
+                this.deliver(event);
+            }, e -> e instanceof IllegalStateException);
+            shipper.start();
+            try {
+                assertTrue(shipper.drain(TIMEOUT));
+            } finally {
+                shipper.stop();
+            }
+
+            assertEquals(Arrays.asList(1L, 4L), deliveredIds);
+            assertFalse(journal.hasUncommittedEvents());
+        }
+    }
+
+    @Test
+    public void replayStopsAtEventUndeliveredWithinTimeout() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            append(journal, 1, 2, 3);
+            JournalPosition afterFirstEvent = readRecords(journal, JournalPosition.START).get(0).getNextPosition();
+
+            JournalShipper shipper = new JournalShipper(journal, event -> {
+                if (event.getTestId() == 2) {
+                    throw new IOException("Server is unavailable");
+                }
+                this.deliver(event);
+            }, e -> false);
+
+            assertEquals(1, shipper.replayAll(Duration.ofMillis(300)));
+            assertEquals(afterFirstEvent, journal.getCommittedPosition());
+        }
+
+        try (EventJournal journal = open(directory, SEGMENT_SIZE)) {
+            assertEquals(2, new JournalShipper(journal, this::deliver, e -> false).replayAll(TIMEOUT));
+            assertEquals(Arrays.asList(1L, 2L, 3L), deliveredIds);
+            assertFalse(journal.hasUncommittedEvents());
+        }
+    }
+
+    private void deliver(JournalEvent event) {
+        deliveredIds.add(event.getTestId());
+    }
+
+}